@@ -0,0 +1,101 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Loads the recorded transcripts replayed by the benchmarks.
+ *
+ * @author HeHangjie
+ */
+class Fixtures {
+
+	/**
+	 * The charset of the fixture files.
+	 */
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Returns the content of a fixture file.
+	 *
+	 * @param name
+	 *            The file name, relative to the fixtures directory.
+	 * @return The bytes of the file.
+	 * @throws IOException
+	 *             If the fixture can't be read.
+	 */
+	static byte[] bytes(String name) throws IOException {
+		return read("/fixtures/" + name);
+	}
+
+	/**
+	 * Returns the content of a fixture file as a string.
+	 *
+	 * @param name
+	 *            The file name, relative to the fixtures directory.
+	 * @return The text of the file.
+	 * @throws IOException
+	 *             If the fixture can't be read.
+	 */
+	static String text(String name) throws IOException {
+		return new String(bytes(name), UTF_8);
+	}
+
+	/**
+	 * Extracts the stub executable to a temporary file.
+	 *
+	 * @return The executable stub, deleted on exit.
+	 * @throws IOException
+	 *             If the stub can't be written.
+	 */
+	static File stubExecutable() throws IOException {
+		File file = File.createTempFile("stub-ffmpeg-", ".sh");
+		file.deleteOnExit();
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(read("/stub-ffmpeg.sh"));
+		}
+		if (!file.setExecutable(true)) {
+			throw new IOException("Can't make " + file + " executable");
+		}
+		return file;
+	}
+
+	private static byte[] read(String resource) throws IOException {
+		try (InputStream in = Fixtures.class.getResourceAsStream(resource)) {
+			if (in == null) {
+				throw new IOException("Missing resource " + resource);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itlieutenant.entity.EncodingProgress;
+import com.itlieutenant.entity.MultimediaInfo;
+
+/**
+ * Replays the recorded ffmpeg and ffprobe outputs through the parsers of the
+ * library. Run it with <code>-prof gc</code> to see the allocation rate next
+ * to the throughput.
+ *
+ * @author HeHangjie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+	/**
+	 * The duration of the recorded encoding, in millis.
+	 */
+	private static final long PROGRESS_DURATION = 600000L;
+
+	/**
+	 * The number of inputs described by the ffmpeg transcript, 1 for a single
+	 * probe and more for a batch probe.
+	 */
+	@Param({ "1", "32" })
+	public int inputs;
+
+	/**
+	 * The bytes of the ffmpeg standard error, describing the inputs.
+	 */
+	private byte[] infoBytes;
+
+	/**
+	 * The ffprobe json output.
+	 */
+	private String probe;
+
+	/**
+	 * The -progress output of an encoding.
+	 */
+	private byte[] progress;
+
+	/**
+	 * The ffmpeg -formats output.
+	 */
+	private byte[] formats;
+
+	/**
+	 * The ffmpeg -encoders output.
+	 */
+	private byte[] encoders;
+
+	/**
+	 * Listens to the progress parser, doing nothing.
+	 */
+	private final EncoderStatisticsListener listener = new EncoderStatisticsListener() {
+
+		public void sourceInfo(MultimediaInfo info) {
+		}
+
+		public void progress(int permil) {
+		}
+
+		public void message(String message) {
+		}
+
+		public void statistics(EncodingProgress progress) {
+		}
+
+	};
+
+	@Setup
+	public void setUp() throws IOException {
+		infoBytes = batch(Fixtures.text("ffmpeg-info.txt"), inputs).getBytes(Fixtures.UTF_8);
+		probe = Fixtures.text("ffprobe.json");
+		progress = Fixtures.bytes("progress.txt");
+		formats = Fixtures.bytes("formats.txt");
+		encoders = Fixtures.bytes("encoders.txt");
+	}
+
+	/**
+	 * Repeats the input block of a single input transcript, as ffmpeg prints
+	 * it for a batch probe.
+	 */
+	private static String batch(String transcript, int inputs) {
+		int start = transcript.indexOf("Input #0");
+		int end = transcript.indexOf("At least one output file");
+		String block = transcript.substring(start, end);
+		StringBuilder sb = new StringBuilder(transcript.substring(0, start));
+		for (int i = 0; i < inputs; i++) {
+			sb.append(block.replace("Input #0", "Input #" + i).replace("Stream #0:", "Stream #" + i + ":"));
+		}
+		sb.append(transcript.substring(end));
+		return sb.toString();
+	}
+
+	@Benchmark
+	public List<MultimediaInfo> multimediaInfo() {
+		MultimediaInfoParser parser = new MultimediaInfoParser();
+		parser.onData(infoBytes, 0, infoBytes.length);
+		parser.onEnd();
+		return parser.getInfos();
+	}
+
+	@Benchmark
+	public MultimediaInfo probeJson() throws IOException {
+		return ProbeParser.parse(new StringReader(probe));
+	}
+
+	@Benchmark
+	public ProgressParser progress() {
+		ProgressParser parser = new ProgressParser(listener, PROGRESS_DURATION);
+		parser.onData(progress, 0, progress.length);
+		parser.onEnd();
+		return parser;
+	}
+
+	@Benchmark
+	public FFmpegCapabilities formats() {
+		FFmpegCapabilities capabilities = new FFmpegCapabilities("bench", 0L);
+		LineHandler parser = capabilities.parser("-formats");
+		parser.onData(formats, 0, formats.length);
+		parser.onEnd();
+		return capabilities;
+	}
+
+	@Benchmark
+	public FFmpegCapabilities encoders() {
+		FFmpegCapabilities capabilities = new FFmpegCapabilities("bench", 0L);
+		LineHandler parser = capabilities.parser("-encoders");
+		parser.onData(encoders, 0, encoders.length);
+		parser.onEnd();
+		return capabilities;
+	}
+
+}
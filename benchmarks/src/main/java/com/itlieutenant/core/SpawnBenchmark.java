@@ -0,0 +1,108 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of running an ffmpeg process, from the executor
+ * creation to the process exit, against a stub executable exiting at once.
+ * The stub receives the command line of a typical encoding, so the cost of
+ * handing the arguments to a warm process is included.
+ *
+ * @author HeHangjie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpawnBenchmark {
+
+	/**
+	 * The command line of a typical encoding.
+	 */
+	private static final String[] ARGS = { "-nostdin", "-hide_banner", "-ss", "12.5", "-i",
+			"/data/uploads/2021/06/lecture-0001.mp4", "-t", "60", "-map", "0:v:0", "-map", "0:a:0", "-vcodec",
+			"libx264", "-b:v", "1200000", "-r", "25", "-s", "1280x720", "-acodec", "aac", "-b:a", "128000", "-ac",
+			"2", "-ar", "44100", "-progress", "pipe:1", "-y", "-f", "mp4", "/data/encoded/lecture-0001-720p.mp4" };
+
+	/**
+	 * The number of processes kept ready by the locator, 0 to spawn a new
+	 * process for each call.
+	 */
+	@Param({ "0", "2" })
+	public int warmProcesses;
+
+	/**
+	 * The locator running the stub executable.
+	 */
+	private FFMPEGLocator locator;
+
+	@Setup
+	public void setUp() throws IOException {
+		final File stub = Fixtures.stubExecutable();
+		locator = new FFMPEGLocator() {
+
+			protected String getFFMPEGExecutablePath() {
+				return stub.getAbsolutePath();
+			}
+
+		};
+		locator.setWarmProcesses(warmProcesses);
+	}
+
+	@TearDown
+	public void tearDown() {
+		locator.setWarmProcesses(0);
+	}
+
+	@Benchmark
+	public int spawn() throws IOException, InterruptedException {
+		FFMPEGExecutor ffmpeg = locator.createWarmExecutor();
+		for (String arg : ARGS) {
+			ffmpeg.addArgument(arg);
+		}
+		ffmpeg.discardError();
+		try {
+			ffmpeg.execute();
+			ffmpeg.pump(null, null);
+			return ffmpeg.waitFor();
+		} finally {
+			ffmpeg.destroy();
+		}
+	}
+
+}
@@ -0,0 +1,3 @@
+#!/bin/sh
+# A stub ffmpeg, measuring the cost of a spawn alone.
+exit 0
@@ -0,0 +1,140 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.micrometer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.itlieutenant.core.EncoderMetrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * An {@link EncoderMetrics} forwarding the measures to a Micrometer
+ * {@link MeterRegistry}. The meters are registered when the instance is
+ * built, except the tagged ones, registered at their first use.
+ * 
+ * @author HeHangjie
+ */
+public class MicrometerEncoderMetrics implements EncoderMetrics {
+
+	/**
+	 * The registry of the meters.
+	 */
+	private final MeterRegistry registry;
+
+	private final Timer coldSpawns;
+
+	private final Timer warmSpawns;
+
+	private final Timer firstOutputs;
+
+	/**
+	 * The number of running processes, exposed as a gauge.
+	 */
+	private final AtomicLong liveProcesses;
+
+	private final Timer probeSuccesses;
+
+	private final Timer probeFailures;
+
+	private final Timer encodeSuccesses;
+
+	private final Timer encodeFailures;
+
+	private final DistributionSummary bytesIn;
+
+	private final DistributionSummary bytesOut;
+
+	private final DistributionSummary speeds;
+
+	private final Timer queueWaits;
+
+	/**
+	 * It builds the metrics, registering the meters.
+	 * 
+	 * @param registry
+	 *            The registry of the meters.
+	 */
+	public MicrometerEncoderMetrics(MeterRegistry registry) {
+		this.registry = registry;
+		coldSpawns = timer("ffmpeg.process.spawn", "Time to start a process", "warm", "false");
+		warmSpawns = timer("ffmpeg.process.spawn", "Time to start a process", "warm", "true");
+		firstOutputs = Timer.builder("ffmpeg.process.first.output")
+				.description("Time to the first bytes written by a process").register(registry);
+		liveProcesses = registry.gauge("ffmpeg.process.live", new AtomicLong());
+		probeSuccesses = timer("ffmpeg.probe", "Duration of a probe", "outcome", "success");
+		probeFailures = timer("ffmpeg.probe", "Duration of a probe", "outcome", "failure");
+		encodeSuccesses = timer("ffmpeg.encode", "Duration of an encoding", "outcome", "success");
+		encodeFailures = timer("ffmpeg.encode", "Duration of an encoding", "outcome", "failure");
+		bytesIn = DistributionSummary.builder("ffmpeg.encode.bytes.in").description("Size of the encoded sources")
+				.baseUnit("bytes").register(registry);
+		bytesOut = DistributionSummary.builder("ffmpeg.encode.bytes.out").description("Size of the encoded targets")
+				.baseUnit("bytes").register(registry);
+		speeds = DistributionSummary.builder("ffmpeg.encode.speed")
+				.description("Duration of the encoded media divided by the duration of the encoding")
+				.register(registry);
+		queueWaits = Timer.builder("ffmpeg.queue.wait").description("Time spent by a scheduled job in the queue")
+				.register(registry);
+	}
+
+	private Timer timer(String name, String description, String tag, String value) {
+		return Timer.builder(name).description(description).tag(tag, value).register(registry);
+	}
+
+	public void processStarted(long spawnNanos, boolean warm) {
+		liveProcesses.incrementAndGet();
+		(warm ? warmSpawns : coldSpawns).record(spawnNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void processFirstOutput(long nanos) {
+		firstOutputs.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void processEnded(int exitCode, long runtimeNanos) {
+		liveProcesses.decrementAndGet();
+		// Exit codes are few, the registry keeps one timer for each of them.
+		timer("ffmpeg.process.runtime", "Life of a process", "exit", Integer.toString(exitCode))
+				.record(runtimeNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void probed(long nanos, boolean success) {
+		(success ? probeSuccesses : probeFailures).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void encoded(long nanos, long bytesIn, long bytesOut, double speed, boolean success) {
+		(success ? encodeSuccesses : encodeFailures).record(nanos, TimeUnit.NANOSECONDS);
+		if (bytesIn >= 0) {
+			this.bytesIn.record(bytesIn);
+		}
+		if (bytesOut >= 0) {
+			this.bytesOut.record(bytesOut);
+		}
+		if (success && speed >= 0) {
+			speeds.record(speed);
+		}
+	}
+
+	public void queued(long nanos) {
+		queueWaits.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+}
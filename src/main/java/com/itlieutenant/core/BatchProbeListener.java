@@ -0,0 +1,56 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+
+import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.exception.EncoderException;
+
+/**
+ * Receives the results of a {@link BatchProber} as soon as each batch is
+ * completed. Calls can come from different threads, but never at the same
+ * time for the same prober call.
+ * 
+ * @author HeHangjie
+ */
+public interface BatchProbeListener {
+
+	/**
+	 * This method is called when the informations about a file are
+	 * available, either probed or taken from the info cache.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param info
+	 *            The informations about the file and its contents.
+	 */
+	public void probed(File source, MultimediaInfo info);
+
+	/**
+	 * This method is called when a file can't be probed.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param cause
+	 *            The reason of the failure.
+	 */
+	public void failed(File source, EncoderException cause);
+
+}
@@ -0,0 +1,311 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.exception.EncoderException;
+
+/**
+ * Probes many multimedia files with few ffmpeg processes. The files are split
+ * in batches and each batch is probed by a single
+ * <code>ffmpeg -i a -i b ...</code> call, whose output is split in the
+ * "Input #n" blocks of the single files. ffmpeg stops at the first file it
+ * can't open: that file is reported as failed and the rest of the batch is
+ * probed again. Batches run in the calling thread or, if an {@link Executor}
+ * is given, concurrently on it. Files found in the info cache of the encoder
+ * are not probed, and the probed ones are stored in it.
+ * 
+ * @author HeHangjie
+ */
+public class BatchProber {
+
+	/**
+	 * The default maximum number of files probed by a single ffmpeg process.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 32;
+
+	/**
+	 * The maximum number of path characters given to a single ffmpeg process,
+	 * keeping the command line far from the limits of the platforms.
+	 */
+	private static final int MAX_BATCH_CHARS = 24 * 1024;
+
+	/**
+	 * The encoder running ffmpeg.
+	 */
+	private final Encoder encoder;
+
+	/**
+	 * The maximum number of files probed by a single ffmpeg process.
+	 */
+	private final int batchSize;
+
+	/**
+	 * The executor running the batches, or null to run them in the calling
+	 * thread.
+	 */
+	private final Executor executor;
+
+	/**
+	 * It builds a prober running the batches, of the default size, in the
+	 * calling thread.
+	 * 
+	 * @param encoder
+	 *            The encoder running ffmpeg.
+	 */
+	public BatchProber(Encoder encoder) {
+		this(encoder, DEFAULT_BATCH_SIZE, null);
+	}
+
+	/**
+	 * It builds a prober.
+	 * 
+	 * @param encoder
+	 *            The encoder running ffmpeg.
+	 * @param batchSize
+	 *            The maximum number of files probed by a single ffmpeg
+	 *            process.
+	 * @param executor
+	 *            The executor running the batches concurrently, or null to
+	 *            run them in the calling thread. The prober does not shut it
+	 *            down.
+	 */
+	public BatchProber(Encoder encoder, int batchSize, Executor executor) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.encoder = encoder;
+		this.batchSize = batchSize;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the maximum number of files probed by a single ffmpeg process.
+	 * 
+	 * @return The batch size.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Probes the given files, waiting for all of them.
+	 * 
+	 * @param sources
+	 *            The source multimedia files.
+	 * @return The informations about the files, by file, in the order of the
+	 *         given collection. Files whose format cannot be recognized are
+	 *         missing.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg
+	 *             executable, or if interrupted while waiting.
+	 */
+	public Map<File, MultimediaInfo> probe(Collection<File> sources) throws EncoderException {
+		final Map<File, MultimediaInfo> probed = new LinkedHashMap<>();
+		EncoderException error = run(sources, new BatchProbeListener() {
+			public void probed(File source, MultimediaInfo info) {
+				probed.put(source, info);
+			}
+
+			public void failed(File source, EncoderException cause) {
+				;
+			}
+		});
+		if (error != null) {
+			throw error;
+		}
+		Map<File, MultimediaInfo> ret = new LinkedHashMap<>();
+		for (File source : sources) {
+			MultimediaInfo info = probed.get(source);
+			if (info != null) {
+				ret.put(source, info);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Probes the given files, reporting each of them to the listener as soon
+	 * as its batch is completed. It returns when all the files have been
+	 * reported.
+	 * 
+	 * @param sources
+	 *            The source multimedia files.
+	 * @param listener
+	 *            The listener receiving the results.
+	 * @throws EncoderException
+	 *             If interrupted while waiting. The calling thread keeps its
+	 *             interrupted status.
+	 */
+	public void probe(Collection<File> sources, BatchProbeListener listener) throws EncoderException {
+		run(sources, listener);
+	}
+
+	/**
+	 * Probes the given files.
+	 * 
+	 * @return The first failure of the ffmpeg executable, or null.
+	 */
+	private EncoderException run(Collection<File> sources, BatchProbeListener listener) throws EncoderException {
+		Collector collector = new Collector(listener);
+		MultimediaInfoCache cache = encoder.getInfoCache();
+		List<File> pending = new ArrayList<>();
+		for (File source : sources) {
+			MultimediaInfo info = cache != null ? cache.get(source) : null;
+			if (info != null) {
+				collector.probed(source, info);
+			} else {
+				pending.add(source);
+			}
+		}
+		List<List<File>> batches = split(pending);
+		if (executor == null || batches.size() < 2) {
+			for (List<File> batch : batches) {
+				probeBatch(batch, collector);
+			}
+			return collector.error;
+		}
+		final CountDownLatch done = new CountDownLatch(batches.size());
+		for (final List<File> batch : batches) {
+			final Collector c = collector;
+			Runnable task = new Runnable() {
+				public void run() {
+					try {
+						probeBatch(batch, c);
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				task.run();
+			}
+		}
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		}
+		return collector.error;
+	}
+
+	/**
+	 * Splits the files in batches, by number of files and by length of the
+	 * paths.
+	 */
+	private List<List<File>> split(List<File> sources) {
+		List<List<File>> batches = new ArrayList<>();
+		List<File> batch = new ArrayList<>();
+		int chars = 0;
+		for (File source : sources) {
+			int length = source.getAbsolutePath().length();
+			if (!batch.isEmpty() && (batch.size() >= batchSize || chars + length > MAX_BATCH_CHARS)) {
+				batches.add(batch);
+				batch = new ArrayList<>();
+				chars = 0;
+			}
+			batch.add(source);
+			chars += length;
+		}
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	/**
+	 * Probes a batch, probing again the files following the one ffmpeg can't
+	 * open.
+	 */
+	private void probeBatch(List<File> batch, Collector collector) {
+		MultimediaInfoCache cache = encoder.getInfoCache();
+		List<File> remaining = batch;
+		while (!remaining.isEmpty()) {
+			List<MultimediaInfo> infos;
+			try {
+				infos = encoder.probeInfos(remaining);
+			} catch (EncoderException e) {
+				for (File source : remaining) {
+					collector.error(source, e);
+				}
+				return;
+			}
+			int i = 0;
+			for (; i < remaining.size() && i < infos.size() && infos.get(i) != null; i++) {
+				File source = remaining.get(i);
+				MultimediaInfo info = infos.get(i);
+				if (cache != null) {
+					cache.put(source, info);
+				}
+				collector.probed(source, info);
+			}
+			if (i < remaining.size()) {
+				File source = remaining.get(i);
+				collector.failed(source, new EncoderException("Unrecognized input format: " + source));
+				i++;
+			}
+			remaining = remaining.subList(i, remaining.size());
+		}
+	}
+
+	/**
+	 * Serializes the calls to the user listener and records the first failure
+	 * of the ffmpeg executable.
+	 */
+	private static class Collector implements BatchProbeListener {
+
+		private final BatchProbeListener listener;
+
+		private EncoderException error = null;
+
+		Collector(BatchProbeListener listener) {
+			this.listener = listener;
+		}
+
+		public synchronized void probed(File source, MultimediaInfo info) {
+			listener.probed(source, info);
+		}
+
+		public synchronized void failed(File source, EncoderException cause) {
+			listener.failed(source, cause);
+		}
+
+		synchronized void error(File source, EncoderException cause) {
+			if (error == null) {
+				error = cause;
+			}
+			listener.failed(source, cause);
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A package-private reader splitting a process output in fixed-size chunks,
+ * such as raw video frames or blocks of audio samples. The chunks are read in
+ * a small pool of direct buffers, allocated once: a reader thread fills the
+ * free buffers while the calling thread consumes the full ones, so that
+ * ffmpeg keeps decoding while a chunk is being consumed, and no memory is
+ * allocated for each chunk.
+ * 
+ * @author HeHangjie
+ */
+class ChunkReader {
+
+	/**
+	 * The default number of buffers of the pool.
+	 */
+	static final int DEFAULT_BUFFERS = 4;
+
+	/**
+	 * The marker of the end of the chunks.
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * The stream to read.
+	 */
+	private final InputStream stream;
+
+	/**
+	 * Whether a last, incomplete chunk is delivered too.
+	 */
+	private final boolean partial;
+
+	/**
+	 * The buffers ready to be filled.
+	 */
+	private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<>();
+
+	/**
+	 * The buffers ready to be consumed.
+	 */
+	private final BlockingQueue<ByteBuffer> full = new LinkedBlockingQueue<>();
+
+	/**
+	 * The failure reading the stream, if any.
+	 */
+	private volatile IOException error = null;
+
+	/**
+	 * It builds the reader, and allocates its buffers.
+	 * 
+	 * @param stream
+	 *            The stream to read.
+	 * @param chunkSize
+	 *            The size of a chunk, in bytes.
+	 * @param buffers
+	 *            The number of buffers of the pool.
+	 * @param partial
+	 *            true to deliver a last, incomplete chunk too, false to drop
+	 *            it.
+	 */
+	ChunkReader(InputStream stream, int chunkSize, int buffers, boolean partial) {
+		this.stream = stream;
+		this.partial = partial;
+		for (int i = 0; i < buffers; i++) {
+			free.add(ByteBuffer.allocateDirect(chunkSize));
+		}
+	}
+
+	/**
+	 * Reads the stream up to its end, handing each chunk to a handler on the
+	 * calling thread.
+	 * 
+	 * @param handler
+	 *            The handler of the chunks.
+	 * @throws IOException
+	 *             If the stream can't be read.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for a chunk.
+	 */
+	void run(ChunkHandler handler) throws IOException, InterruptedException {
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				fill();
+			}
+		}, "ffmpeg-chunk-reader");
+		reader.setDaemon(true);
+		reader.start();
+		try {
+			long index = 0;
+			while (true) {
+				ByteBuffer chunk = full.take();
+				if (chunk == END) {
+					break;
+				}
+				handler.chunk(chunk, index++);
+				chunk.clear();
+				free.add(chunk);
+			}
+		} finally {
+			// Releases a reader waiting for a free buffer.
+			reader.interrupt();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Fills the free buffers up to the end of the stream.
+	 */
+	private void fill() {
+		ReadableByteChannel channel = Channels.newChannel(stream);
+		try {
+			boolean eof = false;
+			while (!eof) {
+				ByteBuffer chunk = free.take();
+				while (chunk.hasRemaining()) {
+					if (channel.read(chunk) < 0) {
+						eof = true;
+						break;
+					}
+				}
+				if (!chunk.hasRemaining() || (partial && chunk.position() > 0)) {
+					chunk.flip();
+					full.add(chunk);
+				}
+			}
+		} catch (IOException e) {
+			error = e;
+		} catch (InterruptedException e) {
+			// The consumer gave up.
+			;
+		} finally {
+			full.add(END);
+		}
+	}
+
+	/**
+	 * The consumer of the chunks.
+	 */
+	interface ChunkHandler {
+
+		/**
+		 * Consumes a chunk. The buffer is reused as soon as the method
+		 * returns.
+		 * 
+		 * @param chunk
+		 *            The chunk, from position 0 to its size.
+		 * @param index
+		 *            The index of the chunk, starting from 0.
+		 */
+		void chunk(ByteBuffer chunk, long index);
+
+	}
+
+}
@@ -18,19 +18,39 @@
  */
 package com.itlieutenant.core;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.StringTokenizer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.itlieutenant.entity.AudioAttributes;
 import com.itlieutenant.entity.AudioInfo;
+import com.itlieutenant.entity.DashAttributes;
 import com.itlieutenant.entity.EncodingAttributes;
+import com.itlieutenant.entity.HlsAttributes;
 import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.entity.PackagingAttributes;
+import com.itlieutenant.entity.RawVideoAttributes;
 import com.itlieutenant.entity.VideoAttributes;
 import com.itlieutenant.entity.VideoInfo;
 import com.itlieutenant.entity.VideoSize;
@@ -45,34 +65,33 @@ import com.itlieutenant.exception.InputFormatException;
 public class Encoder {
 
 	/**
-	 * This regexp is used to parse the ffmpeg output about the supported
-	 * formats.
+	 * The size of the buffers moving the data of a streaming encoding.
 	 */
-	private static final Pattern FORMAT_PATTERN = Pattern.compile("^\\s*([D ])([E ])\\s+([\\w,]+)\\s+.+$");
+	private static final int PIPE_BUFFER_SIZE = 256 * 1024;
 
 	/**
-	 * This regexp is used to parse the ffmpeg output about the included
-	 * encoders/decoders.
+	 * The threads running the jobs of
+	 * {@link #start(File, File, EncodingAttributes, EncoderProgressListener)},
+	 * shared by all the encoders and created at the first job.
 	 */
-	private static final Pattern ENCODER_DECODER_PATTERN = Pattern.compile("^\\s*([D ])([E ])([AVS]).{3}\\s+(.+)$",
-			Pattern.CASE_INSENSITIVE);
+	private static ThreadPoolExecutor jobExecutor = null;
 
 	/**
-	 * This regexp is used to parse the ffmpeg output about the size of a video
-	 * stream.
+	 * The locator of the ffmpeg executable used by this encoder.
 	 */
-	private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+)x(\\d+)", Pattern.CASE_INSENSITIVE);
+	private FFMPEGLocator locator;
 
 	/**
-	 * This regexp is used to parse the ffmpeg output about the sampling rate of
-	 * an audio stream.
+	 * The cache of the probed multimedia informations. If null every call to
+	 * {@link #getInfo(File)} runs ffmpeg.
 	 */
-	private static final Pattern SAMPLING_RATE_PATTERN = Pattern.compile("(\\d+)\\s+Hz", Pattern.CASE_INSENSITIVE);
+	private MultimediaInfoCache infoCache = null;
 
 	/**
-	 * The locator of the ffmpeg executable used by this encoder.
+	 * The budget sharing the processors among the running encodings. If null
+	 * the codecs pick their own threads.
 	 */
-	private FFMPEGLocator locator;
+	private ThreadBudget threadBudget = null;
 
 	/**
 	 * It builds an encoder using a {@link DefaultFFMPEGLocator} instance to
@@ -93,6 +112,73 @@ public class Encoder {
 		this.locator = locator;
 	}
 
+	/**
+	 * Returns the receiver of the measures of this encoder, set on its
+	 * locator.
+	 * 
+	 * @return The metrics, or null.
+	 */
+	EncoderMetrics getMetrics() {
+		return locator.getMetrics();
+	}
+
+	/**
+	 * Returns the cache of the probed multimedia informations.
+	 * 
+	 * @return The cache, or null if informations are not cached.
+	 */
+	public MultimediaInfoCache getInfoCache() {
+		return infoCache;
+	}
+
+	/**
+	 * Sets the cache of the probed multimedia informations, used by
+	 * {@link #getInfo(File)}. A cache can be shared by many encoders.
+	 * 
+	 * @param infoCache
+	 *            The cache, or null to probe every file at every call.
+	 */
+	public void setInfoCache(MultimediaInfoCache infoCache) {
+		this.infoCache = infoCache;
+	}
+
+	/**
+	 * Returns the budget sharing the processors among the running encodings.
+	 * 
+	 * @return The budget, or null if the codecs pick their own threads.
+	 */
+	public ThreadBudget getThreadBudget() {
+		return threadBudget;
+	}
+
+	/**
+	 * Sets the budget sharing the processors among the running encodings. The
+	 * video codecs and filters of a new encoding are given their share of the
+	 * processors (see {@link ThreadBudget}), unless its video attributes set
+	 * them.
+	 * The budget should be shared by all the encoders, as
+	 * {@link ThreadBudget#getDefault()}.
+	 * 
+	 * @param threadBudget
+	 *            The budget, or null to let the codecs pick their own threads.
+	 */
+	public void setThreadBudget(ThreadBudget threadBudget) {
+		this.threadBudget = threadBudget;
+	}
+
+	/**
+	 * Returns the codecs, formats, filters and hardware accelerations supported
+	 * by the ffmpeg executable in use. The discovery runs once per executable
+	 * and is shared by all the encoders.
+	 * 
+	 * @return The capabilities of the ffmpeg executable.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	public FFmpegCapabilities getCapabilities() throws EncoderException {
+		return FFmpegCapabilities.of(locator);
+	}
+
 	/**
 	 * Returns a list with the names of all the audio decoders bundled with the
 	 * ffmpeg distribution in use. An audio stream can be decoded only if a
@@ -102,48 +188,8 @@ public class Encoder {
 	 * @throws EncoderException
 	 *             If a problem occurs calling the underlying ffmpeg executable.
 	 */
-	@SuppressWarnings("resource")
 	public String[] getAudioDecoders() throws EncoderException {
-		ArrayList<String> res = new ArrayList<>();
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-formats");
-		try {
-			ffmpeg.execute();
-			RBufferedReader reader = null;
-			reader = new RBufferedReader(new InputStreamReader(ffmpeg.getInputStream()));
-			String line;
-			boolean evaluate = false;
-			while ((line = reader.readLine()) != null) {
-				if (line.trim().length() == 0) {
-					continue;
-				}
-				if (evaluate) {
-					Matcher matcher = ENCODER_DECODER_PATTERN.matcher(line);
-					if (matcher.matches()) {
-						String decoderFlag = matcher.group(1);
-						String audioVideoFlag = matcher.group(3);
-						if ("D".equals(decoderFlag) && "A".equals(audioVideoFlag)) {
-							String name = matcher.group(4);
-							res.add(name);
-						}
-					} else {
-						break;
-					}
-				} else if (line.trim().equals("Codecs:")) {
-					evaluate = true;
-				}
-			}
-		} catch (IOException e) {
-			throw new EncoderException(e);
-		} finally {
-			ffmpeg.destroy();
-		}
-		int size = res.size();
-		String[] ret = new String[size];
-		for (int i = 0; i < size; i++) {
-			ret[i] = (String) res.get(i);
-		}
-		return ret;
+		return toArray(getCapabilities().getAudioDecoders());
 	}
 
 	/**
@@ -155,48 +201,8 @@ public class Encoder {
 	 * @throws EncoderException
 	 *             If a problem occurs calling the underlying ffmpeg executable.
 	 */
-	@SuppressWarnings("resource")
 	public String[] getAudioEncoders() throws EncoderException {
-		ArrayList<String> res = new ArrayList<>();
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-formats");
-		try {
-			ffmpeg.execute();
-			RBufferedReader reader = null;
-			reader = new RBufferedReader(new InputStreamReader(ffmpeg.getInputStream()));
-			String line;
-			boolean evaluate = false;
-			while ((line = reader.readLine()) != null) {
-				if (line.trim().length() == 0) {
-					continue;
-				}
-				if (evaluate) {
-					Matcher matcher = ENCODER_DECODER_PATTERN.matcher(line);
-					if (matcher.matches()) {
-						String encoderFlag = matcher.group(2);
-						String audioVideoFlag = matcher.group(3);
-						if ("E".equals(encoderFlag) && "A".equals(audioVideoFlag)) {
-							String name = matcher.group(4);
-							res.add(name);
-						}
-					} else {
-						break;
-					}
-				} else if (line.trim().equals("Codecs:")) {
-					evaluate = true;
-				}
-			}
-		} catch (IOException e) {
-			throw new EncoderException(e);
-		} finally {
-			ffmpeg.destroy();
-		}
-		int size = res.size();
-		String[] ret = new String[size];
-		for (int i = 0; i < size; i++) {
-			ret[i] = (String) res.get(i);
-		}
-		return ret;
+		return toArray(getCapabilities().getAudioEncoders());
 	}
 
 	/**
@@ -208,48 +214,8 @@ public class Encoder {
 	 * @throws EncoderException
 	 *             If a problem occurs calling the underlying ffmpeg executable.
 	 */
-	@SuppressWarnings("resource")
 	public String[] getVideoDecoders() throws EncoderException {
-		ArrayList<String> res = new ArrayList<>();
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-formats");
-		try {
-			ffmpeg.execute();
-			RBufferedReader reader = null;
-			reader = new RBufferedReader(new InputStreamReader(ffmpeg.getInputStream()));
-			String line;
-			boolean evaluate = false;
-			while ((line = reader.readLine()) != null) {
-				if (line.trim().length() == 0) {
-					continue;
-				}
-				if (evaluate) {
-					Matcher matcher = ENCODER_DECODER_PATTERN.matcher(line);
-					if (matcher.matches()) {
-						String decoderFlag = matcher.group(1);
-						String audioVideoFlag = matcher.group(3);
-						if ("D".equals(decoderFlag) && "V".equals(audioVideoFlag)) {
-							String name = matcher.group(4);
-							res.add(name);
-						}
-					} else {
-						break;
-					}
-				} else if (line.trim().equals("Codecs:")) {
-					evaluate = true;
-				}
-			}
-		} catch (IOException e) {
-			throw new EncoderException(e);
-		} finally {
-			ffmpeg.destroy();
-		}
-		int size = res.size();
-		String[] ret = new String[size];
-		for (int i = 0; i < size; i++) {
-			ret[i] = (String) res.get(i);
-		}
-		return ret;
+		return toArray(getCapabilities().getVideoDecoders());
 	}
 
 	/**
@@ -261,48 +227,8 @@ public class Encoder {
 	 * @throws EncoderException
 	 *             If a problem occurs calling the underlying ffmpeg executable.
 	 */
-	@SuppressWarnings("resource")
 	public String[] getVideoEncoders() throws EncoderException {
-		ArrayList<String> res = new ArrayList<>();
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-formats");
-		try {
-			ffmpeg.execute();
-			RBufferedReader reader = null;
-			reader = new RBufferedReader(new InputStreamReader(ffmpeg.getInputStream()));
-			String line;
-			boolean evaluate = false;
-			while ((line = reader.readLine()) != null) {
-				if (line.trim().length() == 0) {
-					continue;
-				}
-				if (evaluate) {
-					Matcher matcher = ENCODER_DECODER_PATTERN.matcher(line);
-					if (matcher.matches()) {
-						String encoderFlag = matcher.group(2);
-						String audioVideoFlag = matcher.group(3);
-						if ("E".equals(encoderFlag) && "V".equals(audioVideoFlag)) {
-							String name = matcher.group(4);
-							res.add(name);
-						}
-					} else {
-						break;
-					}
-				} else if (line.trim().equals("Codecs:")) {
-					evaluate = true;
-				}
-			}
-		} catch (IOException e) {
-			throw new EncoderException(e);
-		} finally {
-			ffmpeg.destroy();
-		}
-		int size = res.size();
-		String[] ret = new String[size];
-		for (int i = 0; i < size; i++) {
-			ret[i] = (String) res.get(i);
-		}
-		return ret;
+		return toArray(getCapabilities().getVideoEncoders());
 	}
 
 	/**
@@ -316,53 +242,8 @@ public class Encoder {
 	 * @throws EncoderException
 	 *             If a problem occurs calling the underlying ffmpeg executable.
 	 */
-	@SuppressWarnings("resource")
 	public String[] getSupportedEncodingFormats() throws EncoderException {
-		ArrayList<String> res = new ArrayList<>();
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-formats");
-		try {
-			ffmpeg.execute();
-			RBufferedReader reader = null;
-			reader = new RBufferedReader(new InputStreamReader(ffmpeg.getInputStream()));
-			String line;
-			boolean evaluate = false;
-			while ((line = reader.readLine()) != null) {
-				if (line.trim().length() == 0) {
-					continue;
-				}
-				if (evaluate) {
-					Matcher matcher = FORMAT_PATTERN.matcher(line);
-					if (matcher.matches()) {
-						String encoderFlag = matcher.group(2);
-						if ("E".equals(encoderFlag)) {
-							String aux = matcher.group(3);
-							StringTokenizer st = new StringTokenizer(aux, ",");
-							while (st.hasMoreTokens()) {
-								String token = st.nextToken().trim();
-								if (!res.contains(token)) {
-									res.add(token);
-								}
-							}
-						}
-					} else {
-						break;
-					}
-				} else if (line.trim().equals("File formats:")) {
-					evaluate = true;
-				}
-			}
-		} catch (IOException e) {
-			throw new EncoderException(e);
-		} finally {
-			ffmpeg.destroy();
-		}
-		int size = res.size();
-		String[] ret = new String[size];
-		for (int i = 0; i < size; i++) {
-			ret[i] = (String) res.get(i);
-		}
-		return ret;
+		return toArray(getCapabilities().getEncodingFormats());
 	}
 
 	/**
@@ -375,58 +256,26 @@ public class Encoder {
 	 * @throws EncoderException
 	 *             If a problem occurs calling the underlying ffmpeg executable.
 	 */
-	@SuppressWarnings("resource")
 	public String[] getSupportedDecodingFormats() throws EncoderException {
-		ArrayList<String> res = new ArrayList<>();
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-formats");
-		try {
-			ffmpeg.execute();
-			RBufferedReader reader = null;
-			reader = new RBufferedReader(new InputStreamReader(ffmpeg.getInputStream()));
-			String line;
-			boolean evaluate = false;
-			while ((line = reader.readLine()) != null) {
-				if (line.trim().length() == 0) {
-					continue;
-				}
-				if (evaluate) {
-					Matcher matcher = FORMAT_PATTERN.matcher(line);
-					if (matcher.matches()) {
-						String decoderFlag = matcher.group(1);
-						if ("D".equals(decoderFlag)) {
-							String aux = matcher.group(3);
-							StringTokenizer st = new StringTokenizer(aux, ",");
-							while (st.hasMoreTokens()) {
-								String token = st.nextToken().trim();
-								if (!res.contains(token)) {
-									res.add(token);
-								}
-							}
-						}
-					} else {
-						break;
-					}
-				} else if (line.trim().equals("File formats:")) {
-					evaluate = true;
-				}
-			}
-		} catch (IOException e) {
-			throw new EncoderException(e);
-		} finally {
-			ffmpeg.destroy();
-		}
-		int size = res.size();
-		String[] ret = new String[size];
-		for (int i = 0; i < size; i++) {
-			ret[i] = (String) res.get(i);
-		}
-		return ret;
+		return toArray(getCapabilities().getDecodingFormats());
+	}
+
+	/**
+	 * Copies a set of names in a new array.
+	 * 
+	 * @param names
+	 *            The names.
+	 * @return The array of names.
+	 */
+	private static String[] toArray(Set<String> names) {
+		return names.toArray(new String[names.size()]);
 	}
 
 	/**
 	 * Returns a set informations about a multimedia file, if its format is
-	 * supported for decoding.
+	 * supported for decoding. If the encoder has an info cache (see
+	 * {@link #setInfoCache(MultimediaInfoCache)}), an unchanged file is probed
+	 * only once.
 	 * 
 	 * @param source
 	 *            The source multimedia file.
@@ -438,242 +287,1639 @@ public class Encoder {
 	 *             If a problem occurs calling the underlying ffmpeg executable.
 	 */
 	public MultimediaInfo getInfo(File source) throws InputFormatException, EncoderException {
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-i");
-		ffmpeg.addArgument(source.getAbsolutePath());
-		try {
-			ffmpeg.execute();
-		} catch (IOException e) {
-			throw new EncoderException(e);
+		return getInfo(source, null);
+	}
+
+	/**
+	 * Returns a set informations about a multimedia file, probing it on behalf
+	 * of an encoding job.
+	 * 
+	 * @param job
+	 *            The job killing the probe if aborted, or null.
+	 */
+	private MultimediaInfo getInfo(File source, EncodingJob job) throws InputFormatException, EncoderException {
+		MultimediaInfoCache cache = infoCache;
+		if (cache == null) {
+			return probeInfo(source, job);
 		}
-		try {
-			RBufferedReader readerErr = new RBufferedReader(new InputStreamReader(ffmpeg.getErrorStream()));
-			return parseMultimediaInfo(source, readerErr);
-		} finally {
-			ffmpeg.destroy();
+		MultimediaInfo info = cache.get(source);
+		if (info == null) {
+			info = probeInfo(source, job);
+			cache.put(source, info);
 		}
+		return info;
 	}
 
 	/**
-	 * It parses the ffmpeg output, extracting informations about a source
-	 * multimedia file.
+	 * Returns the informations about many multimedia files, probing them in
+	 * batches: a single ffmpeg process reads the headers of many files, so the
+	 * cost of a process spawn is paid once per batch instead of once per file.
+	 * Files already in the info cache are not probed again.
 	 * 
-	 * @Description:
-	 * @author HeHangjie
-	 * @update logs
-	 * @param source
-	 * @param reader
-	 * @return
-	 * @throws InputFormatException
+	 * @param sources
+	 *            The source multimedia files.
+	 * @return The informations about the files, by file. Files whose format
+	 *         cannot be recognized are missing.
 	 * @throws EncoderException
-	 * @return MultimediaInfo
-	 */
-	private MultimediaInfo parseMultimediaInfo(File source, RBufferedReader reader)
-			throws InputFormatException, EncoderException {
-		// Duration: 00:08:17.38, start: 1.579000, bitrate: 5250 kb/s
-		Pattern pInfo = Pattern.compile(
-				"^\\s*Duration: (\\d*):(\\d*):(\\d*)\\.(\\d*)[\\s\\S]*, bitrate: (\\d*) kb/s.*$",
-				Pattern.CASE_INSENSITIVE);
-		// [\\s\\S]* = Any char
-		// \\s = space
-		// \\S = any char without space
-		// Stream #0.0: Audio: wmapro, 44100 Hz, stereo, flt, 440 kb/s
-		// Stream #0.1: Video: wmv3, yuv420p, 720x576, 25 tbr, 1k tbn, 1k tbc
-		Pattern pStream = Pattern.compile("^\\s*Stream #\\S+: ((?:Audio)|(?:Video)|(?:Data)): (.*)\\s*$",
-				Pattern.CASE_INSENSITIVE);
-		MultimediaInfo info = new MultimediaInfo();
-		VideoInfo video = new VideoInfo();
-		AudioInfo audio = new AudioInfo();
-		try {
-			while (true) {
-				String line = reader.readLine();
-				if (line == null) {
-					break;
-				}
-
-				// Match Duration and bitRate
-				Matcher mInfo = pInfo.matcher(line);
-				if (mInfo.matches()) {
-					long hours = Integer.parseInt(mInfo.group(1));
-					long minutes = Integer.parseInt(mInfo.group(2));
-					long seconds = Integer.parseInt(mInfo.group(3));
-					long dec = Integer.parseInt(mInfo.group(4));
-					long duration = (new Double("0." + dec).longValue() * 100L) + (seconds * 1000L)
-							+ (minutes * 60L * 1000L) + (hours * 60L * 60L * 1000L);
-
-					info.setDuration(duration);
-					int bitRate = Integer.parseInt(mInfo.group(5));
-					info.setBitRate(bitRate);
-				}
-
-				// Match stream informations, sth like video size, audio
-				// samplingRate
-				Matcher mStream = pStream.matcher(line);
-				if (mStream.matches()) {
-					String type = mStream.group(1);
-					String specs = mStream.group(2);
-
-					if ("Video".equalsIgnoreCase(type)) {
-
-						StringTokenizer st = new StringTokenizer(specs, ",");
-						for (int i = 0; st.hasMoreTokens(); i++) {
-							String token = st.nextToken().trim();
-							if (i == 0) {
-								video.setDecoder(token);
-							} else {
-								// Video size.
-								Matcher m_szie = SIZE_PATTERN.matcher(token.trim());
-								if (m_szie.find()) {
-									int width = Integer.parseInt(m_szie.group(1));
-									int height = Integer.parseInt(m_szie.group(2));
-									video.setSize(new VideoSize(width, height));
-								}
-							}
-						}
-
-						info.setVideo(video);
-
-					} else if ("Audio".equalsIgnoreCase(type)) {
-
-						StringTokenizer st = new StringTokenizer(specs, ",");
-						for (int i = 0; st.hasMoreTokens(); i++) {
-							String token = st.nextToken().trim();
-							if (i == 0) {
-								audio.setDecoder(token);
-							} else {
-								// Sampling rate.
-								Matcher m_sampling = SAMPLING_RATE_PATTERN.matcher(token);
-								if (m_sampling.find()) {
-									int samplingRate = Integer.parseInt(m_sampling.group(1));
-									audio.setSamplingRate(samplingRate);
-								}
-							}
-						}
-
-						info.setAudio(audio);
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 * @see BatchProber
+	 */
+	public Map<File, MultimediaInfo> getInfo(Collection<File> sources) throws EncoderException {
+		return new BatchProber(this).probe(sources);
+	}
 
-					}
-				}
+	/**
+	 * Returns a complete set of informations about a multimedia file, probed
+	 * with ffprobe: all of its streams, exact durations, frame rates, bit
+	 * rates and codec parameters. The ffprobe JSON output is parsed while it
+	 * is being read. If the encoder has an info cache, an unchanged file is
+	 * probed only once.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @return A set of informations about the file and all of its streams.
+	 * @throws EncoderException
+	 *             If the file can't be decoded, or a problem occurs calling
+	 *             the underlying ffprobe executable.
+	 */
+	public MultimediaInfo probe(File source) throws EncoderException {
+		return probe(source, null);
+	}
 
+	/**
+	 * Returns a complete set of informations about a multimedia file, probing
+	 * it on behalf of an encoding job.
+	 * 
+	 * @param job
+	 *            The job killing the probe if aborted, or null.
+	 */
+	private MultimediaInfo probe(File source, EncodingJob job) throws EncoderException {
+		MultimediaInfoCache cache = infoCache;
+		if (cache != null) {
+			MultimediaInfo info = cache.get(source);
+			// Entries stored by getInfo(File) don't list the streams.
+			if (info != null && !info.getStreams().isEmpty()) {
+				return info;
 			}
-		} catch (IOException e) {
-			throw new EncoderException(e);
 		}
-
+		long start = System.nanoTime();
+		boolean success = false;
+		MultimediaInfo info;
+		try {
+			info = probeStreams(source, job);
+			success = true;
+		} finally {
+			probed(start, success);
+		}
+		if (cache != null) {
+			cache.put(source, info);
+		}
 		return info;
 	}
 
 	/**
-	 * Simple more strong more
+	 * Runs ffprobe to get the complete set of informations about a multimedia
+	 * file.
 	 * 
 	 * @param source
-	 * @param tartget
+	 *            The source multimedia file.
+	 * @param job
+	 *            The job killing the probe if aborted, or null.
+	 * @return A set of informations about the file and all of its streams.
 	 * @throws EncoderException
+	 *             If the file can't be decoded, or a problem occurs calling
+	 *             the underlying ffprobe executable.
 	 */
-	public void encode(File source, File tartget) throws EncoderException {
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		ffmpeg.addArgument("-i");
-		ffmpeg.addArgument(source.getAbsolutePath());
-		ffmpeg.addArgument("-y");
-		ffmpeg.addArgument(tartget.getAbsolutePath());
+	private MultimediaInfo probeStreams(File source, EncodingJob job) throws EncoderException {
+		FFMPEGExecutor ffprobe = locator.createWarmProbeExecutor();
+		ffprobe.addArgument("-v");
+		ffprobe.addArgument("error");
+		ffprobe.addArgument("-print_format");
+		ffprobe.addArgument("json");
+		ffprobe.addArgument("-show_format");
+		ffprobe.addArgument("-show_streams");
+		ffprobe.addArgument(source.getAbsolutePath());
+		final StringBuilder errors = new StringBuilder();
+		MultimediaInfo info;
 		try {
-			ffmpeg.execute();
-			@SuppressWarnings("resource")
-			RBufferedReader reader = new RBufferedReader(new InputStreamReader(ffmpeg.getErrorStream()));
-			@SuppressWarnings("unused")
-			String line;
-			while ((line = reader.readLine()) != null) {
-				// System.out.println(line);
+			if (job != null) {
+				job.probing(ffprobe);
 			}
+			ffprobe.execute();
+			if (job != null) {
+				job.started();
+			}
+			ffprobe.pumpError(new LineHandler() {
+				protected void onLine(String line) {
+					synchronized (errors) {
+						if (errors.length() < 1024) {
+							errors.append(line).append('\n');
+						}
+					}
+				}
+			});
+			info = ProbeParser.parse(new InputStreamReader(ffprobe.getInputStream(), "UTF-8"));
+			ffprobe.waitFor();
 		} catch (IOException e) {
 			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffprobe.destroy();
 		}
+		if (info.getFormat() == null) {
+			synchronized (errors) {
+				throw new InputFormatException("ffprobe can't decode " + source + ": " + errors.toString().trim());
+			}
+		}
+		return info;
 	}
 
 	/**
-	 * Custome encode
+	 * Returns the timestamps of the keyframes of the first video stream of a
+	 * multimedia file. The packets are read with ffprobe, without decoding
+	 * them.
 	 * 
-	 * @Description:
-	 * @Create: 2016-9-27 12:28:22
-	 * @author HeHangjie
-	 * @update logs
-	 * @param perSourceCmds
 	 * @param source
-	 * @param perTargetCmds
-	 * @param tartget
+	 *            The source multimedia file.
+	 * @return The sorted keyframe timestamps, in seconds. The list is empty
+	 *         if the file has no video stream.
 	 * @throws EncoderException
-	 * @return void
+	 *             If a problem occurs calling the underlying ffprobe
+	 *             executable.
 	 */
-	public void encode(List<String> perCmds, File source, List<String> cmds, File tartget)
-			throws EncoderException {
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
-		for (String s : perCmds) {
-			ffmpeg.addArgument(s);
-		}
-		ffmpeg.addArgument(source.getAbsolutePath());
-		for (String s : cmds) {
-			ffmpeg.addArgument(s);
-		}
-		ffmpeg.addArgument(tartget.getAbsolutePath());
+	public List<Double> getKeyframes(File source) throws EncoderException {
+		FFMPEGExecutor ffprobe = locator.createWarmProbeExecutor();
+		ffprobe.addArgument("-v");
+		ffprobe.addArgument("error");
+		ffprobe.addArgument("-select_streams");
+		ffprobe.addArgument("v:0");
+		ffprobe.addArgument("-show_entries");
+		ffprobe.addArgument("packet=pts_time,flags");
+		ffprobe.addArgument("-of");
+		ffprobe.addArgument("csv=p=0");
+		ffprobe.addArgument(source.getAbsolutePath());
+		ffprobe.discardError();
+		List<Double> keyframes = new ArrayList<>();
 		try {
-			ffmpeg.execute();
-
-			@SuppressWarnings("resource")
-			RBufferedReader reader = new RBufferedReader(new InputStreamReader(ffmpeg.getErrorStream()));
-			@SuppressWarnings("unused")
+			ffprobe.execute();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(ffprobe.getInputStream(), "UTF-8"));
 			String line;
 			while ((line = reader.readLine()) != null) {
-				// System.out.println(line);
+				// Sth like "12.345000,K_".
+				int comma = line.indexOf(',');
+				if (comma > 0 && line.startsWith("K", comma + 1)) {
+					try {
+						keyframes.add(Double.valueOf(line.substring(0, comma)));
+					} catch (NumberFormatException e) {
+						// "N/A" timestamp.
+						;
+					}
+				}
 			}
+			ffprobe.waitFor();
 		} catch (IOException e) {
 			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffprobe.destroy();
 		}
+		Collections.sort(keyframes);
+		return keyframes;
 	}
 
 	/**
-	 * Re-encode a multimedia file.
+	 * Runs ffmpeg to get the informations about a multimedia file.
 	 * 
 	 * @param source
-	 *            The source multimedia file. It cannot be null. Be sure this
-	 *            file can be decoded (see
-	 *            {@link Encoder#getSupportedDecodingFormats()},
-	 *            {@link Encoder#getAudioDecoders()} and
-	 *            {@link Encoder#getVideoDecoders()}).
+	 *            The source multimedia file.
+	 * @param job
+	 *            The job killing the probe if aborted, or null.
+	 * @return A set of informations about the file and its contents.
+	 * @throws InputFormatException
+	 *             If the format of the source file cannot be recognized and
+	 *             decoded.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	private MultimediaInfo probeInfo(File source, EncodingJob job) throws InputFormatException, EncoderException {
+		long start = System.nanoTime();
+		MultimediaInfo info = null;
+		try {
+			List<MultimediaInfo> infos = probeInfos(Collections.singletonList(source), job);
+			if (!infos.isEmpty()) {
+				info = infos.get(0);
+			}
+		} finally {
+			probed(start, info != null);
+		}
+		if (info == null) {
+			throw new InputFormatException("ffmpeg can't decode " + source);
+		}
+		return info;
+	}
+
+	/**
+	 * Runs a single ffmpeg process to get the informations about many
+	 * multimedia files, one "-i" argument for each of them.
+	 * 
+	 * @param sources
+	 *            The source multimedia files.
+	 * @return The informations about the files, in the same order. ffmpeg
+	 *         stops at the first file it can't open: the returned list has a
+	 *         null element or ends at its position, and the files following
+	 *         it have not been probed.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	List<MultimediaInfo> probeInfos(List<File> sources) throws EncoderException {
+		return probeInfos(sources, null);
+	}
+
+	/**
+	 * Runs a single ffmpeg process to get the informations about many
+	 * multimedia files, on behalf of an encoding job.
+	 * 
+	 * @param job
+	 *            The job killing the probe if aborted, or null.
+	 */
+	private List<MultimediaInfo> probeInfos(List<File> sources, EncodingJob job) throws EncoderException {
+		FFMPEGExecutor ffmpeg = locator.createWarmExecutor();
+		for (File source : sources) {
+			ffmpeg.addArgument("-i");
+			ffmpeg.addArgument(source.getAbsolutePath());
+		}
+		if (job != null) {
+			job.probing(ffmpeg);
+		}
+		try {
+			ffmpeg.execute();
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		}
+		if (job != null) {
+			job.started();
+		}
+		try {
+			List<MultimediaInfo> infos = MultimediaInfoParser.parse(ffmpeg.getErrorStream());
+			// Reaped now, the process needs no kill.
+			ffmpeg.waitFor();
+			return infos;
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffmpeg.destroy();
+		}
+	}
+
+	/**
+	 * Simple more strong more
+	 * 
+	 * @param source
+	 * @param tartget
+	 * @throws EncoderException
+	 */
+	public void encode(File source, File tartget) throws EncoderException {
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		ffmpeg.addArgument("-i");
+		ffmpeg.addArgument(source.getAbsolutePath());
+		ffmpeg.addArgument("-y");
+		ffmpeg.addArgument(tartget.getAbsolutePath());
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			execute(ffmpeg);
+			success = true;
+		} finally {
+			encoded(start, source, Collections.singletonList(tartget), -1, success);
+		}
+	}
+
+	/**
+	 * Custome encode
+	 * 
+	 * @Description:
+	 * @Create: 2016-9-27 12:28:22
+	 * @author HeHangjie
+	 * @update logs
+	 * @param perSourceCmds
+	 * @param source
+	 * @param perTargetCmds
+	 * @param tartget
+	 * @throws EncoderException
+	 * @return void
+	 */
+	public void encode(List<String> perCmds, File source, List<String> cmds, File tartget)
+			throws EncoderException {
+		encode(perCmds, source, cmds, tartget, null);
+	}
+
+	/**
+	 * Custom encode, reporting the progress of the process to a listener. The
+	 * source is probed with {@link #getInfo(File)} first, to compute the
+	 * progress against its duration.
+	 * 
+	 * @param perCmds
+	 *            The arguments preceding the source file.
+	 * @param source
+	 *            The source multimedia file.
+	 * @param cmds
+	 *            The arguments preceding the target file.
+	 * @param tartget
+	 *            The target multimedia file.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(List<String> perCmds, File source, List<String> cmds, File tartget,
+			EncoderProgressListener listener) throws EncoderException {
+		long start = System.nanoTime();
+		long duration = -1;
+		if (listener != null) {
+			MultimediaInfo info = getInfo(source);
+			listener.sourceInfo(info);
+			duration = info.getDuration();
+		}
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		if (listener != null) {
+			addProgressArguments(ffmpeg);
+		}
+		for (String s : perCmds) {
+			ffmpeg.addArgument(s);
+		}
+		ffmpeg.addArgument(source.getAbsolutePath());
+		for (String s : cmds) {
+			ffmpeg.addArgument(s);
+		}
+		ffmpeg.addArgument(tartget.getAbsolutePath());
+		boolean success = false;
+		try {
+			execute(ffmpeg, listener, duration);
+			success = true;
+		} finally {
+			encoded(start, source, Collections.singletonList(tartget), duration, success);
+		}
+	}
+
+	/**
+	 * Re-encode a multimedia file.
+	 * 
+	 * @param source
+	 *            The source multimedia file. It cannot be null. Be sure this
+	 *            file can be decoded (see
+	 *            {@link Encoder#getSupportedDecodingFormats()},
+	 *            {@link Encoder#getAudioDecoders()} and
+	 *            {@link Encoder#getVideoDecoders()}).
+	 * @param target
+	 *            The target multimedia re-encoded file. It cannot be null. If
+	 *            this file already exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(File source, File target, EncodingAttributes attributes)
+			throws IllegalArgumentException, InputFormatException, EncoderException {
+		encode(source, target, attributes, null);
+	}
+
+	/**
+	 * Re-encode a multimedia file, reporting the progress of the process to a
+	 * listener.
+	 * 
+	 * @param source
+	 *            The source multimedia file. It cannot be null. Be sure this
+	 *            file can be decoded (see
+	 *            {@link Encoder#getSupportedDecodingFormats()},
+	 *            {@link Encoder#getAudioDecoders()} and
+	 *            {@link Encoder#getVideoDecoders()}).
+	 * @param target
+	 *            The target multimedia re-encoded file. It cannot be null. If
+	 *            this file already exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null. An {@link EncoderStatisticsListener} also
+	 *            receives the speed and the frame rate of the process.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(File source, File target, EncodingAttributes attributes, EncoderProgressListener listener)
+			throws IllegalArgumentException, InputFormatException, EncoderException {
+		encode(source, target, attributes, listener, null);
+	}
+
+	/**
+	 * Re-encode a multimedia file in a shared pool of daemon threads,
+	 * returning at once. The pool runs as many encodings at the same time as
+	 * {@link TranscodeScheduler#defaultConcurrency(int)} suggests, the others
+	 * wait for a free thread. The returned handle can cancel the encoding,
+	 * even a waiting one, and wait for its end.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file. If this file already
+	 *            exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process, including its
+	 *            timeouts.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null. It is called by the encoding thread.
+	 * @return The handle of the encoding.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 */
+	public EncodingJob start(File source, File target, EncodingAttributes attributes,
+			EncoderProgressListener listener) throws IllegalArgumentException {
+		return start(source, target, attributes, listener, getJobExecutor());
+	}
+
+	/**
+	 * Re-encode a multimedia file with the given executor, returning at once.
+	 * The returned handle can cancel the encoding, even one still waiting for
+	 * the executor, and wait for its end.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file. If this file already
+	 *            exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process, including its
+	 *            timeouts.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null. It is called by the encoding thread.
+	 * @param executor
+	 *            The executor running the encoding, bounding the encodings
+	 *            running at the same time.
+	 * @return The handle of the encoding.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             If the executor does not accept the encoding.
+	 */
+	public EncodingJob start(final File source, final File target, final EncodingAttributes attributes,
+			final EncoderProgressListener listener, Executor executor) throws IllegalArgumentException {
+		checkAttributes(attributes);
+		final EncodingJob job = new EncodingJob();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					encode(source, target, attributes, listener, job);
+				} catch (EncoderException | RuntimeException e) {
+					// Recorded in the job.
+					;
+				}
+			}
+		});
+		return job;
+	}
+
+	/**
+	 * Returns the pool shared by the jobs started without an executor,
+	 * creating it the first time.
+	 * 
+	 * @return The shared pool.
+	 */
+	private static synchronized Executor getJobExecutor() {
+		if (jobExecutor == null) {
+			int threads = TranscodeScheduler.defaultConcurrency(TranscodeScheduler.DEFAULT_THREADS_PER_JOB);
+			jobExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+						private final AtomicInteger count = new AtomicInteger(1);
+
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "ffmpeg-encoding-job-" + count.getAndIncrement());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			jobExecutor.allowCoreThreadTimeOut(true);
+		}
+		return jobExecutor;
+	}
+
+	/**
+	 * Re-encode a multimedia file, controlled by a job handle: another thread
+	 * can cancel the encoding through the handle, and the handle is aborted if
+	 * the timeout or the stall timeout of the attributes expires. An aborted
+	 * encoding kills its ffmpeg process and throws a typed exception.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file. If this file already
+	 *            exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process, including its
+	 *            timeouts.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null.
+	 * @param job
+	 *            A new job handle, or null. A handle can be used only once.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws com.itlieutenant.exception.EncoderCancelledException
+	 *             If the job has been cancelled.
+	 * @throws com.itlieutenant.exception.EncoderTimeoutException
+	 *             If the timeout expired.
+	 * @throws com.itlieutenant.exception.EncoderStalledException
+	 *             If the stall timeout expired.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(File source, File target, EncodingAttributes attributes, EncoderProgressListener listener,
+			EncodingJob job) throws IllegalArgumentException, InputFormatException, EncoderException {
+		if (job == null) {
+			encode(source, target, attributes, listener, new EncodingJob());
+			return;
+		}
+		long start = System.nanoTime();
+		long duration = -1;
+		boolean success = false;
+		try {
+			duration = encodeFile(source, target, attributes, listener, job);
+			job.finish(null);
+			success = true;
+		} catch (EncoderException e) {
+			job.finish(e);
+			throw e;
+		} catch (RuntimeException e) {
+			job.finish(new EncoderException(e));
+			throw e;
+		} finally {
+			encoded(start, source, Collections.singletonList(target), duration, success);
+		}
+	}
+
+	/**
+	 * Re-encode a multimedia file, controlled by a job handle.
+	 * 
+	 * @return The expected duration of the output in millis, or -1 if
+	 *         unknown.
+	 */
+	private long encodeFile(File source, File target, EncodingAttributes attributes, EncoderProgressListener listener,
+			EncodingJob job) throws IllegalArgumentException, InputFormatException, EncoderException {
+		checkAttributes(attributes);
+		// A queued job cancelled or timed out never probes; the probes count
+		// in its timeout.
+		job.prepare(attributes);
+		if (Boolean.TRUE.equals(attributes.getAutoCopy())) {
+			attributes = resolveStreamCopy(source, attributes, job);
+		}
+		Float offsetAttribute = attributes.getOffset();
+		Float durationAttribute = attributes.getDuration();
+		target = target.getAbsoluteFile();
+		target.getParentFile().mkdirs();
+		long duration = -1;
+		if (listener != null) {
+			MultimediaInfo info;
+			try {
+				info = getInfo(source, job);
+			} catch (EncoderException e) {
+				// A probe killed by an abort.
+				job.checkAborted();
+				throw e;
+			}
+			listener.sourceInfo(info);
+			duration = info.getDuration();
+			if (duration > 0 && offsetAttribute != null) {
+				duration -= (long) (offsetAttribute.floatValue() * 1000);
+			}
+		}
+		if (durationAttribute != null) {
+			long limit = (long) (durationAttribute.floatValue() * 1000);
+			duration = duration > 0 ? Math.min(duration, limit) : limit;
+		}
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		if (EncodingJob.needsProgress(attributes)) {
+			listener = job.watch(listener);
+		}
+		if (listener != null) {
+			addProgressArguments(ffmpeg);
+		}
+		addInputArguments(ffmpeg, attributes, source.getAbsolutePath());
+		addOutputArguments(ffmpeg, attributes);
+		ffmpeg.addArgument("-y");
+		ffmpeg.addArgument(target.getAbsolutePath());
+		execute(ffmpeg, listener, duration, job, attributes);
+		return duration;
+	}
+
+	/**
+	 * Re-encode a multimedia stream, without temporary files: the source is
+	 * piped into the ffmpeg standard input and the encoded stream is read from
+	 * its standard output.
+	 * 
+	 * @param source
+	 *            The source multimedia stream. It is read up to its end, but
+	 *            not closed.
+	 * @param target
+	 *            The target stream receiving the encoded data. It is not
+	 *            closed.
+	 * @param attributes
+	 *            A set of attributes for the encoding process. The format is
+	 *            mandatory, and it must be suitable for a non seekable output.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null, or the format
+	 *             is null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 * @see #encode(ReadableByteChannel, WritableByteChannel,
+	 *      EncodingAttributes, EncoderProgressListener)
+	 */
+	public void encode(InputStream source, OutputStream target, EncodingAttributes attributes)
+			throws IllegalArgumentException, EncoderException {
+		encode(Channels.newChannel(source), Channels.newChannel(target), attributes, null);
+	}
+
+	/**
+	 * Re-encode a multimedia stream, without temporary files, reporting the
+	 * progress of the process to a listener.
+	 * 
+	 * @param source
+	 *            The source multimedia stream. It is read up to its end, but
+	 *            not closed.
+	 * @param target
+	 *            The target stream receiving the encoded data. It is not
+	 *            closed.
+	 * @param attributes
+	 *            A set of attributes for the encoding process. The format is
+	 *            mandatory, and it must be suitable for a non seekable output.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null, or the format
+	 *             is null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 * @see #encode(ReadableByteChannel, WritableByteChannel,
+	 *      EncodingAttributes, EncoderProgressListener)
+	 */
+	public void encode(InputStream source, OutputStream target, EncodingAttributes attributes,
+			EncoderProgressListener listener) throws IllegalArgumentException, EncoderException {
+		encode(Channels.newChannel(source), Channels.newChannel(target), attributes, listener);
+	}
+
+	/**
+	 * Re-encode a multimedia stream, without temporary files. The source is
+	 * written in the ffmpeg standard input ("pipe:0") by a feeder thread,
+	 * while the calling thread moves the ffmpeg standard output ("pipe:1")
+	 * into the target. The source can't be sought, so its format must be
+	 * recognizable from its first bytes (e.g. mp4 files need their "moov"
+	 * atom at the beginning).
+	 * 
+	 * @param source
+	 *            The source multimedia channel. It is read up to its end, but
+	 *            not closed.
+	 * @param target
+	 *            The target channel receiving the encoded data. It is not
+	 *            closed.
+	 * @param attributes
+	 *            A set of attributes for the encoding process. The format is
+	 *            mandatory, and it must be suitable for a non seekable output.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null. The source is not probed, so
+	 *            {@link EncoderProgressListener#sourceInfo(MultimediaInfo)} is
+	 *            not called and the progress is reported only if the duration
+	 *            attribute is set.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null, or the format
+	 *             is null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process, reading
+	 *             the source or writing the target.
+	 */
+	public void encode(ReadableByteChannel source, WritableByteChannel target, EncodingAttributes attributes,
+			EncoderProgressListener listener) throws IllegalArgumentException, EncoderException {
+		checkAttributes(attributes);
+		if (attributes.getFormat() == null) {
+			throw new IllegalArgumentException("The format is mandatory when encoding to a stream");
+		}
+		long duration = -1;
+		Float durationAttribute = attributes.getDuration();
+		if (durationAttribute != null) {
+			duration = (long) (durationAttribute.floatValue() * 1000);
+		}
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		EncodingJob job = new EncodingJob();
+		if (EncodingJob.needsProgress(attributes)) {
+			listener = job.watch(listener);
+		}
+		if (listener != null) {
+			// The standard output carries the encoded data.
+			addProgressArguments(ffmpeg, "pipe:2");
+		}
+		addInputArguments(ffmpeg, attributes, "pipe:0");
+		addOutputArguments(ffmpeg, attributes);
+		ffmpeg.addArgument("pipe:1");
+		execute(ffmpeg, source, target, listener, duration, job, attributes);
+	}
+
+	/**
+	 * Encodes many renditions of the same source with a single ffmpeg
+	 * process, typically the ladder of an adaptive bit rate stream. The source
+	 * is decoded once: its video is split by a filter graph and scaled to the
+	 * size of each rendition, then every rendition is encoded with its own
+	 * codec, bit rate, frame rate and format.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param targets
+	 *            The target files, one for each rendition. Existing files
+	 *            are overwrited.
+	 * @param attributes
+	 *            The attributes of each rendition, in the same order of the
+	 *            targets. All of them must have the same offset.
+	 * @throws IllegalArgumentException
+	 *             If the lists are empty or have different sizes, if both
+	 *             audio and video parameters of a rendition are null, or if
+	 *             the offsets differ.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(File source, List<File> targets, List<EncodingAttributes> attributes)
+			throws IllegalArgumentException, InputFormatException, EncoderException {
+		encode(source, targets, attributes, null);
+	}
+
+	/**
+	 * Encodes many renditions of the same source with a single ffmpeg
+	 * process, reporting the progress of the process to a listener.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param targets
+	 *            The target files, one for each rendition. Existing files
+	 *            are overwrited.
+	 * @param attributes
+	 *            The attributes of each rendition, in the same order of the
+	 *            targets. All of them must have the same offset.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null.
+	 * @throws IllegalArgumentException
+	 *             If the lists are empty or have different sizes, if both
+	 *             audio and video parameters of a rendition are null, or if
+	 *             the offsets differ.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 * @see #encode(File, List, List)
+	 */
+	public void encode(File source, List<File> targets, List<EncodingAttributes> attributes,
+			EncoderProgressListener listener) throws IllegalArgumentException, InputFormatException, EncoderException {
+		int n = targets.size();
+		if (n == 0 || n != attributes.size()) {
+			throw new IllegalArgumentException("One set of attributes is needed for each target");
+		}
+		long start = System.nanoTime();
+		Float offsetAttribute = attributes.get(0).getOffset();
+		int videoOutputs = 0;
+		boolean scaled = false;
+		for (EncodingAttributes a : attributes) {
+			checkAttributes(a);
+			if (!Objects.equals(offsetAttribute, a.getOffset())) {
+				throw new IllegalArgumentException("The renditions must share the same offset");
+			}
+			if (a.getVideoAttributes() != null) {
+				videoOutputs++;
+				scaled |= a.getVideoAttributes().getSize() != null;
+			}
+		}
+		long duration = -1;
+		if (listener != null) {
+			MultimediaInfo info = getInfo(source);
+			listener.sourceInfo(info);
+			duration = info.getDuration();
+			if (duration > 0 && offsetAttribute != null) {
+				duration -= (long) (offsetAttribute.floatValue() * 1000);
+			}
+			// The longest rendition, if all of them are limited.
+			long limit = 0;
+			for (EncodingAttributes a : attributes) {
+				Float durationAttribute = a.getDuration();
+				if (durationAttribute == null) {
+					limit = -1;
+					break;
+				}
+				limit = Math.max(limit, (long) (durationAttribute.floatValue() * 1000));
+			}
+			if (limit > 0) {
+				duration = duration > 0 ? Math.min(duration, limit) : limit;
+			}
+		}
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		if (listener != null) {
+			addProgressArguments(ffmpeg);
+		}
+		if (offsetAttribute != null) {
+			ffmpeg.addArgument("-ss");
+			ffmpeg.addArgument(String.valueOf(offsetAttribute.floatValue()));
+		}
+		ffmpeg.addArgument("-i");
+		ffmpeg.addArgument(source.getAbsolutePath());
+		// One branch of the split for each video rendition, scaled if needed.
+		boolean filtered = scaled || videoOutputs > 1;
+		if (filtered) {
+			StringBuilder graph = new StringBuilder("[0:v]");
+			if (videoOutputs > 1) {
+				graph.append("split=").append(videoOutputs);
+				for (int i = 0; i < videoOutputs; i++) {
+					graph.append("[s").append(i).append(']');
+				}
+			} else {
+				graph.append("null[s0]");
+			}
+			int branch = 0;
+			for (EncodingAttributes a : attributes) {
+				VideoAttributes videoAttributes = a.getVideoAttributes();
+				if (videoAttributes != null) {
+					VideoSize size = videoAttributes.getSize();
+					graph.append(";[s").append(branch).append(']');
+					if (size != null) {
+						graph.append("scale=").append(size.getWidth()).append(':').append(size.getHeight());
+					} else {
+						graph.append("null");
+					}
+					graph.append("[v").append(branch).append(']');
+					branch++;
+				}
+			}
+			ffmpeg.addArgument("-filter_complex");
+			ffmpeg.addArgument(graph.toString());
+		}
+		int threads = addThreadArguments(ffmpeg, attributes);
+		int branch = 0;
+		for (int i = 0; i < n; i++) {
+			EncodingAttributes a = attributes.get(i);
+			File target = targets.get(i).getAbsoluteFile();
+			target.getParentFile().mkdirs();
+			if (a.getVideoAttributes() != null) {
+				ffmpeg.addArgument("-map");
+				ffmpeg.addArgument(filtered ? "[v" + branch + "]" : "0:v:0");
+				branch++;
+			}
+			if (a.getAudioAttributes() != null) {
+				ffmpeg.addArgument("-map");
+				ffmpeg.addArgument("0:a:0?");
+			}
+			Float durationAttribute = a.getDuration();
+			if (durationAttribute != null) {
+				ffmpeg.addArgument("-t");
+				ffmpeg.addArgument(String.valueOf(durationAttribute.floatValue()));
+			}
+			addOutputArguments(ffmpeg, a, false, threads);
+			ffmpeg.addArgument("-y");
+			ffmpeg.addArgument(target.getAbsolutePath());
+		}
+		boolean success = false;
+		try {
+			execute(ffmpeg, listener, duration);
+			success = true;
+		} finally {
+			encoded(start, source, targets, duration, success);
+		}
+	}
+
+	/**
+	 * Encodes a multimedia file and packages it for adaptive streaming, as HLS
+	 * or DASH according to the packaging attributes. The listener is told
+	 * about each segment and playlist update as soon as it is written, so that
+	 * they can be published while the encoding goes on.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param playlist
+	 *            The target playlist (m3u8) or manifest (mpd). The segments
+	 *            are written next to it, unless the packaging attributes say
+	 *            otherwise.
+	 * @param attributes
+	 *            A set of attributes for the encoding process. The format is
+	 *            ignored.
+	 * @param packaging
+	 *            The packaging attributes, {@link HlsAttributes} or
+	 *            {@link DashAttributes}.
+	 * @param listener
+	 *            An optional packaging listener. It can be null. If it is also
+	 *            an {@link EncoderProgressListener}, it receives the progress
+	 *            of the encoding too.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(File source, File playlist, EncodingAttributes attributes, PackagingAttributes packaging,
+			PackagingListener listener) throws IllegalArgumentException, InputFormatException, EncoderException {
+		checkAttributes(attributes);
+		long start = System.nanoTime();
+		EncoderProgressListener progressListener = listener instanceof EncoderProgressListener
+				? (EncoderProgressListener) listener : null;
+		long duration = -1;
+		if (progressListener != null) {
+			MultimediaInfo info = getInfo(source);
+			progressListener.sourceInfo(info);
+			duration = info.getDuration();
+			Float offsetAttribute = attributes.getOffset();
+			if (duration > 0 && offsetAttribute != null) {
+				duration -= (long) (offsetAttribute.floatValue() * 1000);
+			}
+			Float durationAttribute = attributes.getDuration();
+			if (durationAttribute != null) {
+				long limit = (long) (durationAttribute.floatValue() * 1000);
+				duration = duration > 0 ? Math.min(duration, limit) : limit;
+			}
+		}
+		playlist = playlist.getAbsoluteFile();
+		playlist.getParentFile().mkdirs();
+		if (Boolean.TRUE.equals(attributes.getAutoCopy())) {
+			attributes = resolveStreamCopy(source, attributes, null);
+		}
+		EncodingAttributes packaged = new EncodingAttributes(attributes);
+		packaged.setFormat(packaging.getFormat());
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		EncodingJob job = new EncodingJob();
+		if (EncodingJob.needsProgress(attributes)) {
+			progressListener = job.watch(progressListener);
+		}
+		if (progressListener != null) {
+			addProgressArguments(ffmpeg);
+		}
+		addInputArguments(ffmpeg, packaged, source.getAbsolutePath());
+		addOutputArguments(ffmpeg, packaged);
+		addPackagingArguments(ffmpeg, packaging);
+		ffmpeg.addArgument("-y");
+		ffmpeg.addArgument(playlist.getAbsolutePath());
+		StreamHandler outputHandler = progressListener != null ? new ProgressParser(progressListener, duration)
+				: null;
+		StreamHandler errorHandler = null;
+		if (listener != null) {
+			errorHandler = new PackagingParser(listener, progressListener, ffmpeg.getWorkingDirectory());
+		}
+		boolean success = false;
+		try {
+			execute(ffmpeg, outputHandler, errorHandler, job, packaged);
+			success = true;
+		} finally {
+			// The segments are many, and may be removed while encoding.
+			encoded(start, source, null, duration, success);
+		}
+	}
+
+	/**
+	 * Decodes the video of a multimedia file in raw frames, handed one by one
+	 * to a listener as memory buffers. The frames are written by ffmpeg on its
+	 * standard output as "rawvideo", and read in a small pool of reusable
+	 * direct buffers: no image file is written, and no image is encoded or
+	 * decoded again.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param attributes
+	 *            The attributes of the frames. If the size is not set the
+	 *            source is probed, and the frames keep its stored size and
+	 *            orientation.
+	 * @param listener
+	 *            The listener receiving the frames, on the calling thread.
+	 * @throws IllegalArgumentException
+	 *             If the pixel format is not supported.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If the source has no video, or a problem occurs during the
+	 *             decoding process.
+	 */
+	public void decodeFrames(File source, RawVideoAttributes attributes, final RawFrameListener listener)
+			throws IllegalArgumentException, InputFormatException, EncoderException {
+		String pixelFormat = attributes.getPixelFormat();
+		VideoSize size = attributes.getSize();
+		boolean probed = size == null;
+		if (probed) {
+			VideoInfo video = getInfo(source).getVideo();
+			if (video == null || video.getSize() == null) {
+				throw new EncoderException("The source has no video stream");
+			}
+			size = video.getSize();
+		}
+		int frameSize = RawVideoAttributes.getFrameSize(pixelFormat, size);
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		if (probed) {
+			// Rotated frames would not have the probed size.
+			ffmpeg.addArgument("-noautorotate");
+		}
+		Float offset = attributes.getOffset();
+		if (offset != null) {
+			ffmpeg.addArgument("-ss");
+			ffmpeg.addArgument(String.valueOf(offset.floatValue()));
+		}
+		ffmpeg.addArgument("-i");
+		ffmpeg.addArgument(source.getAbsolutePath());
+		Float duration = attributes.getDuration();
+		if (duration != null) {
+			ffmpeg.addArgument("-t");
+			ffmpeg.addArgument(String.valueOf(duration.floatValue()));
+		}
+		ffmpeg.addArgument("-map");
+		ffmpeg.addArgument("0:v:0");
+		if (!probed) {
+			ffmpeg.addArgument("-s");
+			ffmpeg.addArgument(size.getWidth() + "x" + size.getHeight());
+		}
+		Float frameRate = attributes.getFrameRate();
+		if (frameRate != null) {
+			ffmpeg.addArgument("-r");
+			ffmpeg.addArgument(String.valueOf(frameRate.floatValue()));
+		}
+		ffmpeg.addArgument("-pix_fmt");
+		ffmpeg.addArgument(pixelFormat);
+		ffmpeg.addArgument("-f");
+		ffmpeg.addArgument("rawvideo");
+		ffmpeg.addArgument("pipe:1");
+		ErrorTail tail = new ErrorTail(null, ffmpeg.getInputs());
+		int exitCode;
+		try {
+			ffmpeg.execute();
+			ffmpeg.pumpError(tail);
+			ChunkReader reader = new ChunkReader(ffmpeg.getInputStream(), frameSize, ChunkReader.DEFAULT_BUFFERS,
+					false);
+			reader.run(new ChunkReader.ChunkHandler() {
+				public void chunk(ByteBuffer chunk, long index) {
+					listener.frame(chunk, index);
+				}
+			});
+			exitCode = ffmpeg.waitFor();
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffmpeg.destroy();
+		}
+		if (exitCode != 0) {
+			throw tail.failure(exitCode);
+		}
+	}
+
+	/**
+	 * Decodes the audio of a multimedia file in 16 bit PCM samples, handed to
+	 * a listener in fixed-size chunks. The samples are written by ffmpeg on
+	 * its standard output, so no file is written and the memory used does not
+	 * depend on the length of the source.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param attributes
+	 *            The offset and the duration of the decoding, and the audio
+	 *            attributes giving the sampling rate, the channels and the
+	 *            volume of the samples. The codec, the bit rate, the video
+	 *            attributes and the format are ignored. If the sampling rate
+	 *            or the channels are not set, the ones of the source are kept.
+	 * @param chunkSize
+	 *            The number of samples of each channel in a chunk.
+	 * @param listener
+	 *            The listener receiving the samples, on the calling thread.
+	 * @throws IllegalArgumentException
+	 *             If the chunk size is not positive.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If the source has no audio, or a problem occurs during the
+	 *             decoding process.
+	 */
+	public void decodeSamples(File source, EncodingAttributes attributes, int chunkSize,
+			final ShortSampleListener listener) throws IllegalArgumentException, InputFormatException, EncoderException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive");
+		}
+		int[] format = getSampleFormat(source, attributes);
+		listener.format(format[0], format[1]);
+		final short[] samples = new short[chunkSize * format[1]];
+		decodeSamples(source, attributes, format, "s16le", chunkSize * format[1] * 2,
+				new ChunkReader.ChunkHandler() {
+					public void chunk(ByteBuffer chunk, long index) {
+						chunk.order(ByteOrder.LITTLE_ENDIAN);
+						int length = chunk.remaining() / 2;
+						for (int i = 0; i < length; i++) {
+							samples[i] = chunk.getShort(i * 2);
+						}
+						listener.samples(samples, length);
+					}
+				});
+	}
+
+	/**
+	 * Decodes the audio of a multimedia file in 32 bit float PCM samples,
+	 * handed to a listener in fixed-size chunks. The samples are written by
+	 * ffmpeg on its standard output, so no file is written and the memory used
+	 * does not depend on the length of the source.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param attributes
+	 *            The offset and the duration of the decoding, and the audio
+	 *            attributes giving the sampling rate, the channels and the
+	 *            volume of the samples. The codec, the bit rate, the video
+	 *            attributes and the format are ignored. If the sampling rate
+	 *            or the channels are not set, the ones of the source are kept.
+	 * @param chunkSize
+	 *            The number of samples of each channel in a chunk.
+	 * @param listener
+	 *            The listener receiving the samples, on the calling thread.
+	 * @throws IllegalArgumentException
+	 *             If the chunk size is not positive.
+	 * @throws InputFormatException
+	 *             If the source multimedia file cannot be decoded.
+	 * @throws EncoderException
+	 *             If the source has no audio, or a problem occurs during the
+	 *             decoding process.
+	 */
+	public void decodeSamples(File source, EncodingAttributes attributes, int chunkSize,
+			final FloatSampleListener listener) throws IllegalArgumentException, InputFormatException, EncoderException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive");
+		}
+		int[] format = getSampleFormat(source, attributes);
+		listener.format(format[0], format[1]);
+		final float[] samples = new float[chunkSize * format[1]];
+		decodeSamples(source, attributes, format, "f32le", chunkSize * format[1] * 4,
+				new ChunkReader.ChunkHandler() {
+					public void chunk(ByteBuffer chunk, long index) {
+						chunk.order(ByteOrder.LITTLE_ENDIAN);
+						int length = chunk.remaining() / 4;
+						for (int i = 0; i < length; i++) {
+							samples[i] = chunk.getFloat(i * 4);
+						}
+						listener.samples(samples, length);
+					}
+				});
+	}
+
+	/**
+	 * Returns the sampling rate and the channels of a PCM decoding, probing the
+	 * source if they are not set in the attributes.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param attributes
+	 *            The attributes of the decoding.
+	 * @return The sampling rate and the number of channels.
+	 * @throws IllegalArgumentException
+	 *             If the sampling rate or the channels are not positive.
+	 * @throws EncoderException
+	 *             If the source must be probed and has no audio, or can't be
+	 *             probed.
+	 */
+	private int[] getSampleFormat(File source, EncodingAttributes attributes)
+			throws IllegalArgumentException, EncoderException {
+		AudioAttributes audio = attributes.getAudioAttributes();
+		Integer samplingRate = audio != null ? audio.getSamplingRate() : null;
+		Integer channels = audio != null ? audio.getChannels() : null;
+		int[] format = new int[2];
+		if (samplingRate == null || channels == null) {
+			AudioInfo info = getInfo(source).getAudio();
+			if (info == null || info.getSamplingRate() < 1 || info.getChannels() < 1) {
+				throw new EncoderException("The source has no audio stream");
+			}
+			format[0] = info.getSamplingRate();
+			format[1] = info.getChannels();
+		}
+		if (samplingRate != null) {
+			format[0] = samplingRate.intValue();
+		}
+		if (channels != null) {
+			format[1] = channels.intValue();
+		}
+		if (format[0] < 1 || format[1] < 1) {
+			throw new IllegalArgumentException("The sampling rate and the channels must be positive");
+		}
+		return format;
+	}
+
+	/**
+	 * Runs a PCM decoding, handing the chunks of samples to a handler.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param attributes
+	 *            The attributes of the decoding.
+	 * @param format
+	 *            The sampling rate and the channels of the samples.
+	 * @param sampleFormat
+	 *            The ffmpeg raw format of the samples.
+	 * @param chunkBytes
+	 *            The size of a chunk, in bytes.
+	 * @param handler
+	 *            The handler of the chunks.
+	 * @throws EncoderException
+	 *             If a problem occurs during the decoding process.
+	 */
+	private void decodeSamples(File source, EncodingAttributes attributes, int[] format, String sampleFormat,
+			int chunkBytes, ChunkReader.ChunkHandler handler) throws EncoderException {
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		addInputArguments(ffmpeg, attributes, source.getAbsolutePath());
+		ffmpeg.addArgument("-map");
+		ffmpeg.addArgument("0:a:0");
+		ffmpeg.addArgument("-ar");
+		ffmpeg.addArgument(String.valueOf(format[0]));
+		ffmpeg.addArgument("-ac");
+		ffmpeg.addArgument(String.valueOf(format[1]));
+		AudioAttributes audio = attributes.getAudioAttributes();
+		if (audio != null && audio.getVolume() != null) {
+			ffmpeg.addArgument("-vol");
+			ffmpeg.addArgument(String.valueOf(audio.getVolume().intValue()));
+		}
+		ffmpeg.addArgument("-acodec");
+		ffmpeg.addArgument("pcm_" + sampleFormat);
+		ffmpeg.addArgument("-f");
+		ffmpeg.addArgument(sampleFormat);
+		ffmpeg.addArgument("pipe:1");
+		ErrorTail tail = new ErrorTail(null, ffmpeg.getInputs());
+		int exitCode;
+		try {
+			ffmpeg.execute();
+			ffmpeg.pumpError(tail);
+			// The last chunk is shorter, not dropped.
+			new ChunkReader(ffmpeg.getInputStream(), chunkBytes, ChunkReader.DEFAULT_BUFFERS, true).run(handler);
+			exitCode = ffmpeg.waitFor();
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffmpeg.destroy();
+		}
+		if (exitCode != 0) {
+			throw tail.failure(exitCode);
+		}
+	}
+
+	/**
+	 * Adds the muxer options of a packaging.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 * @param packaging
+	 *            The packaging attributes.
+	 */
+	private void addPackagingArguments(FFMPEGExecutor ffmpeg, PackagingAttributes packaging) {
+		Float segmentDuration = packaging.getSegmentDuration();
+		Integer playlistSize = packaging.getPlaylistSize();
+		if (packaging instanceof HlsAttributes) {
+			HlsAttributes hls = (HlsAttributes) packaging;
+			if (segmentDuration != null) {
+				ffmpeg.addArgument("-hls_time");
+				ffmpeg.addArgument(String.valueOf(segmentDuration.floatValue()));
+			}
+			if (playlistSize != null) {
+				ffmpeg.addArgument("-hls_list_size");
+				ffmpeg.addArgument(String.valueOf(playlistSize.intValue()));
+			}
+			if (hls.getPlaylistType() != null) {
+				ffmpeg.addArgument("-hls_playlist_type");
+				ffmpeg.addArgument(hls.getPlaylistType());
+			}
+			if (hls.getSegmentType() != null) {
+				ffmpeg.addArgument("-hls_segment_type");
+				ffmpeg.addArgument(hls.getSegmentType());
+			}
+			if (hls.getSegmentFilename() != null) {
+				ffmpeg.addArgument("-hls_segment_filename");
+				ffmpeg.addArgument(hls.getSegmentFilename());
+			}
+			// Renamed temporary files tell when a segment is complete.
+			ffmpeg.addArgument("-hls_flags");
+			ffmpeg.addArgument(hls.getFlags() != null ? hls.getFlags() + "+temp_file" : "temp_file");
+		} else if (packaging instanceof DashAttributes) {
+			DashAttributes dash = (DashAttributes) packaging;
+			if (segmentDuration != null) {
+				ffmpeg.addArgument("-seg_duration");
+				ffmpeg.addArgument(String.valueOf(segmentDuration.floatValue()));
+			}
+			if (playlistSize != null) {
+				ffmpeg.addArgument("-window_size");
+				ffmpeg.addArgument(String.valueOf(playlistSize.intValue()));
+			}
+			if (dash.getUseTemplate() != null) {
+				ffmpeg.addArgument("-use_template");
+				ffmpeg.addArgument(dash.getUseTemplate().booleanValue() ? "1" : "0");
+			}
+			if (dash.getUseTimeline() != null) {
+				ffmpeg.addArgument("-use_timeline");
+				ffmpeg.addArgument(dash.getUseTimeline().booleanValue() ? "1" : "0");
+			}
+			if (dash.getInitSegmentName() != null) {
+				ffmpeg.addArgument("-init_seg_name");
+				ffmpeg.addArgument(dash.getInitSegmentName());
+			}
+			if (dash.getMediaSegmentName() != null) {
+				ffmpeg.addArgument("-media_seg_name");
+				ffmpeg.addArgument(dash.getMediaSegmentName());
+			}
+		}
+	}
+
+	/**
+	 * Returns the attributes of an encoding with a direct stream copy for each
+	 * stream of the source already matching the requested audio or video
+	 * attributes (see {@link EncodingAttributes#setAutoCopy(Boolean)}).
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @param job
+	 *            The job killing the probe if aborted, or null.
+	 * @return The attributes to encode with: the given ones if no stream can
+	 *         be copied, a modified copy otherwise.
+	 */
+	private EncodingAttributes resolveStreamCopy(File source, EncodingAttributes attributes, EncodingJob job) {
+		MultimediaInfo info;
+		try {
+			info = probe(source, job);
+		} catch (EncoderException e) {
+			// The encoding will report what's wrong with the source.
+			return attributes;
+		}
+		FFmpegCapabilities capabilities = null;
+		try {
+			capabilities = getCapabilities();
+		} catch (EncoderException e) {
+			// Encoder names can't be resolved to codecs.
+			;
+		}
+		VideoAttributes video = attributes.getVideoAttributes();
+		AudioAttributes audio = attributes.getAudioAttributes();
+		// A copy starts at the keyframe before the offset.
+		boolean copyVideo = video != null && attributes.getOffset() == null
+				&& matches(info.getVideo(), video, capabilities);
+		boolean copyAudio = audio != null && matches(info.getAudio(), audio, capabilities);
+		if (!copyVideo && !copyAudio) {
+			return attributes;
+		}
+		EncodingAttributes resolved = new EncodingAttributes(attributes);
+		if (copyVideo) {
+			VideoAttributes copy = new VideoAttributes();
+			copy.setCodec(VideoAttributes.DIRECT_STREAM_COPY);
+			copy.setTag(video.getTag());
+			video = copy;
+		}
+		if (copyAudio) {
+			AudioAttributes copy = new AudioAttributes();
+			copy.setCodec(AudioAttributes.DIRECT_STREAM_COPY);
+			audio = copy;
+		}
+		resolved.setVideoAttributes(video);
+		resolved.setAudioAttributes(audio);
+		return resolved;
+	}
+
+	/**
+	 * Tells if a video stream already matches the requested attributes.
+	 * 
+	 * @param source
+	 *            The probed video stream, or null.
 	 * @param target
-	 *            The target multimedia re-encoded file. It cannot be null. If
-	 *            this file already exists, it will be overwrited.
+	 *            The requested video attributes.
+	 * @param capabilities
+	 *            The capabilities of the ffmpeg executable, or null.
+	 * @return true if the stream can be copied.
+	 */
+	private static boolean matches(VideoInfo source, VideoAttributes target, FFmpegCapabilities capabilities) {
+		if (source == null || !isCodecOf(source.getDecoder(), target.getCodec(), capabilities)) {
+			return false;
+		}
+		VideoSize size = target.getSize();
+		VideoSize sourceSize = source.getSize();
+		if (size != null && (sourceSize == null || sourceSize.getWidth() != size.getWidth()
+				|| sourceSize.getHeight() != size.getHeight())) {
+			return false;
+		}
+		Float frameRate = target.getFrameRate();
+		if (frameRate != null && Math.abs(source.getFrameRate() - frameRate.floatValue()) > 0.01f) {
+			return false;
+		}
+		return fitsBitRate(source.getBitRate(), target.getBitRate());
+	}
+
+	/**
+	 * Tells if an audio stream already matches the requested attributes.
+	 * 
+	 * @param source
+	 *            The probed audio stream, or null.
+	 * @param target
+	 *            The requested audio attributes.
+	 * @param capabilities
+	 *            The capabilities of the ffmpeg executable, or null.
+	 * @return true if the stream can be copied.
+	 */
+	private static boolean matches(AudioInfo source, AudioAttributes target, FFmpegCapabilities capabilities) {
+		if (source == null || !isCodecOf(source.getDecoder(), target.getCodec(), capabilities)) {
+			return false;
+		}
+		if (target.getVolume() != null) {
+			return false;
+		}
+		Integer samplingRate = target.getSamplingRate();
+		if (samplingRate != null && source.getSamplingRate() != samplingRate.intValue()) {
+			return false;
+		}
+		Integer channels = target.getChannels();
+		if (channels != null && source.getChannels() != channels.intValue()) {
+			return false;
+		}
+		return fitsBitRate(source.getBitRate(), target.getBitRate());
+	}
+
+	/**
+	 * Tells if a codec is the one produced by the requested encoder.
+	 * 
+	 * @param codec
+	 *            The codec of the source stream, or null.
+	 * @param encoder
+	 *            The requested encoder (e.g. "libx264") or codec (e.g.
+	 *            "h264"), or null.
+	 * @param capabilities
+	 *            The capabilities of the ffmpeg executable, or null.
+	 * @return true if the codec is the requested one.
+	 */
+	private static boolean isCodecOf(String codec, String encoder, FFmpegCapabilities capabilities) {
+		if (codec == null || encoder == null || encoder.equals(VideoAttributes.DIRECT_STREAM_COPY)) {
+			return false;
+		}
+		String target = capabilities != null ? capabilities.getCodecOf(encoder) : null;
+		return codec.equals(target != null ? target : encoder);
+	}
+
+	/**
+	 * Tells if the bit rate of a source stream fits the requested one.
+	 * 
+	 * @param bitRate
+	 *            The bit rate of the source stream, in kb/s, or a value less
+	 *            than 1 if unknown.
+	 * @param target
+	 *            The requested bit rate, in b/s, or null.
+	 * @return true if no bit rate is requested, or the source one is not
+	 *         greater.
+	 */
+	private static boolean fitsBitRate(int bitRate, Integer target) {
+		if (target == null) {
+			return true;
+		}
+		return bitRate > 0 && bitRate * 1000L <= target.intValue();
+	}
+
+	/**
+	 * Checks that a set of attributes describes an encoding.
+	 * 
 	 * @param attributes
-	 *            A set of attributes for the encoding process.
+	 *            The attributes.
 	 * @throws IllegalArgumentException
 	 *             If both audio and video parameters are null.
-	 * @throws InputFormatException
-	 *             If the source multimedia file cannot be decoded.
-	 * @throws EncoderException
-	 *             If a problems occurs during the encoding process.
 	 */
-	public void encode(File source, File target, EncodingAttributes attributes)
-			throws IllegalArgumentException, InputFormatException, EncoderException {
-		String formatAttribute = attributes.getFormat();
-		Float offsetAttribute = attributes.getOffset();
-		Float durationAttribute = attributes.getDuration();
-		AudioAttributes audioAttributes = attributes.getAudioAttributes();
-		VideoAttributes videoAttributes = attributes.getVideoAttributes();
-		if (audioAttributes == null && videoAttributes == null) {
+	private static void checkAttributes(EncodingAttributes attributes) throws IllegalArgumentException {
+		if (attributes.getAudioAttributes() == null && attributes.getVideoAttributes() == null) {
 			throw new IllegalArgumentException("Both audio and video attributes are null");
 		}
-		target = target.getAbsoluteFile();
-		target.getParentFile().mkdirs();
-		FFMPEGExecutor ffmpeg = locator.createExecutor();
+	}
+
+	/**
+	 * Adds the input of an encoding, with its offset and duration.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @param input
+	 *            The input path, or pipe.
+	 */
+	private void addInputArguments(FFMPEGExecutor ffmpeg, EncodingAttributes attributes, String input) {
+		Float offsetAttribute = attributes.getOffset();
+		Float durationAttribute = attributes.getDuration();
 		if (offsetAttribute != null) {
 			ffmpeg.addArgument("-ss");
 			ffmpeg.addArgument(String.valueOf(offsetAttribute.floatValue()));
 		}
 		ffmpeg.addArgument("-i");
-		ffmpeg.addArgument(source.getAbsolutePath());
+		ffmpeg.addArgument(input);
 		if (durationAttribute != null) {
 			ffmpeg.addArgument("-t");
 			ffmpeg.addArgument(String.valueOf(durationAttribute.floatValue()));
 		}
+	}
+
+	/**
+	 * Adds the audio, video and format arguments of an encoding. The output
+	 * path must be added by the caller.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 */
+	private void addOutputArguments(FFMPEGExecutor ffmpeg, EncodingAttributes attributes) {
+		int threads = addThreadArguments(ffmpeg, Collections.singletonList(attributes));
+		addOutputArguments(ffmpeg, attributes, true, threads);
+	}
+
+	/**
+	 * Reserves the threads of the video codecs of a process in the budget, if
+	 * any, and adds the "-filter_threads" global option, once. The executor
+	 * gives the threads back when destroyed.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 * @param attributes
+	 *            The attributes of each output of the process.
+	 * @return The threads of each video codec not having its own, or 0 if the
+	 *         codecs pick their own threads.
+	 */
+	private int addThreadArguments(FFMPEGExecutor ffmpeg, List<EncodingAttributes> attributes) {
+		boolean encoding = false;
+		int encoders = 0;
+		Integer filterThreads = null;
+		for (EncodingAttributes a : attributes) {
+			VideoAttributes videoAttributes = a.getVideoAttributes();
+			if (videoAttributes == null) {
+				continue;
+			}
+			if (filterThreads == null) {
+				filterThreads = videoAttributes.getFilterThreads();
+			}
+			if (!VideoAttributes.DIRECT_STREAM_COPY.equals(videoAttributes.getCodec())) {
+				encoding = true;
+				if (videoAttributes.getThreads() == null) {
+					encoders++;
+				}
+			}
+		}
+		int share = 0;
+		ThreadBudget budget = threadBudget;
+		if (budget != null && encoding) {
+			share = ffmpeg.reserveThreads(budget, encoders);
+			if (filterThreads == null) {
+				filterThreads = Integer.valueOf(share);
+			}
+		}
+		if (filterThreads != null) {
+			ffmpeg.addArgument("-filter_threads");
+			ffmpeg.addArgument(String.valueOf(filterThreads.intValue()));
+		}
+		return share;
+	}
+
+	/**
+	 * Adds the audio, video and format arguments of an encoding. The output
+	 * path must be added by the caller.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @param scale
+	 *            false if the video is already scaled by a filter graph, so
+	 *            that the size attribute must be ignored.
+	 * @param threads
+	 *            The threads reserved for the video codec, used if the
+	 *            attributes don't set them, or 0 to let the codec pick its own.
+	 */
+	private void addOutputArguments(FFMPEGExecutor ffmpeg, EncodingAttributes attributes, boolean scale,
+			int threads) {
+		String formatAttribute = attributes.getFormat();
+		AudioAttributes audioAttributes = attributes.getAudioAttributes();
+		VideoAttributes videoAttributes = attributes.getVideoAttributes();
 		if (videoAttributes == null) {
 			ffmpeg.addArgument("-vn");
 		} else {
@@ -698,10 +1944,33 @@ public class Encoder {
 				ffmpeg.addArgument(String.valueOf(frameRate.intValue()));
 			}
 			VideoSize size = videoAttributes.getSize();
-			if (size != null) {
+			if (size != null && scale) {
 				ffmpeg.addArgument("-s");
 				ffmpeg.addArgument(String.valueOf(size.getWidth()) + "x" + String.valueOf(size.getHeight()));
 			}
+			String preset = videoAttributes.getPreset();
+			if (preset != null) {
+				ffmpeg.addArgument("-preset");
+				ffmpeg.addArgument(preset);
+			}
+			String tune = videoAttributes.getTune();
+			if (tune != null) {
+				ffmpeg.addArgument("-tune");
+				ffmpeg.addArgument(tune);
+			}
+			Integer crf = videoAttributes.getCrf();
+			if (crf != null) {
+				ffmpeg.addArgument("-crf");
+				ffmpeg.addArgument(String.valueOf(crf.intValue()));
+			}
+			Integer codecThreads = videoAttributes.getThreads();
+			if (codecThreads == null && threads > 0 && !VideoAttributes.DIRECT_STREAM_COPY.equals(codec)) {
+				codecThreads = Integer.valueOf(threads);
+			}
+			if (codecThreads != null) {
+				ffmpeg.addArgument("-threads");
+				ffmpeg.addArgument(String.valueOf(codecThreads.intValue()));
+			}
 		}
 		if (audioAttributes == null) {
 			ffmpeg.addArgument("-an");
@@ -734,21 +2003,472 @@ public class Encoder {
 		}
 		ffmpeg.addArgument("-f");
 		ffmpeg.addArgument(formatAttribute);
-		ffmpeg.addArgument("-y");
-		ffmpeg.addArgument(target.getAbsolutePath());
+	}
+
+	/**
+	 * Asks ffmpeg to write its statistics as key=value blocks on the standard
+	 * output, instead of the status line on the standard error.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 */
+	private void addProgressArguments(FFMPEGExecutor ffmpeg) {
+		addProgressArguments(ffmpeg, "pipe:1");
+	}
+
+	/**
+	 * Reports the end of a probe to the metrics, if any.
+	 * 
+	 * @param start
+	 *            When the probe started, as given by {@link System#nanoTime()}.
+	 * @param success
+	 *            false if the probe failed.
+	 */
+	private void probed(long start, boolean success) {
+		EncoderMetrics metrics = locator.getMetrics();
+		if (metrics != null) {
+			metrics.probed(System.nanoTime() - start, success);
+		}
+	}
+
+	/**
+	 * Reports the end of a file encoding to the metrics, if any.
+	 * 
+	 * @param start
+	 *            When the encoding started, as given by
+	 *            {@link System#nanoTime()}.
+	 * @param source
+	 *            The source file.
+	 * @param targets
+	 *            The target files, or null if their size is not meaningful.
+	 * @param duration
+	 *            The expected duration of the output in millis, or a value
+	 *            less than 1 if unknown.
+	 * @param success
+	 *            false if the encoding failed.
+	 */
+	private void encoded(long start, File source, List<File> targets, long duration, boolean success) {
+		if (locator.getMetrics() == null) {
+			return;
+		}
+		long bytesOut = -1;
+		if (targets != null) {
+			bytesOut = 0;
+			for (File target : targets) {
+				bytesOut += target.length();
+			}
+		}
+		encoded(start, source.length(), bytesOut, duration, success);
+	}
+
+	/**
+	 * Reports the end of an encoding to the metrics, if any.
+	 * 
+	 * @param start
+	 *            When the encoding started, as given by
+	 *            {@link System#nanoTime()}.
+	 * @param bytesIn
+	 *            The bytes read.
+	 * @param bytesOut
+	 *            The bytes written, or -1 if unknown.
+	 * @param duration
+	 *            The expected duration of the output in millis, or a value
+	 *            less than 1 if unknown.
+	 * @param success
+	 *            false if the encoding failed.
+	 */
+	private void encoded(long start, long bytesIn, long bytesOut, long duration, boolean success) {
+		EncoderMetrics metrics = locator.getMetrics();
+		if (metrics != null) {
+			long nanos = System.nanoTime() - start;
+			double speed = duration > 0 && nanos > 0 ? duration * 1000000.0 / nanos : -1;
+			metrics.encoded(nanos, bytesIn, bytesOut, speed, success);
+		}
+	}
+
+	/**
+	 * Asks ffmpeg to write its statistics as key=value blocks on the given
+	 * channel, instead of the status line on the standard error.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 * @param pipe
+	 *            The channel, "pipe:1" or "pipe:2".
+	 */
+	private void addProgressArguments(FFMPEGExecutor ffmpeg, String pipe) {
+		ffmpeg.addArgument("-nostats");
+		ffmpeg.addArgument("-progress");
+		ffmpeg.addArgument(pipe);
+	}
+
+	/**
+	 * Runs a prepared ffmpeg call up to its end. Both the output channels of
+	 * the process are drained by the shared {@link StreamPump}, so the call
+	 * can't stall on a full pipe.
+	 * 
+	 * @param ffmpeg
+	 *            The executor, with all of its arguments.
+	 * @throws EncoderException
+	 *             If the process can't be started, it fails, or the calling
+	 *             thread is interrupted while waiting for it. A failure is
+	 *             reported with the type given by its exit code and messages.
+	 */
+	private void execute(FFMPEGExecutor ffmpeg) throws EncoderException {
+		execute(ffmpeg, null, -1);
+	}
+
+	/**
+	 * Runs a prepared ffmpeg call up to its end, reporting its progress to a
+	 * listener. The call must have been prepared with
+	 * {@link #addProgressArguments(FFMPEGExecutor)} if a listener is given.
+	 * 
+	 * @param ffmpeg
+	 *            The executor, with all of its arguments.
+	 * @param listener
+	 *            The progress listener, or null.
+	 * @param duration
+	 *            The expected duration of the output in millis, or a value
+	 *            less than 1 if unknown.
+	 * @throws EncoderException
+	 *             If the process can't be started, it fails, or the calling
+	 *             thread is interrupted while waiting for it. A failure is
+	 *             reported with the type given by its exit code and messages.
+	 */
+	private void execute(FFMPEGExecutor ffmpeg, EncoderProgressListener listener, long duration)
+			throws EncoderException {
+		execute(ffmpeg, listener, duration, null, null);
+	}
+
+	/**
+	 * Runs a prepared ffmpeg call up to its end, reporting its progress to a
+	 * listener and controlled by a job handle.
+	 * 
+	 * @param ffmpeg
+	 *            The executor, with all of its arguments.
+	 * @param listener
+	 *            The progress listener, or null.
+	 * @param duration
+	 *            The expected duration of the output in millis, or a value
+	 *            less than 1 if unknown.
+	 * @param job
+	 *            The job handle, or null.
+	 * @param attributes
+	 *            The attributes carrying the timeouts of the job, or null.
+	 * @throws EncoderException
+	 *             If the process can't be started, it fails, the job is
+	 *             aborted, or the calling thread is interrupted while waiting
+	 *             for it. A failure is reported with the type given by its
+	 *             exit code and messages.
+	 */
+	private void execute(FFMPEGExecutor ffmpeg, final EncoderProgressListener listener, long duration,
+			EncodingJob job, EncodingAttributes attributes) throws EncoderException {
+		StreamHandler outputHandler = null;
+		StreamHandler errorHandler = null;
+		if (listener != null) {
+			outputHandler = new ProgressParser(listener, duration);
+			errorHandler = new LineHandler() {
+				protected void onLine(String line) {
+					listener.message(line);
+				}
+			};
+		}
+		execute(ffmpeg, outputHandler, errorHandler, job, attributes);
+	}
+
+	/**
+	 * Runs an ffmpeg call built by another class of the package, such as the
+	 * {@link ThumbnailGenerator}. The call starts from a ready process, if the
+	 * locator keeps them.
+	 * 
+	 * @param args
+	 *            The arguments of the call.
+	 * @param errorHandler
+	 *            The handler of the standard error, or null.
+	 * @throws EncoderException
+	 *             If the process can't be started, it fails, or the calling
+	 *             thread is interrupted while waiting for it. A failure is
+	 *             reported with the type given by its exit code and messages.
+	 */
+	void execute(List<String> args, StreamHandler errorHandler) throws EncoderException {
+		FFMPEGExecutor ffmpeg = locator.createWarmExecutor();
+		for (String arg : args) {
+			ffmpeg.addArgument(arg);
+		}
+		execute(ffmpeg, null, errorHandler);
+	}
+
+	/**
+	 * Runs a prepared ffmpeg call up to its end, handing its output channels
+	 * to the given handlers.
+	 * 
+	 * @param ffmpeg
+	 *            The executor, with all of its arguments.
+	 * @param outputHandler
+	 *            The handler of the standard output, or null.
+	 * @param errorHandler
+	 *            The handler of the standard error, or null.
+	 * @throws EncoderException
+	 *             If the process can't be started, it fails, or the calling
+	 *             thread is interrupted while waiting for it. A failure is
+	 *             reported with the type given by its exit code and messages.
+	 */
+	private void execute(FFMPEGExecutor ffmpeg, StreamHandler outputHandler, StreamHandler errorHandler)
+			throws EncoderException {
+		execute(ffmpeg, outputHandler, errorHandler, null, null);
+	}
+
+	/**
+	 * Runs a prepared ffmpeg call up to its end, handing its output channels
+	 * to the given handlers, controlled by a job handle.
+	 * 
+	 * @param ffmpeg
+	 *            The executor, with all of its arguments.
+	 * @param outputHandler
+	 *            The handler of the standard output, or null.
+	 * @param errorHandler
+	 *            The handler of the standard error, or null.
+	 * @param job
+	 *            The job handle, or null.
+	 * @param attributes
+	 *            The attributes carrying the timeouts of the job, or null.
+	 * @throws EncoderException
+	 *             If the process can't be started, it fails, the job is
+	 *             aborted, or the calling thread is interrupted while waiting
+	 *             for it. A failure is reported with the type given by its
+	 *             exit code and messages.
+	 */
+	private void execute(FFMPEGExecutor ffmpeg, StreamHandler outputHandler, StreamHandler errorHandler,
+			EncodingJob job, EncodingAttributes attributes) throws EncoderException {
+		if (job != null) {
+			try {
+				job.begin(ffmpeg, attributes);
+			} catch (EncoderException | RuntimeException e) {
+				// Gives back the reserved threads.
+				ffmpeg.destroy();
+				throw e;
+			}
+		}
+		ErrorTail tail = new ErrorTail(errorHandler, ffmpeg.getInputs());
+		int exitCode;
 		try {
 			ffmpeg.execute();
-
-			@SuppressWarnings("resource")
-			RBufferedReader reader = new RBufferedReader(new InputStreamReader(ffmpeg.getErrorStream()));
-			@SuppressWarnings("unused")
-			String line;
-			while ((line = reader.readLine()) != null) {
-				// System.out.println(line);
+			if (job != null) {
+				job.started();
+			}
+			ffmpeg.pump(outputHandler, tail);
+			exitCode = ffmpeg.waitFor();
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffmpeg.destroy();
+			if (job != null) {
+				// An aborted job reports why it has been aborted.
+				job.end();
 			}
+		}
+		if (exitCode != 0) {
+			throw tail.failure(exitCode);
+		}
+	}
+
+	/**
+	 * Runs a prepared streaming ffmpeg call up to its end. A feeder thread
+	 * writes the source in the standard input channel of the process, while
+	 * the calling thread moves its standard output channel into the target.
+	 * The call must have been prepared with
+	 * {@link #addProgressArguments(FFMPEGExecutor, String)} on "pipe:2" if a
+	 * listener is given.
+	 * 
+	 * @param ffmpeg
+	 *            The executor, with all of its arguments.
+	 * @param source
+	 *            The channel feeding the standard input.
+	 * @param target
+	 *            The channel receiving the standard output.
+	 * @param listener
+	 *            The progress listener, or null.
+	 * @param duration
+	 *            The expected duration of the output in millis, or a value
+	 *            less than 1 if unknown.
+	 * @param job
+	 *            The job handle.
+	 * @param attributes
+	 *            The attributes carrying the timeouts of the job.
+	 * @throws EncoderException
+	 *             If the process can't be started or fails, the source can't
+	 *             be read, the target can't be written, the job is aborted, or
+	 *             the calling thread is interrupted while waiting for the
+	 *             process.
+	 */
+	private void execute(FFMPEGExecutor ffmpeg, ReadableByteChannel source, WritableByteChannel target,
+			final EncoderProgressListener listener, long duration, EncodingJob job, EncodingAttributes attributes)
+			throws EncoderException {
+		StreamHandler errorHandler = null;
+		if (listener != null) {
+			final ProgressParser progressParser = new ProgressParser(listener, duration);
+			final LineHandler messageHandler = new LineHandler() {
+				protected void onLine(String line) {
+					if (!isProgressLine(line)) {
+						listener.message(line);
+					}
+				}
+			};
+			errorHandler = new StreamHandler() {
+				public void onData(byte[] buffer, int offset, int length) {
+					progressParser.onData(buffer, offset, length);
+					messageHandler.onData(buffer, offset, length);
+				}
 
+				public void onEnd() {
+					progressParser.onEnd();
+					messageHandler.onEnd();
+				}
+			};
+		}
+		long start = System.nanoTime();
+		try {
+			job.begin(ffmpeg, attributes);
+		} catch (EncoderException | RuntimeException e) {
+			// Gives back the reserved threads.
+			ffmpeg.destroy();
+			throw e;
+		}
+		try {
+			ffmpeg.execute();
+		} catch (IOException e) {
+			ffmpeg.destroy();
+			job.end();
+			encoded(start, 0, 0, duration, false);
+			throw new EncoderException(e);
+		}
+		job.started();
+		PipeFeeder feeder = new PipeFeeder(source, ffmpeg.getOutputStream());
+		ErrorTail tail = new ErrorTail(errorHandler, ffmpeg.getInputs());
+		long written = 0;
+		int exitCode = -1;
+		boolean success = false;
+		try {
+			ffmpeg.pumpError(tail);
+			Thread feederThread = new Thread(feeder, "ffmpeg-stdin-feeder");
+			feederThread.setDaemon(true);
+			feederThread.start();
+			InputStream output = ffmpeg.getInputStream();
+			// The process streams work on arrays: a buffer wrapping the array
+			// reaches the target without further copies.
+			byte[] buffer = new byte[PIPE_BUFFER_SIZE];
+			ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+			int n;
+			while ((n = output.read(buffer)) != -1) {
+				wrapper.clear();
+				wrapper.limit(n);
+				while (wrapper.hasRemaining()) {
+					target.write(wrapper);
+				}
+				written += n;
+			}
+			exitCode = ffmpeg.waitFor();
+			// The feeder records its failure before closing the standard
+			// input, and so before ffmpeg can end.
+			success = feeder.error == null && exitCode == 0;
 		} catch (IOException e) {
 			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffmpeg.destroy();
+			encoded(start, feeder.bytes, written, duration, success);
+			job.end();
+		}
+		if (feeder.error != null) {
+			throw new EncoderException(feeder.error);
+		}
+		if (exitCode != 0) {
+			throw tail.failure(exitCode);
+		}
+	}
+
+	/**
+	 * Tells if a line is a key=value line written by the "-progress" option.
+	 * 
+	 * @param line
+	 *            The line.
+	 * @return true if the line is a statistics line.
+	 */
+	private static boolean isProgressLine(String line) {
+		int eq = line.indexOf('=');
+		if (eq < 1) {
+			return false;
+		}
+		for (int i = 0; i < eq; i++) {
+			char c = line.charAt(i);
+			if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_')) {
+				return false;
+			}
+		}
+		return line.indexOf(' ', eq) < 0;
+	}
+
+	/**
+	 * Copies a source channel in the standard input of a ffmpeg process, and
+	 * closes it at the end of the source.
+	 */
+	private static class PipeFeeder implements Runnable {
+
+		private final ReadableByteChannel source;
+
+		private final OutputStream stdin;
+
+		/**
+		 * The failure reading the source, if any.
+		 */
+		volatile IOException error = null;
+
+		/**
+		 * The bytes read from the source.
+		 */
+		volatile long bytes = 0;
+
+		PipeFeeder(ReadableByteChannel source, OutputStream stdin) {
+			this.source = source;
+			this.stdin = stdin;
+		}
+
+		public void run() {
+			byte[] buffer = new byte[PIPE_BUFFER_SIZE];
+			ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+			try {
+				while (true) {
+					wrapper.clear();
+					int n;
+					try {
+						n = source.read(wrapper);
+					} catch (IOException e) {
+						error = e;
+						break;
+					}
+					if (n == -1) {
+						break;
+					}
+					bytes += wrapper.position();
+					try {
+						stdin.write(buffer, 0, wrapper.position());
+					} catch (IOException e) {
+						// ffmpeg doesn't want more input (e.g. a duration was
+						// given) or has been destroyed.
+						break;
+					}
+				}
+			} finally {
+				try {
+					stdin.close();
+				} catch (IOException e) {
+					;
+				}
+			}
 		}
 
 	}
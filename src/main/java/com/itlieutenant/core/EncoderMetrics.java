@@ -0,0 +1,108 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+/**
+ * Receives the measures of the ffmpeg and ffprobe processes run by an
+ * {@link Encoder}, and of the operations of the encoder itself. An instance is
+ * installed with {@link FFMPEGLocator#setMetrics(EncoderMetrics)}; it is
+ * called by many threads at once, so it must be thread safe, and it should
+ * return quickly. {@link SimpleEncoderMetrics} keeps the measures in memory,
+ * adapters can forward them to a metrics library. Times are in nanoseconds.
+ * 
+ * @author HeHangjie
+ */
+public interface EncoderMetrics {
+
+	/**
+	 * This method is called when a process has been started.
+	 * 
+	 * @param spawnNanos
+	 *            The time taken to start the process.
+	 * @param warm
+	 *            true if the process was taken from a pool of ready
+	 *            processes (see {@link FFMPEGLocator#setWarmProcesses(int)}).
+	 */
+	public void processStarted(long spawnNanos, boolean warm);
+
+	/**
+	 * This method is called when the first bytes written by a process, on its
+	 * standard output or standard error channel, are read.
+	 * 
+	 * @param nanos
+	 *            The time elapsed since the process start was requested.
+	 */
+	public void processFirstOutput(long nanos);
+
+	/**
+	 * This method is called once for each started process, when it ends or is
+	 * destroyed.
+	 * 
+	 * @param exitCode
+	 *            The exit code of the process, or -1 if it has been destroyed
+	 *            before its end.
+	 * @param runtimeNanos
+	 *            The time elapsed since the process start was requested.
+	 */
+	public void processEnded(int exitCode, long runtimeNanos);
+
+	/**
+	 * This method is called at the end of every probe of a multimedia file
+	 * not found in the info cache, through {@link Encoder#getInfo(java.io.File)}
+	 * or {@link Encoder#probe(java.io.File)}.
+	 * 
+	 * @param nanos
+	 *            The duration of the probe.
+	 * @param success
+	 *            false if the probe failed.
+	 */
+	public void probed(long nanos, boolean success);
+
+	/**
+	 * This method is called at the end of every encoding.
+	 * 
+	 * @param nanos
+	 *            The duration of the encoding, including the probe of the
+	 *            source, if any.
+	 * @param bytesIn
+	 *            The size of the source, or the bytes read from the source
+	 *            stream.
+	 * @param bytesOut
+	 *            The size of the targets, or the bytes written to the target
+	 *            stream, or -1 if unknown.
+	 * @param speed
+	 *            The duration of the encoded media divided by the duration of
+	 *            the encoding, or -1 if the media duration is unknown. It is
+	 *            known when a progress listener is given or the duration
+	 *            attribute is set.
+	 * @param success
+	 *            false if the encoding failed.
+	 */
+	public void encoded(long nanos, long bytesIn, long bytesOut, double speed, boolean success);
+
+	/**
+	 * This method is called when a job of a {@link TranscodeScheduler} leaves
+	 * the queue and starts.
+	 * 
+	 * @param nanos
+	 *            The time spent by the job in the queue.
+	 */
+	public void queued(long nanos);
+
+}
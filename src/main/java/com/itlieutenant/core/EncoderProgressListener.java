@@ -23,6 +23,11 @@ import com.itlieutenant.entity.MultimediaInfo;
 /**
  * Encoding progress listener interface. Instances of implementing classes could
  * be used to listen an encoding process.
+ * <p>
+ * The methods are called by an internal thread draining the output of many
+ * ffmpeg processes: they must return quickly, handing long tasks to another
+ * thread. An exception thrown by a method stops the notifications, and is
+ * thrown by the encoding once ffmpeg has ended.
  * 
  * @author Carlo Pelliccia
  */
@@ -0,0 +1,42 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import com.itlieutenant.entity.EncodingProgress;
+
+/**
+ * An {@link EncoderProgressListener} which also receives the detailed
+ * statistics of the encoding process (speed, frame rate, bit rate), useful to
+ * estimate the remaining time of long jobs.
+ * 
+ * @author HeHangjie
+ */
+public interface EncoderStatisticsListener extends EncoderProgressListener {
+
+	/**
+	 * This method is called every time ffmpeg reports its statistics, right
+	 * after {@link EncoderProgressListener#progress(int)}.
+	 * 
+	 * @param progress
+	 *            The statistics of the encoding process. A new instance is
+	 *            supplied at every call.
+	 */
+	public void statistics(EncodingProgress progress);
+
+}
@@ -0,0 +1,435 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.itlieutenant.entity.EncodingAttributes;
+import com.itlieutenant.entity.EncodingProgress;
+import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.exception.EncoderCancelledException;
+import com.itlieutenant.exception.EncoderException;
+import com.itlieutenant.exception.EncoderStalledException;
+import com.itlieutenant.exception.EncoderTimeoutException;
+
+/**
+ * A handle to a single encoding process, returned by
+ * {@link Encoder#start(java.io.File, java.io.File, EncodingAttributes, EncoderProgressListener)}
+ * or given to
+ * {@link Encoder#encode(java.io.File, java.io.File, EncodingAttributes, EncoderProgressListener, EncodingJob)}.
+ * The job can be cancelled by any thread, and it is watched for the timeout
+ * and the stall timeout of its {@link EncodingAttributes}. An aborted job
+ * kills its ffmpeg process and fails with an {@link EncoderCancelledException},
+ * an {@link EncoderTimeoutException} or an {@link EncoderStalledException}.
+ * 
+ * @author HeHangjie
+ */
+public class EncodingJob {
+
+	/**
+	 * The period of the watchdog thread, in millis.
+	 */
+	private static final long WATCH_PERIOD = 250;
+
+	/**
+	 * The running jobs having a timeout or a stall timeout.
+	 */
+	private static final Set<EncodingJob> watched = Collections
+			.newSetFromMap(new ConcurrentHashMap<EncodingJob, Boolean>());
+
+	/**
+	 * The watchdog thread, started at the first watched job.
+	 */
+	private static Thread watchdog = null;
+
+	private static final int RUNNING = 0;
+
+	private static final int CANCELLED = 1;
+
+	private static final int TIMED_OUT = 2;
+
+	private static final int STALLED = 3;
+
+	/**
+	 * Why the job has been aborted, or RUNNING.
+	 */
+	private volatile int abortion = RUNNING;
+
+	/**
+	 * The executor of the running process, or null.
+	 */
+	private volatile FFMPEGExecutor executor = null;
+
+	/**
+	 * Whether the job has been bound to a process.
+	 */
+	private boolean begun = false;
+
+	/**
+	 * The wall-clock deadline in millis, or 0.
+	 */
+	private long deadline = 0;
+
+	/**
+	 * The stall timeout in millis, or 0.
+	 */
+	private long stallTimeout = 0;
+
+	/**
+	 * When the output time advanced for the last time, in millis.
+	 */
+	private volatile long lastAdvance;
+
+	/**
+	 * The highest output time reported by ffmpeg, in millis.
+	 */
+	private volatile long lastOutTime = -1;
+
+	/**
+	 * The failure of the job, if any.
+	 */
+	private volatile EncoderException failure = null;
+
+	/**
+	 * Released when the job is done.
+	 */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * It builds a job handle, to be given to
+	 * {@link Encoder#encode(java.io.File, java.io.File, EncodingAttributes, EncoderProgressListener, EncodingJob)}.
+	 */
+	public EncodingJob() {
+	}
+
+	/**
+	 * Cancels the job. A running ffmpeg process is killed, and a job not yet
+	 * started will never start. It has no effect on a completed job.
+	 */
+	public void cancel() {
+		abort(CANCELLED);
+	}
+
+	/**
+	 * Tells if the job has been cancelled.
+	 * 
+	 * @return true if {@link #cancel()} has been called before the end of the
+	 *         job.
+	 */
+	public boolean isCancelled() {
+		return abortion == CANCELLED;
+	}
+
+	/**
+	 * Tells if the job is over, successfully or not.
+	 * 
+	 * @return true if the job is over.
+	 */
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * Returns the failure of a completed job.
+	 * 
+	 * @return The failure, or null if the job succeeded or it is still
+	 *         running.
+	 */
+	public EncoderException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Waits for the end of the job.
+	 * 
+	 * @throws EncoderException
+	 *             The failure of the job, or an {@link EncoderException} if
+	 *             interrupted while waiting.
+	 */
+	public void await() throws EncoderException {
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Waits for the end of the job, at most for the given time. The job goes
+	 * on if the time elapses.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The time unit of the timeout argument.
+	 * @return true if the job is over, false if the time elapsed.
+	 * @throws EncoderException
+	 *             The failure of the job, or an {@link EncoderException} if
+	 *             interrupted while waiting.
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws EncoderException {
+		try {
+			if (!done.await(timeout, unit)) {
+				return false;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return true;
+	}
+
+	/**
+	 * Starts the timeout of the job, before its source is probed.
+	 * 
+	 * @param attributes
+	 *            The attributes carrying the timeouts, or null.
+	 * @throws EncoderException
+	 *             The typed failure, if the job has already been aborted.
+	 */
+	synchronized void prepare(EncodingAttributes attributes) throws EncoderException {
+		checkAborted();
+		if (deadline == 0 && attributes != null && attributes.getTimeout() != null) {
+			deadline = System.currentTimeMillis() + (long) (attributes.getTimeout().floatValue() * 1000);
+			watch(this);
+		}
+	}
+
+	/**
+	 * Binds the job to the executor of a probe of its source, before the probe
+	 * is started, so that an abort kills the probe.
+	 * 
+	 * @param ffmpeg
+	 *            The executor of the probe.
+	 * @throws EncoderException
+	 *             The typed failure, if the job has already been aborted.
+	 */
+	synchronized void probing(FFMPEGExecutor ffmpeg) throws EncoderException {
+		checkAborted();
+		executor = ffmpeg;
+	}
+
+	/**
+	 * Binds the job to the executor of its process, before the process is
+	 * started, and starts watching it. A deadline started by
+	 * {@link #prepare(EncodingAttributes)} is kept.
+	 * 
+	 * @param ffmpeg
+	 *            The executor.
+	 * @param attributes
+	 *            The attributes carrying the timeouts, or null.
+	 * @throws EncoderCancelledException
+	 *             If the job has already been cancelled.
+	 */
+	synchronized void begin(FFMPEGExecutor ffmpeg, EncodingAttributes attributes) throws EncoderException {
+		if (begun) {
+			throw new IllegalStateException("An encoding job can be run only once");
+		}
+		begun = true;
+		checkAborted();
+		long now = System.currentTimeMillis();
+		if (attributes != null) {
+			if (deadline == 0 && attributes.getTimeout() != null) {
+				deadline = now + (long) (attributes.getTimeout().floatValue() * 1000);
+			}
+			if (attributes.getStallTimeout() != null) {
+				stallTimeout = (long) (attributes.getStallTimeout().floatValue() * 1000);
+			}
+		}
+		lastAdvance = now;
+		executor = ffmpeg;
+		if (deadline > 0 || stallTimeout > 0) {
+			watch(this);
+		}
+	}
+
+	/**
+	 * Called after the process has been started, killing it if the job has
+	 * been aborted in the meanwhile.
+	 */
+	void started() {
+		if (abortion != RUNNING) {
+			executor.destroy();
+		}
+	}
+
+	/**
+	 * Called after the end of the process, it stops watching the job.
+	 * 
+	 * @throws EncoderException
+	 *             The typed failure, if the job has been aborted.
+	 */
+	void end() throws EncoderException {
+		watched.remove(this);
+		executor = null;
+		checkAborted();
+	}
+
+	/**
+	 * Marks the job as done.
+	 * 
+	 * @param failure
+	 *            The failure of the job, or null.
+	 */
+	void finish(EncoderException failure) {
+		watched.remove(this);
+		executor = null;
+		this.failure = failure;
+		done.countDown();
+	}
+
+	/**
+	 * Tells if the job must receive the progress of its process, to detect the
+	 * stalls.
+	 * 
+	 * @param attributes
+	 *            The attributes carrying the timeouts, or null.
+	 * @return true if a stall timeout is set.
+	 */
+	static boolean needsProgress(EncodingAttributes attributes) {
+		return attributes != null && attributes.getStallTimeout() != null;
+	}
+
+	/**
+	 * Returns a listener recording the progress of the process, forwarding
+	 * everything to the given listener.
+	 * 
+	 * @param listener
+	 *            The listener of the caller, or null.
+	 * @return The watching listener.
+	 */
+	EncoderProgressListener watch(final EncoderProgressListener listener) {
+		return new EncoderStatisticsListener() {
+			public void sourceInfo(MultimediaInfo info) {
+				if (listener != null) {
+					listener.sourceInfo(info);
+				}
+			}
+
+			public void progress(int permil) {
+				if (listener != null) {
+					listener.progress(permil);
+				}
+			}
+
+			public void message(String message) {
+				if (listener != null) {
+					listener.message(message);
+				}
+			}
+
+			public void statistics(EncodingProgress progress) {
+				long outTime = progress.getOutTime();
+				if (outTime > lastOutTime) {
+					lastOutTime = outTime;
+					lastAdvance = System.currentTimeMillis();
+				}
+				if (listener instanceof EncoderStatisticsListener) {
+					((EncoderStatisticsListener) listener).statistics(progress);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Throws the typed failure of an aborted job.
+	 * 
+	 * @throws EncoderException
+	 *             The typed failure, if the job has been aborted.
+	 */
+	void checkAborted() throws EncoderException {
+		switch (abortion) {
+		case CANCELLED:
+			throw new EncoderCancelledException("The encoding has been cancelled");
+		case TIMED_OUT:
+			throw new EncoderTimeoutException("The encoding lasted more than its timeout");
+		case STALLED:
+			throw new EncoderStalledException("The encoding made no progress for " + stallTimeout + " ms");
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Aborts the running job, killing its process.
+	 */
+	private void abort(int reason) {
+		synchronized (this) {
+			if (abortion != RUNNING || isDone()) {
+				return;
+			}
+			abortion = reason;
+		}
+		FFMPEGExecutor ffmpeg = executor;
+		if (ffmpeg != null) {
+			ffmpeg.destroy();
+		}
+	}
+
+	/**
+	 * Checks the timeouts of the job.
+	 */
+	private void check(long now) {
+		if (deadline > 0 && now >= deadline) {
+			abort(TIMED_OUT);
+		} else if (stallTimeout > 0 && now - lastAdvance >= stallTimeout) {
+			abort(STALLED);
+		}
+	}
+
+	/**
+	 * Adds a job to the watched ones, starting the watchdog if needed.
+	 */
+	private static void watch(EncodingJob job) {
+		watched.add(job);
+		synchronized (watched) {
+			if (watchdog == null) {
+				watchdog = new Thread(new Runnable() {
+					public void run() {
+						while (true) {
+							try {
+								Thread.sleep(WATCH_PERIOD);
+							} catch (InterruptedException e) {
+								;
+							}
+							long now = System.currentTimeMillis();
+							for (EncodingJob job : watched) {
+								job.check(now);
+							}
+						}
+					}
+				}, "ffmpeg-job-watchdog");
+				watchdog.setDaemon(true);
+				watchdog.start();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.itlieutenant.exception.DiskFullException;
+import com.itlieutenant.exception.EncoderException;
+import com.itlieutenant.exception.EncoderKilledException;
+import com.itlieutenant.exception.InputFormatException;
+import com.itlieutenant.exception.UnsupportedCodecException;
+
+/**
+ * A package-private {@link StreamHandler} keeping the last lines of the ffmpeg
+ * standard error in a ring buffer, and spotting the messages telling why a
+ * process failed. The bytes are forwarded to another handler, if given. When
+ * the process exits with an error the kept lines build a typed exception.
+ * 
+ * @author HeHangjie
+ */
+class ErrorTail extends LineHandler {
+
+	/**
+	 * The number of kept lines.
+	 */
+	static final int LINES = 20;
+
+	/**
+	 * The messages of a source ffmpeg can't read. A missing file is reported
+	 * apart, since the file can be an output too.
+	 */
+	private static final String[] INPUT_MESSAGES = { "Invalid data found when processing input",
+			"moov atom not found", "Unknown input format", "Could not find codec parameters",
+			"does not contain any stream" };
+
+	/**
+	 * The message of a missing file, following its path.
+	 */
+	private static final String NO_SUCH_FILE = ": No such file or directory";
+
+	/**
+	 * The messages of an encoder, decoder or format missing from the ffmpeg
+	 * build or not allowed in the container.
+	 */
+	private static final String[] CODEC_MESSAGES = { "Unknown encoder", "Unknown decoder", ") not found for ",
+			"Automatic encoder selection failed", "not currently supported in container",
+			"Could not find tag for codec", "Unsupported codec", "is not a suitable output format",
+			"Unable to find a suitable output format" };
+
+	/**
+	 * The messages of a full target device.
+	 */
+	private static final String[] DISK_FULL_MESSAGES = { "No space left on device", "Disk quota exceeded" };
+
+	/**
+	 * The messages of a process stopped by a signal, which ffmpeg catches to
+	 * exit with its own code.
+	 */
+	private static final String[] KILLED_MESSAGES = { "received signal" };
+
+	/**
+	 * The handler receiving the bytes too, or null.
+	 */
+	private final StreamHandler next;
+
+	/**
+	 * The inputs of the process, as given to "-i".
+	 */
+	private final List<String> inputs;
+
+	/**
+	 * The ring buffer of the last lines.
+	 */
+	private final String[] lines = new String[LINES];
+
+	/**
+	 * The number of lines received.
+	 */
+	private long count = 0;
+
+	private boolean invalidInput = false;
+
+	private boolean unsupportedCodec = false;
+
+	private boolean diskFull = false;
+
+	private boolean killed = false;
+
+	/**
+	 * It builds the handler.
+	 * 
+	 * @param next
+	 *            The handler receiving the bytes too, or null.
+	 * @param inputs
+	 *            The inputs of the process, to tell a missing input from a
+	 *            missing output. It can be null.
+	 */
+	ErrorTail(StreamHandler next, List<String> inputs) {
+		this.next = next;
+		this.inputs = inputs != null ? inputs : Collections.<String> emptyList();
+	}
+
+	public void onData(byte[] buffer, int offset, int len) {
+		super.onData(buffer, offset, len);
+		if (next != null) {
+			next.onData(buffer, offset, len);
+		}
+	}
+
+	public void onEnd() {
+		super.onEnd();
+		if (next != null) {
+			next.onEnd();
+		}
+	}
+
+	protected synchronized void onLine(String line) {
+		lines[(int) (count % lines.length)] = line;
+		count++;
+		invalidInput |= contains(line, INPUT_MESSAGES) || isMissingInput(line);
+		unsupportedCodec |= contains(line, CODEC_MESSAGES);
+		diskFull |= contains(line, DISK_FULL_MESSAGES);
+		killed |= contains(line, KILLED_MESSAGES);
+	}
+
+	/**
+	 * Tells if a line reports a missing input, as "path: No such file or
+	 * directory".
+	 */
+	private boolean isMissingInput(String line) {
+		if (!line.endsWith(NO_SUCH_FILE)) {
+			return false;
+		}
+		String path = line.substring(0, line.length() - NO_SUCH_FILE.length());
+		return inputs.contains(path);
+	}
+
+	private static boolean contains(String line, String[] messages) {
+		for (String message : messages) {
+			if (line.contains(message)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the kept lines.
+	 * 
+	 * @return The last lines of the standard error, oldest first.
+	 */
+	synchronized List<String> getLines() {
+		int n = (int) Math.min(count, lines.length);
+		List<String> ret = new ArrayList<>(n);
+		for (long i = count - n; i < count; i++) {
+			ret.add(lines[(int) (i % lines.length)]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Builds the exception describing a failed process, according to its exit
+	 * code and the messages it wrote.
+	 * 
+	 * @param exitCode
+	 *            The exit code of the process, not 0, or -1 if it has been
+	 *            destroyed.
+	 * @return A {@link DiskFullException}, an
+	 *         {@link UnsupportedCodecException}, an
+	 *         {@link InputFormatException}, an {@link EncoderKilledException}
+	 *         or a generic {@link EncoderException}.
+	 */
+	synchronized EncoderException failure(int exitCode) {
+		StringBuilder message = new StringBuilder();
+		message.append("ffmpeg exited with code ").append(exitCode);
+		for (String line : getLines()) {
+			message.append('\n').append(line);
+		}
+		String s = message.toString();
+		// On POSIX systems 128 + n is the exit code of a process killed by
+		// the signal n.
+		boolean signaled = exitCode == -1 || (File.separatorChar == '/' && exitCode > 128 && exitCode < 128 + 32);
+		if (signaled) {
+			return new EncoderKilledException(s);
+		} else if (diskFull) {
+			return new DiskFullException(s);
+		} else if (unsupportedCodec) {
+			return new UnsupportedCodecException(s);
+		} else if (invalidInput) {
+			return new InputFormatException(s);
+		} else if (killed) {
+			return new EncoderKilledException(s);
+		}
+		return new EncoderException(s);
+	}
+
+}
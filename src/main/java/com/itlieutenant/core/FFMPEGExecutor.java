@@ -18,10 +18,17 @@
  */
 package com.itlieutenant.core;
 
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A ffmpeg process wrapper.
@@ -30,6 +37,17 @@ import java.util.ArrayList;
  */
 class FFMPEGExecutor {
 
+	/**
+	 * The null device of the platform, receiving the discarded output.
+	 */
+	static final File NULL_DEVICE = new File(File.separatorChar == '\\' ? "NUL" : "/dev/null");
+
+	/**
+	 * The initial capacity of the argument list, enough for a typical
+	 * encoding call.
+	 */
+	private static final int DEFAULT_ARGS_CAPACITY = 48;
+
 	/**
 	 * The path of the ffmpeg executable.
 	 */
@@ -38,7 +56,56 @@ class FFMPEGExecutor {
 	/**
 	 * Arguments for the executable.
 	 */
-	private ArrayList<String> args = new ArrayList<>();
+	private ArrayList<String> args = new ArrayList<>(DEFAULT_ARGS_CAPACITY);
+
+	/**
+	 * Variables added to (or, if null, removed from) the inherited
+	 * environment of the process.
+	 */
+	private Map<String, String> environment = null;
+
+	/**
+	 * The working directory of the process, or null for the jvm one.
+	 */
+	private File workingDirectory = null;
+
+	/**
+	 * The file receiving the standard error channel, or null to read it
+	 * through {@link #getErrorStream()}.
+	 */
+	private File errorFile = null;
+
+	/**
+	 * Whether the standard error channel is appended to the error file.
+	 */
+	private boolean appendError = false;
+
+	/**
+	 * The pool of ready processes to start from, or null.
+	 */
+	private WarmProcessPool warmPool = null;
+
+	/**
+	 * The receiver of the measures of the process, or null.
+	 */
+	private EncoderMetrics metrics = null;
+
+	/**
+	 * When the start of the process was requested, as given by
+	 * {@link System#nanoTime()}.
+	 */
+	private long startTime = 0;
+
+	/**
+	 * Whether the end of the process has been reported to the metrics.
+	 */
+	private boolean endReported = false;
+
+	/**
+	 * Whether the first output of the process has been reported to the
+	 * metrics.
+	 */
+	private final AtomicBoolean outputSeen = new AtomicBoolean(false);
 
 	/**
 	 * The process representing the ffmpeg execution.
@@ -46,10 +113,9 @@ class FFMPEGExecutor {
 	private Process ffmpeg = null;
 
 	/**
-	 * A process killer to kill the ffmpeg process with a shutdown hook, useful
-	 * if the jvm execution is shutted down during an ongoing encoding process.
+	 * The maximum life of the process in millis, or 0 for no limit.
 	 */
-	private ProcessKiller ffmpegKiller = null;
+	private long timeout = 0;
 
 	/**
 	 * A stream reading from the ffmpeg process standard output channel.
@@ -66,6 +132,22 @@ class FFMPEGExecutor {
 	 */
 	private InputStream errorStream = null;
 
+	/**
+	 * The pump draining the standard output channel, if any.
+	 */
+	private StreamPump.Drain outputDrain = null;
+
+	/**
+	 * The pump draining the standard error channel, if any.
+	 */
+	private StreamPump.Drain errorDrain = null;
+
+	/**
+	 * The budget holding threads reserved for this call, given back when the
+	 * executor is destroyed, or null.
+	 */
+	private ThreadBudget threadBudget = null;
+
 	/**
 	 * It build the executor.
 	 * 
@@ -87,25 +169,227 @@ class FFMPEGExecutor {
 	}
 
 	/**
-	 * Executes the ffmpeg process with the previous given arguments.
+	 * Reserves in a budget the threads of the video codecs of the call. They
+	 * are given back by {@link #destroy()}.
+	 * 
+	 * @param budget
+	 *            The budget.
+	 * @param encoders
+	 *            The number of video codecs sharing the reserved threads.
+	 * @return The threads of each video codec.
+	 */
+	synchronized int reserveThreads(ThreadBudget budget, int encoders) {
+		if (threadBudget != null) {
+			threadBudget.release();
+		}
+		threadBudget = budget;
+		return budget.acquire(encoders);
+	}
+
+	/**
+	 * Returns the inputs of the call, the arguments following "-i".
+	 * 
+	 * @return The inputs, in order.
+	 */
+	List<String> getInputs() {
+		List<String> inputs = new ArrayList<>(1);
+		for (int i = 0; i < args.size() - 1; i++) {
+			if ("-i".equals(args.get(i))) {
+				inputs.add(args.get(i + 1));
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Sets an environment variable of the process, such as OMP_NUM_THREADS to
+	 * bound the threads of the libraries using OpenMP. The other variables are
+	 * inherited from the jvm.
+	 * 
+	 * @param name
+	 *            The variable name.
+	 * @param value
+	 *            The variable value, or null to remove the variable from the
+	 *            inherited environment.
+	 */
+	public void setEnvironmentVariable(String name, String value) {
+		// Pooled processes have the environment of the locator.
+		warmPool = null;
+		if (environment == null) {
+			environment = new LinkedHashMap<>();
+		}
+		environment.put(name, value);
+	}
+
+	/**
+	 * Returns the working directory of the process.
+	 * 
+	 * @return The working directory, or null for the jvm one.
+	 */
+	public File getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	/**
+	 * Sets the working directory of the process, where ffmpeg writes its
+	 * relative files (e.g. the two-pass logs). A scratch directory on a fast
+	 * local storage is a good choice.
+	 * 
+	 * @param workingDirectory
+	 *            The working directory, or null for the jvm one.
+	 */
+	public void setWorkingDirectory(File workingDirectory) {
+		warmPool = null;
+		this.workingDirectory = workingDirectory;
+	}
+
+	/**
+	 * Lets the executor start from a ready process of a pool, when possible.
+	 * The environment and the working directory of the executor must be the
+	 * ones of the pool processes; changing them afterwards disables the pool.
+	 * 
+	 * @param warmPool
+	 *            The pool, or null.
+	 */
+	void setWarmPool(WarmProcessPool warmPool) {
+		this.warmPool = warmPool;
+	}
+
+	/**
+	 * Sets the receiver of the measures of the process. It must be called
+	 * before {@link #execute()}.
+	 * 
+	 * @param metrics
+	 *            The metrics, or null.
+	 */
+	void setMetrics(EncoderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sends the standard error channel of the process directly to a file,
+	 * without passing through the jvm. It must be called before
+	 * {@link #execute()}; the error stream is then empty.
+	 * 
+	 * @param file
+	 *            The file receiving the standard error channel.
+	 * @param append
+	 *            true to append to an existing file.
+	 */
+	public void redirectError(File file, boolean append) {
+		this.errorFile = file;
+		this.appendError = append;
+	}
+
+	/**
+	 * Discards the standard error channel of the process, sending it to the
+	 * null device. It must be called before {@link #execute()}.
+	 */
+	public void discardError() {
+		redirectError(NULL_DEVICE, false);
+	}
+
+	/**
+	 * Sets the maximum life of the process, after which it is killed by the
+	 * {@link ProcessRegistry} reaper. It must be called before
+	 * {@link #execute()}.
+	 * 
+	 * @param timeout
+	 *            The maximum life of the process in millis, or 0 for no
+	 *            limit.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Executes the ffmpeg process with the previous given arguments. The
+	 * process is tracked by the {@link ProcessRegistry}, killing it if the
+	 * jvm shuts down during an ongoing encoding process.
 	 * 
 	 * @throws IOException
 	 *             If the process call fails.
 	 */
-	public void execute() throws IOException {
+	public synchronized void execute() throws IOException {
+		startTime = System.nanoTime();
+		boolean warm = false;
+		if (warmPool != null) {
+			ffmpeg = startWarm();
+			warm = ffmpeg != null;
+		}
+		if (ffmpeg == null) {
+			ffmpeg = startCold();
+		}
+		ProcessRegistry.getDefault().register(ffmpeg, timeout);
+		inputStream = ffmpeg.getInputStream();
+		outputStream = ffmpeg.getOutputStream();
+		errorStream = ffmpeg.getErrorStream();
+		if (metrics != null) {
+			metrics.processStarted(System.nanoTime() - startTime, warm);
+			inputStream = new OutputWatch(inputStream);
+			errorStream = new OutputWatch(errorStream);
+		}
+	}
+
+	/**
+	 * Hands the arguments to a ready process of the pool.
+	 * 
+	 * @return The process, or null if the pool can't run this call.
+	 */
+	private Process startWarm() {
+		if (errorFile != null && errorFile != NULL_DEVICE) {
+			return null;
+		}
+		for (String arg : args) {
+			if (!WarmProcessPool.canSend(arg)) {
+				return null;
+			}
+		}
+		Process process = warmPool.take();
+		if (process == null) {
+			return null;
+		}
+		try {
+			WarmProcessPool.start(process, args, errorFile != null);
+			return process;
+		} catch (IOException e) {
+			ProcessRegistry.getDefault().kill(process);
+			return null;
+		}
+	}
+
+	/**
+	 * Spawns a new process.
+	 * 
+	 * @return The process.
+	 * @throws IOException
+	 *             If the process call fails.
+	 */
+	private Process startCold() throws IOException {
 		int argsSize = args.size();
 		String[] cmd = new String[argsSize + 1];
 		cmd[0] = ffmpegExecutablePath;
 		for (int i = 0; i < argsSize; i++) {
 			cmd[i + 1] = (String) args.get(i);
 		}
-		Runtime runtime = Runtime.getRuntime();
-		ffmpeg = runtime.exec(cmd);
-		ffmpegKiller = new ProcessKiller(ffmpeg);
-		runtime.addShutdownHook(ffmpegKiller);
-		inputStream = ffmpeg.getInputStream();
-		outputStream = ffmpeg.getOutputStream();
-		errorStream = ffmpeg.getErrorStream();
+		ProcessBuilder builder = new ProcessBuilder(cmd);
+		if (workingDirectory != null) {
+			builder.directory(workingDirectory);
+		}
+		if (environment != null) {
+			Map<String, String> env = builder.environment();
+			for (Map.Entry<String, String> entry : environment.entrySet()) {
+				if (entry.getValue() != null) {
+					env.put(entry.getKey(), entry.getValue());
+				} else {
+					env.remove(entry.getKey());
+				}
+			}
+		}
+		if (errorFile != null) {
+			builder.redirectError(appendError ? Redirect.appendTo(errorFile) : Redirect.to(errorFile));
+		}
+		return builder.start();
 	}
 
 	/**
@@ -136,9 +420,97 @@ class FFMPEGExecutor {
 	}
 
 	/**
-	 * If there's a ffmpeg execution in progress, it kills it.
+	 * Hands both the standard output and the standard error channels of the
+	 * running process to the shared {@link StreamPump}, so that ffmpeg never
+	 * stalls on a full pipe. It must be called after {@link #execute()}, and
+	 * the streams must not be read directly afterwards. A redirected standard
+	 * error channel is not pumped.
+	 * 
+	 * @param outputHandler
+	 *            The handler receiving the standard output bytes, or null to
+	 *            discard them.
+	 * @param errorHandler
+	 *            The handler receiving the standard error bytes, or null to
+	 *            discard them.
 	 */
-	public void destroy() {
+	public synchronized void pump(StreamHandler outputHandler, StreamHandler errorHandler) {
+		if (ffmpeg == null) {
+			// Already destroyed.
+			return;
+		}
+		StreamPump pump = StreamPump.getDefault();
+		outputDrain = pump.drain(ffmpeg, inputStream, outputHandler);
+		if (errorFile == null) {
+			errorDrain = pump.drain(ffmpeg, errorStream, errorHandler);
+		}
+	}
+
+	/**
+	 * Hands only the standard error channel of the running process to the
+	 * shared {@link StreamPump}, leaving the standard output to the caller.
+	 * It must be called after {@link #execute()}.
+	 * 
+	 * @param errorHandler
+	 *            The handler receiving the standard error bytes, or null to
+	 *            discard them.
+	 */
+	public synchronized void pumpError(StreamHandler errorHandler) {
+		if (ffmpeg == null || errorFile != null) {
+			return;
+		}
+		errorDrain = StreamPump.getDefault().drain(ffmpeg, errorStream, errorHandler);
+	}
+
+	/**
+	 * Waits for the end of the ffmpeg process and, if the streams are pumped,
+	 * for the delivery of all of its output. It can be woken up by a
+	 * {@link #destroy()} called by another thread.
+	 * 
+	 * @return The exit code of the process, or -1 if it has been destroyed
+	 *         before.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 * @throws RuntimeException
+	 *             The exception thrown by a stream handler, which then missed
+	 *             the rest of the stream.
+	 */
+	public int waitFor() throws InterruptedException {
+		Process process;
+		StreamPump.Drain output;
+		StreamPump.Drain error;
+		synchronized (this) {
+			process = ffmpeg;
+			output = outputDrain;
+			error = errorDrain;
+		}
+		if (process == null) {
+			return -1;
+		}
+		int exitCode = process.waitFor();
+		ProcessRegistry.getDefault().unregister(process);
+		ended(exitCode);
+		if (output != null) {
+			output.await();
+		}
+		if (error != null) {
+			error.await();
+		}
+		RuntimeException failure = output != null ? output.getFailure() : null;
+		if (failure == null && error != null) {
+			failure = error.getFailure();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return exitCode;
+	}
+
+	/**
+	 * If there's a ffmpeg execution in progress, it kills it, together with
+	 * its descendants. It releases the process streams in any case, so it should
+	 * be called at the end of every execution. It can be called by any thread.
+	 */
+	public synchronized void destroy() {
 		if (inputStream != null) {
 			try {
 				inputStream.close();
@@ -164,14 +536,63 @@ class FFMPEGExecutor {
 			errorStream = null;
 		}
 		if (ffmpeg != null) {
-			ffmpeg.destroy();
+			ProcessRegistry.getDefault().kill(ffmpeg);
 			ffmpeg = null;
+			ended(-1);
+		}
+		if (threadBudget != null) {
+			threadBudget.release();
+			threadBudget = null;
 		}
-		if (ffmpegKiller != null) {
-			Runtime runtime = Runtime.getRuntime();
-			runtime.removeShutdownHook(ffmpegKiller);
-			ffmpegKiller = null;
+	}
+
+	/**
+	 * Reports the end of the process to the metrics, only the first time it
+	 * is called.
+	 * 
+	 * @param exitCode
+	 *            The exit code of the process, or -1 if it has been
+	 *            destroyed.
+	 */
+	private synchronized void ended(int exitCode) {
+		if (metrics != null && !endReported) {
+			endReported = true;
+			metrics.processEnded(exitCode, System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * A process output stream, reporting to the metrics when the first bytes
+	 * of the process are read from it or from its sibling.
+	 */
+	private class OutputWatch extends FilterInputStream {
+
+		OutputWatch(InputStream in) {
+			super(in);
 		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				seen();
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				seen();
+			}
+			return n;
+		}
+
+		private void seen() {
+			if (!outputSeen.get() && outputSeen.compareAndSet(false, true)) {
+				metrics.processFirstOutput(System.nanoTime() - startTime);
+			}
+		}
+
 	}
 
 }
@@ -18,6 +18,11 @@
  */
 package com.itlieutenant.core;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Abstract class whose derived concrete instances are used by {@link Encoder}
  * to locate the ffmpeg executable path.
@@ -27,6 +32,37 @@ package com.itlieutenant.core;
  */
 public abstract class FFMPEGLocator {
 
+	/**
+	 * The environment variables given to every process, null values removing
+	 * the variable.
+	 */
+	private final Map<String, String> environment = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+
+	/**
+	 * The working directory of every process, or null for the jvm one.
+	 */
+	private volatile File workingDirectory = null;
+
+	/**
+	 * The number of ready processes kept by each pool, 0 for no pools.
+	 */
+	private int warmProcesses = 0;
+
+	/**
+	 * The pool of ready ffmpeg processes, created on demand.
+	 */
+	private WarmProcessPool ffmpegPool = null;
+
+	/**
+	 * The pool of ready ffprobe processes, created on demand.
+	 */
+	private WarmProcessPool ffprobePool = null;
+
+	/**
+	 * The receiver of the measures of the processes, or null.
+	 */
+	private volatile EncoderMetrics metrics = null;
+
 	/**
 	 * This method should return the path of a ffmpeg executable suitable for
 	 * the current machine.
@@ -43,7 +79,214 @@ public abstract class FFMPEGLocator {
 	 *         call the ffmpeg executable.
 	 */
 	FFMPEGExecutor createExecutor() {
-		return new FFMPEGExecutor(getFFMPEGExecutablePath());
+		return configure(new FFMPEGExecutor(getFFMPEGExecutablePath()));
+	}
+
+	/**
+	 * Sets an environment variable given to every ffmpeg and ffprobe process,
+	 * such as OMP_NUM_THREADS. The other variables are inherited from the jvm.
+	 * 
+	 * @param name
+	 *            The variable name.
+	 * @param value
+	 *            The variable value, or null to remove the variable from the
+	 *            inherited environment.
+	 */
+	public void setEnvironmentVariable(String name, String value) {
+		environment.put(name, value);
+		resetWarmPools();
+	}
+
+	/**
+	 * Returns the environment variables given to every process.
+	 * 
+	 * @return The variables, null values removing the variable.
+	 */
+	public Map<String, String> getEnvironment() {
+		synchronized (environment) {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(environment));
+		}
+	}
+
+	/**
+	 * Returns the working directory of every process.
+	 * 
+	 * @return The working directory, or null for the jvm one.
+	 */
+	public File getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	/**
+	 * Sets the working directory of every ffmpeg and ffprobe process, such as
+	 * a scratch directory on a fast local storage. The encoder always passes
+	 * absolute paths, so only the relative files written by ffmpeg itself
+	 * (e.g. the two-pass logs) are affected.
+	 * 
+	 * @param workingDirectory
+	 *            The working directory, or null for the jvm one.
+	 */
+	public void setWorkingDirectory(File workingDirectory) {
+		this.workingDirectory = workingDirectory;
+		resetWarmPools();
+	}
+
+	/**
+	 * Returns the number of ready processes kept for the short calls.
+	 * 
+	 * @return The number of ready processes of each pool.
+	 */
+	public synchronized int getWarmProcesses() {
+		return warmProcesses;
+	}
+
+	/**
+	 * Sets the number of ready processes kept for the short calls, such as the
+	 * probes: a short call starts from a process spawned in advance instead of
+	 * spawning its own, taking the process creation off its latency. Two
+	 * pools are kept, for ffmpeg and for ffprobe, filled at their first use.
+	 * Pools are available only on platforms with a POSIX shell.
+	 * 
+	 * @param warmProcesses
+	 *            The number of ready processes of each pool, 0 to disable the
+	 *            pools.
+	 */
+	public void setWarmProcesses(int warmProcesses) {
+		if (warmProcesses < 0) {
+			throw new IllegalArgumentException("warmProcesses must not be negative");
+		}
+		synchronized (this) {
+			this.warmProcesses = warmProcesses;
+		}
+		resetWarmPools();
+	}
+
+	/**
+	 * Returns the receiver of the measures of the processes and of the
+	 * operations of the encoders using this locator.
+	 * 
+	 * @return The metrics, or null if nothing is measured.
+	 */
+	public EncoderMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the receiver of the measures of the processes and of the
+	 * operations of the encoders using this locator: spawn time, time to the
+	 * first output, runtime and exit code of each process, duration of the
+	 * probes and encodings.
+	 * 
+	 * @param metrics
+	 *            The metrics, such as a {@link SimpleEncoderMetrics}, or null
+	 *            to measure nothing.
+	 */
+	public void setMetrics(EncoderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Kills the ready processes, which will be spawned again with the current
+	 * configuration at the next short call.
+	 */
+	private synchronized void resetWarmPools() {
+		if (ffmpegPool != null) {
+			ffmpegPool.shutdown();
+			ffmpegPool = null;
+		}
+		if (ffprobePool != null) {
+			ffprobePool.shutdown();
+			ffprobePool = null;
+		}
+	}
+
+	/**
+	 * It returns a brand new {@link FFMPEGExecutor} for a short ffmpeg call,
+	 * starting from a ready process if the pools are enabled.
+	 * 
+	 * @return A newly instanced {@link FFMPEGExecutor}.
+	 */
+	FFMPEGExecutor createWarmExecutor() {
+		FFMPEGExecutor executor = createExecutor();
+		synchronized (this) {
+			if (warmProcesses > 0 && WarmProcessPool.SUPPORTED) {
+				if (ffmpegPool == null) {
+					ffmpegPool = new WarmProcessPool(getFFMPEGExecutablePath(), warmProcesses, getEnvironment(),
+							workingDirectory);
+				}
+				executor.setWarmPool(ffmpegPool);
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * It returns a brand new {@link FFMPEGExecutor} for a short ffprobe call,
+	 * starting from a ready process if the pools are enabled.
+	 * 
+	 * @return A newly instanced {@link FFMPEGExecutor}.
+	 */
+	FFMPEGExecutor createWarmProbeExecutor() {
+		FFMPEGExecutor executor = createProbeExecutor();
+		synchronized (this) {
+			if (warmProcesses > 0 && WarmProcessPool.SUPPORTED) {
+				if (ffprobePool == null) {
+					ffprobePool = new WarmProcessPool(getFFPROBEExecutablePath(), warmProcesses, getEnvironment(),
+							workingDirectory);
+				}
+				executor.setWarmPool(ffprobePool);
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Applies the environment, the working directory and the metrics to a new
+	 * executor.
+	 * 
+	 * @param executor
+	 *            The executor.
+	 * @return The same executor.
+	 */
+	private FFMPEGExecutor configure(FFMPEGExecutor executor) {
+		synchronized (environment) {
+			for (Map.Entry<String, String> entry : environment.entrySet()) {
+				executor.setEnvironmentVariable(entry.getKey(), entry.getValue());
+			}
+		}
+		executor.setWorkingDirectory(workingDirectory);
+		executor.setMetrics(metrics);
+		return executor;
+	}
+
+	/**
+	 * This method returns the path of the ffprobe executable shipped with the
+	 * ffmpeg executable. By default it is the ffmpeg path, with "ffmpeg"
+	 * replaced by "ffprobe" in the file name.
+	 * 
+	 * @return The path of the ffprobe executable.
+	 */
+	protected String getFFPROBEExecutablePath() {
+		String path = getFFMPEGExecutablePath();
+		int sep = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+		String dir = path.substring(0, sep + 1);
+		String name = path.substring(sep + 1);
+		int i = name.toLowerCase().lastIndexOf("ffmpeg");
+		if (i < 0) {
+			return dir + "ffprobe";
+		}
+		return dir + name.substring(0, i) + "ffprobe" + name.substring(i + "ffmpeg".length());
+	}
+
+	/**
+	 * It returns a brand new {@link FFMPEGExecutor} calling the ffprobe
+	 * executable.
+	 * 
+	 * @return A newly instanced {@link FFMPEGExecutor}, using this locator to
+	 *         call the ffprobe executable.
+	 */
+	FFMPEGExecutor createProbeExecutor() {
+		return configure(new FFMPEGExecutor(getFFPROBEExecutablePath()));
 	}
 
 }
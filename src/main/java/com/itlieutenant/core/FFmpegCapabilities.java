@@ -0,0 +1,491 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.itlieutenant.exception.EncoderException;
+
+/**
+ * The codecs, formats, filters and hardware accelerations supported by a ffmpeg
+ * executable. The discovery runs once per executable, and its results are
+ * shared by all the {@link Encoder} instances using the same executable path.
+ * An executable replaced on disk (a different modification time) is discovered
+ * again. A bare command name, as "ffmpeg", is looked up in the PATH directories
+ * to find the file to watch.
+ * 
+ * @author HeHangjie
+ */
+public class FFmpegCapabilities {
+
+	/**
+	 * The discovered capabilities, keyed by executable path.
+	 */
+	private static final ConcurrentHashMap<String, FFmpegCapabilities> registry = new ConcurrentHashMap<>();
+
+	/**
+	 * The executable path.
+	 */
+	private final String path;
+
+	/**
+	 * The modification time of the executable at the discovery time.
+	 */
+	private final long lastModified;
+
+	private final Set<String> codecs = new LinkedHashSet<>();
+
+	private final Set<String> audioDecoders = new LinkedHashSet<>();
+
+	private final Set<String> audioEncoders = new LinkedHashSet<>();
+
+	private final Set<String> videoDecoders = new LinkedHashSet<>();
+
+	private final Set<String> videoEncoders = new LinkedHashSet<>();
+
+	private final Set<String> subtitleDecoders = new LinkedHashSet<>();
+
+	private final Set<String> subtitleEncoders = new LinkedHashSet<>();
+
+	private final Set<String> decodingFormats = new LinkedHashSet<>();
+
+	private final Set<String> encodingFormats = new LinkedHashSet<>();
+
+	private final Set<String> filters = new LinkedHashSet<>();
+
+	private final Set<String> hwaccels = new LinkedHashSet<>();
+
+	/**
+	 * The codec implemented by each encoder and decoder (libx264 -&gt; h264).
+	 */
+	private final Map<String, String> codecByImplementation = new HashMap<>();
+
+	/**
+	 * The listings read by the discovery, one ffmpeg call each.
+	 */
+	static final String[] LISTINGS = { "-codecs", "-decoders", "-encoders", "-formats", "-filters", "-hwaccels" };
+
+	/**
+	 * It builds an empty set of capabilities, filled by the parsers of the
+	 * listings.
+	 * 
+	 * @param path
+	 *            The path of the ffmpeg executable.
+	 * @param lastModified
+	 *            The modification time of the executable.
+	 */
+	FFmpegCapabilities(String path, long lastModified) {
+		this.path = path;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Returns the capabilities of the ffmpeg executable picked up by a locator,
+	 * running the discovery if needed.
+	 * 
+	 * @param locator
+	 *            The locator of the ffmpeg executable.
+	 * @return The capabilities of the executable.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	public static FFmpegCapabilities of(FFMPEGLocator locator) throws EncoderException {
+		String path = locator.getFFMPEGExecutablePath();
+		long lastModified = resolve(path).lastModified();
+		FFmpegCapabilities caps = registry.get(path);
+		if (caps != null && caps.lastModified == lastModified) {
+			return caps;
+		}
+		synchronized (registry) {
+			caps = registry.get(path);
+			if (caps == null || caps.lastModified != lastModified) {
+				caps = new FFmpegCapabilities(path, lastModified);
+				caps.discover(locator);
+				registry.put(path, caps);
+			}
+			return caps;
+		}
+	}
+
+	/**
+	 * Returns the file of an executable path. A bare command name is looked up
+	 * in the PATH directories, as the operating system does when starting it.
+	 * 
+	 * @param path
+	 *            The executable path.
+	 * @return The executable file, or the path itself if not found.
+	 */
+	static File resolve(String path) {
+		File file = new File(path);
+		if (file.isFile() || path.indexOf('/') >= 0 || path.indexOf(File.separatorChar) >= 0) {
+			return file;
+		}
+		String dirs = System.getenv("PATH");
+		if (dirs == null) {
+			return file;
+		}
+		boolean windows = File.separatorChar == '\\';
+		for (String dir : dirs.split(File.pathSeparator)) {
+			if (dir.length() == 0) {
+				continue;
+			}
+			File candidate = new File(dir, path);
+			if (candidate.isFile()) {
+				return candidate;
+			}
+			if (windows) {
+				candidate = new File(dir, path + ".exe");
+				if (candidate.isFile()) {
+					return candidate;
+				}
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Forgets all the discovered capabilities.
+	 */
+	public static void clear() {
+		registry.clear();
+	}
+
+	/**
+	 * Runs the discovery, one ffmpeg call per listing.
+	 */
+	private void discover(FFMPEGLocator locator) throws EncoderException {
+		for (String listing : LISTINGS) {
+			run(locator, listing, parser(listing));
+		}
+	}
+
+	/**
+	 * Returns the parser of a listing, filling these capabilities. The
+	 * parsers can be fed with a recorded output as well.
+	 * 
+	 * @param listing
+	 *            One of the {@link #LISTINGS}.
+	 * @return The parser of the listing.
+	 * @throws IllegalArgumentException
+	 *             If the listing is unknown.
+	 */
+	LineHandler parser(String listing) throws IllegalArgumentException {
+		switch (listing) {
+		case "-codecs":
+			return new ListingParser() {
+				protected void entry(String line, String[] tokens) {
+					if (tokens.length >= 2) {
+						codecs.add(tokens[1]);
+					}
+				}
+			};
+		case "-decoders":
+			return new CoderParser(audioDecoders, videoDecoders, subtitleDecoders);
+		case "-encoders":
+			return new CoderParser(audioEncoders, videoEncoders, subtitleEncoders);
+		case "-formats":
+			return new ListingParser() {
+				protected void entry(String line, String[] tokens) {
+					if (line.length() < 4) {
+						return;
+					}
+					boolean demux = line.charAt(1) == 'D';
+					boolean mux = line.charAt(2) == 'E';
+					// Newer releases add a third flag, marking devices.
+					int start = line.charAt(3) == 'd' || line.charAt(3) == '.' ? 4 : 3;
+					String[] names = split(line.substring(start));
+					if (names.length == 0) {
+						return;
+					}
+					for (String name : names[0].split(",")) {
+						if (demux) {
+							decodingFormats.add(name);
+						}
+						if (mux) {
+							encodingFormats.add(name);
+						}
+					}
+				}
+			};
+		case "-filters":
+			return new LineHandler() {
+				protected void onLine(String line) {
+					// " T.. adelay            A->A       Delay one or more..."
+					String[] tokens = split(line);
+					if (tokens.length >= 3 && tokens[2].indexOf("->") > 0) {
+						filters.add(tokens[1]);
+					}
+				}
+			};
+		case "-hwaccels":
+			return new LineHandler() {
+				private boolean evaluate = false;
+
+				protected void onLine(String line) {
+					String name = line.trim();
+					if (evaluate) {
+						if (name.length() > 0 && name.indexOf(' ') < 0) {
+							hwaccels.add(name);
+						}
+					} else if (name.endsWith(":")) {
+						evaluate = true;
+					}
+				}
+			};
+		default:
+			throw new IllegalArgumentException("Unknown listing: " + listing);
+		}
+	}
+
+	/**
+	 * Runs ffmpeg with a single listing argument, handing its standard output
+	 * to a line handler. A failed call throws, so that partial listings are
+	 * never kept.
+	 */
+	private static void run(FFMPEGLocator locator, String listing, LineHandler handler) throws EncoderException {
+		FFMPEGExecutor ffmpeg = locator.createExecutor();
+		ffmpeg.addArgument(listing);
+		ErrorTail tail = new ErrorTail(null, null);
+		int exitCode;
+		try {
+			ffmpeg.execute();
+			ffmpeg.pump(handler, tail);
+			exitCode = ffmpeg.waitFor();
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EncoderException(e);
+		} finally {
+			ffmpeg.destroy();
+		}
+		if (exitCode != 0) {
+			throw tail.failure(exitCode);
+		}
+	}
+
+	/**
+	 * Splits a line on blanks.
+	 */
+	private static String[] split(String line) {
+		String trimmed = line.trim();
+		return trimmed.length() == 0 ? new String[0] : trimmed.split("\\s+");
+	}
+
+	/**
+	 * Parses the listings whose entries follow a line of dashes, such as
+	 * <code>-codecs</code>, <code>-encoders</code> and <code>-formats</code>.
+	 */
+	private static abstract class ListingParser extends LineHandler {
+
+		private boolean evaluate = false;
+
+		protected void onLine(String line) {
+			if (evaluate) {
+				entry(line, split(line));
+			} else {
+				String trimmed = line.trim();
+				evaluate = trimmed.length() > 1 && trimmed.replace("-", "").length() == 0;
+			}
+		}
+
+		protected abstract void entry(String line, String[] tokens);
+
+	}
+
+	/**
+	 * Parses the <code>-encoders</code> and <code>-decoders</code> listings:
+	 * " V..... libx264   libx264 H.264 / AVC / MPEG-4 AVC (codec h264)".
+	 */
+	private class CoderParser extends ListingParser {
+
+		private final Set<String> audio;
+
+		private final Set<String> video;
+
+		private final Set<String> subtitle;
+
+		CoderParser(Set<String> audio, Set<String> video, Set<String> subtitle) {
+			this.audio = audio;
+			this.video = video;
+			this.subtitle = subtitle;
+		}
+
+		protected void entry(String line, String[] tokens) {
+			if (tokens.length < 2 || tokens[0].length() == 0) {
+				return;
+			}
+			String name = tokens[1];
+			switch (tokens[0].charAt(0)) {
+			case 'A':
+				audio.add(name);
+				break;
+			case 'V':
+				video.add(name);
+				break;
+			case 'S':
+				subtitle.add(name);
+				break;
+			default:
+				return;
+			}
+			String codec = name;
+			int i = line.lastIndexOf("(codec ");
+			if (i >= 0 && line.endsWith(")")) {
+				codec = line.substring(i + 7, line.length() - 1).trim();
+			}
+			codecByImplementation.put(name, codec);
+		}
+
+	}
+
+	/**
+	 * Returns the path of the ffmpeg executable.
+	 * 
+	 * @return The path of the ffmpeg executable.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the names of all the codecs known by the executable.
+	 * 
+	 * @return The codec names.
+	 */
+	public Set<String> getCodecs() {
+		return Collections.unmodifiableSet(codecs);
+	}
+
+	/**
+	 * Returns the names of the audio decoders.
+	 * 
+	 * @return The audio decoder names.
+	 */
+	public Set<String> getAudioDecoders() {
+		return Collections.unmodifiableSet(audioDecoders);
+	}
+
+	/**
+	 * Returns the names of the audio encoders.
+	 * 
+	 * @return The audio encoder names.
+	 */
+	public Set<String> getAudioEncoders() {
+		return Collections.unmodifiableSet(audioEncoders);
+	}
+
+	/**
+	 * Returns the names of the video decoders.
+	 * 
+	 * @return The video decoder names.
+	 */
+	public Set<String> getVideoDecoders() {
+		return Collections.unmodifiableSet(videoDecoders);
+	}
+
+	/**
+	 * Returns the names of the video encoders.
+	 * 
+	 * @return The video encoder names.
+	 */
+	public Set<String> getVideoEncoders() {
+		return Collections.unmodifiableSet(videoEncoders);
+	}
+
+	/**
+	 * Returns the names of the subtitle decoders.
+	 * 
+	 * @return The subtitle decoder names.
+	 */
+	public Set<String> getSubtitleDecoders() {
+		return Collections.unmodifiableSet(subtitleDecoders);
+	}
+
+	/**
+	 * Returns the names of the subtitle encoders.
+	 * 
+	 * @return The subtitle encoder names.
+	 */
+	public Set<String> getSubtitleEncoders() {
+		return Collections.unmodifiableSet(subtitleEncoders);
+	}
+
+	/**
+	 * Returns the names of the file formats supported at decoding time.
+	 * 
+	 * @return The decoding format names.
+	 */
+	public Set<String> getDecodingFormats() {
+		return Collections.unmodifiableSet(decodingFormats);
+	}
+
+	/**
+	 * Returns the names of the file formats supported at encoding time.
+	 * 
+	 * @return The encoding format names.
+	 */
+	public Set<String> getEncodingFormats() {
+		return Collections.unmodifiableSet(encodingFormats);
+	}
+
+	/**
+	 * Returns the names of the filters.
+	 * 
+	 * @return The filter names.
+	 */
+	public Set<String> getFilters() {
+		return Collections.unmodifiableSet(filters);
+	}
+
+	/**
+	 * Returns the names of the hardware acceleration methods.
+	 * 
+	 * @return The hardware acceleration names.
+	 */
+	public Set<String> getHwaccels() {
+		return Collections.unmodifiableSet(hwaccels);
+	}
+
+	/**
+	 * Returns the codec implemented by an encoder or a decoder, for example
+	 * "h264" for "libx264".
+	 * 
+	 * @param name
+	 *            The encoder or decoder name.
+	 * @return The codec name, or null if the encoder or decoder is unknown.
+	 */
+	public String getCodecOf(String name) {
+		return codecByImplementation.get(name);
+	}
+
+	public String toString() {
+		return getClass().getName() + " (path=" + path + ", codecs=" + codecs.size() + ", audioEncoders="
+				+ audioEncoders.size() + ", videoEncoders=" + videoEncoders.size() + ", encodingFormats="
+				+ encodingFormats.size() + ", filters=" + filters.size() + ", hwaccels=" + hwaccels + ")";
+	}
+
+}
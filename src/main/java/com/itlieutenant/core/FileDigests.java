@@ -0,0 +1,168 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A package-private utility computing the digests used to identify files and
+ * cache keys.
+ * 
+ * @author HeHangjie
+ */
+class FileDigests {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The size of the buffer reading a whole file.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private FileDigests() {
+	}
+
+	/**
+	 * Computes a digest of the first and the last bytes of a file, plus its
+	 * length. It is cheap on huge files, and it tells apart files having the
+	 * same path, size and modification time but a different content.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param sampleSize
+	 *            The number of bytes read at each end of the file.
+	 * @return The hex digest.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	static String sampled(File file, int sampleSize) throws IOException {
+		return sampled(file, sampleSize, "MD5");
+	}
+
+	/**
+	 * Computes a digest of the first and the last bytes of a file, plus its
+	 * length, with the given algorithm.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param sampleSize
+	 *            The number of bytes read at each end of the file.
+	 * @param algorithm
+	 *            The digest algorithm.
+	 * @return The hex digest.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	static String sampled(File file, int sampleSize, String algorithm) throws IOException {
+		MessageDigest md = newDigest(algorithm);
+		byte[] buffer = new byte[sampleSize];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long length = raf.length();
+			update(md, raf, 0, (int) Math.min(sampleSize, length), buffer);
+			if (length > sampleSize) {
+				long tail = Math.max(sampleSize, length - sampleSize);
+				update(md, raf, tail, (int) (length - tail), buffer);
+			}
+			md.update(String.valueOf(length).getBytes(Charset.forName("US-ASCII")));
+		}
+		return hex(md.digest());
+	}
+
+	private static void update(MessageDigest md, RandomAccessFile raf, long position, int length, byte[] buffer)
+			throws IOException {
+		raf.seek(position);
+		raf.readFully(buffer, 0, length);
+		md.update(buffer, 0, length);
+	}
+
+	/**
+	 * Computes the SHA-256 digest of the whole content of a file, streaming
+	 * it.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return The hex digest.
+	 * @throws IOException
+	 *             If the file can't be read.
+	 */
+	static String sha256(File file) throws IOException {
+		MessageDigest md = newDigest("SHA-256");
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = new FileInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				md.update(buffer, 0, n);
+			}
+		}
+		return hex(md.digest());
+	}
+
+	/**
+	 * Computes the SHA-256 digest of a string.
+	 * 
+	 * @param s
+	 *            The string.
+	 * @return The hex digest.
+	 */
+	static String sha256(String s) {
+		return hex(newDigest("SHA-256").digest(s.getBytes(Charset.forName("UTF-8"))));
+	}
+
+	/**
+	 * Computes the SHA-1 digest of a string.
+	 * 
+	 * @param s
+	 *            The string.
+	 * @return The hex digest.
+	 */
+	static String sha1(String s) {
+		return hex(newDigest("SHA-1").digest(s.getBytes(Charset.forName("UTF-8"))));
+	}
+
+	/**
+	 * Returns a new instance of a digest algorithm every jvm must support.
+	 */
+	static MessageDigest newDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Formats bytes as lowercase hex.
+	 */
+	static String hex(byte[] bytes) {
+		char[] c = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			c[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			c[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(c);
+	}
+
+}
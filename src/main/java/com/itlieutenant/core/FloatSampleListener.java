@@ -0,0 +1,55 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+/**
+ * PCM sample listener interface. Instances of implementing classes receive the
+ * audio samples decoded by {@link Encoder#decodeSamples(java.io.File,
+ * com.itlieutenant.entity.EncodingAttributes, int, FloatSampleListener)} as
+ * 32 bit floats, nominally from -1 to 1, chunk by chunk, on the calling thread.
+ * 
+ * @author HeHangjie
+ */
+public interface FloatSampleListener {
+
+	/**
+	 * This method is called once, before the first chunk, reporting the
+	 * format of the samples.
+	 * 
+	 * @param samplingRate
+	 *            The sampling rate, in Hz.
+	 * @param channels
+	 *            The number of channels.
+	 */
+	public void format(int samplingRate, int channels);
+
+	/**
+	 * This method is called for each chunk of samples. The samples of the
+	 * channels are interleaved, and the array is reused for the following
+	 * chunk as soon as the method returns.
+	 * 
+	 * @param samples
+	 *            The array holding the samples.
+	 * @param length
+	 *            The number of samples of the chunk, starting from index 0. It
+	 *            is less than the array length only for the last chunk.
+	 */
+	public void samples(float[] samples, int length);
+
+}
@@ -0,0 +1,238 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A package-private, minimal pull parser for the JSON documents written by
+ * ffprobe. It reads its input incrementally through a small buffer, so the
+ * whole document is never held in memory, and reuses a single builder for the
+ * textual values.
+ * 
+ * @author HeHangjie
+ */
+class JsonReader {
+
+	/**
+	 * The tokens of a JSON document. Commas are skipped, and a string followed
+	 * by a colon is reported as a {@link Token#NAME}.
+	 */
+	enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, LITERAL, END_DOCUMENT
+	}
+
+	private final Reader in;
+
+	private final char[] buffer = new char[8192];
+
+	private int pos = 0;
+
+	private int limit = 0;
+
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * It builds the parser.
+	 * 
+	 * @param in
+	 *            The JSON document.
+	 */
+	JsonReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Returns the text of the last {@link Token#NAME}, {@link Token#STRING},
+	 * {@link Token#NUMBER} or {@link Token#LITERAL} token.
+	 * 
+	 * @return The text of the last token.
+	 */
+	String text() {
+		return text.toString();
+	}
+
+	/**
+	 * Reads the next token.
+	 * 
+	 * @return The next token.
+	 * @throws IOException
+	 *             If the document can't be read or is malformed.
+	 */
+	Token next() throws IOException {
+		int c = skipBlanks();
+		switch (c) {
+		case -1:
+			return Token.END_DOCUMENT;
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '}':
+			return Token.END_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case ']':
+			return Token.END_ARRAY;
+		case '"':
+			readString();
+			if (skipBlanksPeek() == ':') {
+				pos++;
+				return Token.NAME;
+			}
+			return Token.STRING;
+		default:
+			text.setLength(0);
+			text.append((char) c);
+			while (fill()) {
+				char d = buffer[pos];
+				if (d == ',' || d == '}' || d == ']' || d == ':' || Character.isWhitespace(d)) {
+					break;
+				}
+				text.append(d);
+				pos++;
+			}
+			char first = text.charAt(0);
+			return first == '-' || (first >= '0' && first <= '9') ? Token.NUMBER : Token.LITERAL;
+		}
+	}
+
+	/**
+	 * Skips the value following a {@link Token#NAME}, or the rest of an array
+	 * element, including nested objects and arrays.
+	 * 
+	 * @throws IOException
+	 *             If the document can't be read or is malformed.
+	 */
+	void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			Token t = next();
+			if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+				depth++;
+			} else if (t == Token.END_OBJECT || t == Token.END_ARRAY) {
+				depth--;
+			} else if (t == Token.END_DOCUMENT) {
+				throw new IOException("Unexpected end of the JSON document");
+			}
+		} while (depth > 0);
+	}
+
+	/**
+	 * Reads a string body, the opening quote being already consumed.
+	 */
+	private void readString() throws IOException {
+		text.setLength(0);
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw new IOException("Unterminated JSON string");
+			} else if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				int e = read();
+				switch (e) {
+				case 'b':
+					text.append('\b');
+					break;
+				case 'f':
+					text.append('\f');
+					break;
+				case 'n':
+					text.append('\n');
+					break;
+				case 'r':
+					text.append('\r');
+					break;
+				case 't':
+					text.append('\t');
+					break;
+				case 'u':
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int h = Character.digit(read(), 16);
+						if (h < 0) {
+							throw new IOException("Malformed JSON unicode escape");
+						}
+						code = (code << 4) | h;
+					}
+					text.append((char) code);
+					break;
+				case -1:
+					throw new IOException("Unterminated JSON string");
+				default:
+					text.append((char) e);
+				}
+			} else {
+				text.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Skips blanks and commas, and consumes the following char.
+	 */
+	private int skipBlanks() throws IOException {
+		int c = skipBlanksPeek();
+		if (c != -1) {
+			pos++;
+		}
+		return c;
+	}
+
+	/**
+	 * Skips blanks and commas, and returns the following char without
+	 * consuming it.
+	 */
+	private int skipBlanksPeek() throws IOException {
+		while (fill()) {
+			char c = buffer[pos];
+			if (c != ',' && !Character.isWhitespace(c)) {
+				return c;
+			}
+			pos++;
+		}
+		return -1;
+	}
+
+	private int read() throws IOException {
+		return fill() ? buffer[pos++] : -1;
+	}
+
+	/**
+	 * Makes sure there's at least an unread char in the buffer.
+	 * 
+	 * @return false at the end of the input.
+	 */
+	private boolean fill() throws IOException {
+		if (pos < limit) {
+			return true;
+		}
+		int n;
+		do {
+			n = in.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		if (n < 0) {
+			return false;
+		}
+		pos = 0;
+		limit = n;
+		return true;
+	}
+
+}
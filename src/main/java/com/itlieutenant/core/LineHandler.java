@@ -0,0 +1,94 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A package-private {@link StreamHandler} splitting the drained bytes in text
+ * lines. Both '\n' and '\r' are line terminators, since ffmpeg rewrites its
+ * status line using carriage returns. Empty lines are skipped.
+ * 
+ * @author HeHangjie
+ */
+abstract class LineHandler implements StreamHandler {
+
+	/**
+	 * The charset of the ffmpeg output.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * The bytes of the current, not yet terminated, line.
+	 */
+	private byte[] line = new byte[256];
+
+	/**
+	 * The length of the current line.
+	 */
+	private int length = 0;
+
+	public void onData(byte[] buffer, int offset, int len) {
+		int end = offset + len;
+		for (int i = offset; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '\n' || b == '\r') {
+				flush();
+			} else {
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = b;
+			}
+		}
+	}
+
+	public void onEnd() {
+		flush();
+		onEndOfLines();
+	}
+
+	/**
+	 * Delivers the current line, if not empty.
+	 */
+	private void flush() {
+		if (length > 0) {
+			String s = new String(line, 0, length, CHARSET);
+			length = 0;
+			onLine(s);
+		}
+	}
+
+	/**
+	 * Called for each complete line of the stream.
+	 * 
+	 * @param line
+	 *            The line, without its terminator.
+	 */
+	protected abstract void onLine(String line);
+
+	/**
+	 * Called once, after the last line has been delivered. It does nothing by
+	 * default.
+	 */
+	protected void onEndOfLines() {
+	}
+
+}
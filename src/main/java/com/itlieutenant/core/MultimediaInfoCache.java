@@ -0,0 +1,592 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.itlieutenant.entity.AudioInfo;
+import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.entity.StreamInfo;
+import com.itlieutenant.entity.VideoInfo;
+import com.itlieutenant.entity.VideoSize;
+
+/**
+ * A cache of {@link MultimediaInfo} instances, used by
+ * {@link Encoder#getInfo(File)} to avoid probing the same file again. Entries
+ * are bound to the identity of the file (absolute path, size and modification
+ * time, optionally a digest of its first and last bytes): a changed file is a
+ * miss. The most recently used entries are kept in memory, up to a maximum
+ * number; an optional directory keeps all the entries on disk, so they survive
+ * evictions and jvm restarts. The stored entries are plain data fields, never
+ * deserialized objects, so a tampered store can't run code in the jvm.
+ * 
+ * Every call returns its own copy of the cached informations, so a caller may
+ * modify it without affecting the cache.
+ * 
+ * @author HeHangjie
+ */
+public class MultimediaInfoCache {
+
+	/**
+	 * The default maximum number of entries kept in memory.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	/**
+	 * The first bytes of an on-disk entry ("JFIC").
+	 */
+	private static final int MAGIC = 0x4A464943;
+
+	/**
+	 * The version of the on-disk entry format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The maximum number of entries kept in memory.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * The directory of the on-disk store. If null, entries are kept in memory
+	 * only.
+	 */
+	private final File directory;
+
+	/**
+	 * The number of bytes read at each end of a file to compute its content
+	 * digest. If 0 no digest is computed.
+	 */
+	private int contentSampleSize = 0;
+
+	/**
+	 * The in-memory entries, keyed by absolute path, in access order.
+	 */
+	private final LinkedHashMap<String, CachedInfo> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong diskHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * It builds an in-memory cache with {@link #DEFAULT_MAX_ENTRIES} entries.
+	 */
+	public MultimediaInfoCache() {
+		this(DEFAULT_MAX_ENTRIES, null);
+	}
+
+	/**
+	 * It builds the cache.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of entries kept in memory.
+	 * @param directory
+	 *            The directory of the on-disk store, or null to keep the
+	 *            entries in memory only.
+	 */
+	public MultimediaInfoCache(final int maxEntries, File directory) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.directory = directory;
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		this.entries = new LinkedHashMap<String, CachedInfo>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CachedInfo> eldest) {
+				if (size() > maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of bytes read at each end of a file to compute its
+	 * content digest.
+	 * 
+	 * @return The sample size, 0 if no digest is computed.
+	 */
+	public int getContentSampleSize() {
+		return contentSampleSize;
+	}
+
+	/**
+	 * Sets the number of bytes read at each end of a file to compute its
+	 * content digest, which becomes part of the file identity. It costs two
+	 * small reads per lookup, and catches files rewritten without a change of
+	 * size and modification time. If 0 (the default) no digest is computed.
+	 * 
+	 * @param contentSampleSize
+	 *            The sample size.
+	 */
+	public void setContentSampleSize(int contentSampleSize) {
+		this.contentSampleSize = Math.max(0, contentSampleSize);
+	}
+
+	/**
+	 * Returns the cached informations about a file, if the file has not
+	 * changed since they were stored.
+	 * 
+	 * @param source
+	 *            The multimedia file.
+	 * @return The cached informations, or null.
+	 */
+	public MultimediaInfo get(File source) {
+		CachedInfo probe = identify(source);
+		if (probe == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		CachedInfo entry;
+		synchronized (entries) {
+			entry = entries.get(probe.path);
+		}
+		if (entry != null && entry.sameFile(probe)) {
+			hits.incrementAndGet();
+			return copy(entry.info);
+		}
+		entry = load(probe.path);
+		if (entry != null && entry.sameFile(probe)) {
+			synchronized (entries) {
+				entries.put(entry.path, entry);
+			}
+			diskHits.incrementAndGet();
+			return copy(entry.info);
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Stores the informations about a file.
+	 * 
+	 * @param source
+	 *            The multimedia file.
+	 * @param info
+	 *            The informations about the file.
+	 */
+	public void put(File source, MultimediaInfo info) {
+		CachedInfo entry = identify(source);
+		if (entry == null) {
+			return;
+		}
+		entry.info = copy(info);
+		synchronized (entries) {
+			entries.put(entry.path, entry);
+		}
+		store(entry);
+	}
+
+	/**
+	 * Removes the informations about a file, both from memory and disk.
+	 * 
+	 * @param source
+	 *            The multimedia file.
+	 */
+	public void invalidate(File source) {
+		String path = source.getAbsolutePath();
+		synchronized (entries) {
+			entries.remove(path);
+		}
+		if (directory != null) {
+			new File(directory, FileDigests.sha1(path)).delete();
+		}
+	}
+
+	/**
+	 * Removes all the entries, both from memory and disk.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+		if (directory != null) {
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File f : files) {
+					f.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of entries kept in memory.
+	 * 
+	 * @return The number of entries kept in memory.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of entries kept in memory.
+	 * 
+	 * @return The maximum number of entries kept in memory.
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Returns the number of lookups served from memory.
+	 * 
+	 * @return The number of memory hits.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups served from the on-disk store.
+	 * 
+	 * @return The number of disk hits.
+	 */
+	public long getDiskHitCount() {
+		return diskHits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that found no valid entry.
+	 * 
+	 * @return The number of misses.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of entries evicted from memory.
+	 * 
+	 * @return The number of evictions.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Builds the identity of a file.
+	 * 
+	 * @return The identity, with no informations, or null if the file can't be
+	 *         read.
+	 */
+	private CachedInfo identify(File source) {
+		if (!source.isFile()) {
+			return null;
+		}
+		CachedInfo entry = new CachedInfo();
+		entry.path = source.getAbsolutePath();
+		entry.size = source.length();
+		entry.lastModified = source.lastModified();
+		if (contentSampleSize > 0) {
+			try {
+				entry.digest = FileDigests.sampled(source, contentSampleSize);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Reads an entry from the on-disk store.
+	 */
+	private CachedInfo load(String path) {
+		if (directory == null) {
+			return null;
+		}
+		File file = new File(directory, FileDigests.sha1(path));
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not an entry of this version");
+			}
+			CachedInfo entry = new CachedInfo();
+			entry.path = in.readUTF();
+			entry.size = in.readLong();
+			entry.lastModified = in.readLong();
+			entry.digest = readString(in);
+			entry.info = readInfo(in);
+			return path.equals(entry.path) ? entry : null;
+		} catch (IOException | RuntimeException e) {
+			// Corrupted or written by an incompatible version.
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes an entry in the on-disk store. The entry is written in a
+	 * temporary file first, then renamed, so readers never see a partial
+	 * entry.
+	 */
+	private void store(CachedInfo entry) {
+		if (directory == null) {
+			return;
+		}
+		String name = FileDigests.sha1(entry.path);
+		File tmp = new File(directory, name + "." + Thread.currentThread().getId() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(entry.path);
+			out.writeLong(entry.size);
+			out.writeLong(entry.lastModified);
+			writeString(out, entry.digest);
+			writeInfo(out, entry.info);
+		} catch (IOException e) {
+			tmp.delete();
+			return;
+		}
+		File file = new File(directory, name);
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes the fields of the informations about a file.
+	 */
+	private static void writeInfo(DataOutputStream out, MultimediaInfo info) throws IOException {
+		writeString(out, info.getFormat());
+		out.writeLong(info.getDuration());
+		out.writeInt(info.getStart());
+		out.writeInt(info.getBitRate());
+		AudioInfo audio = info.getAudio();
+		out.writeBoolean(audio != null);
+		if (audio != null) {
+			writeString(out, audio.getDecoder());
+			out.writeInt(audio.getSamplingRate());
+			out.writeInt(audio.getChannels());
+			out.writeInt(audio.getBitRate());
+		}
+		VideoInfo video = info.getVideo();
+		out.writeBoolean(video != null);
+		if (video != null) {
+			writeString(out, video.getDecoder());
+			writeSize(out, video.getSize());
+			out.writeInt(video.getBitRate());
+			out.writeFloat(video.getFrameRate());
+		}
+		List<StreamInfo> streams = info.getStreams();
+		out.writeInt(streams.size());
+		for (StreamInfo stream : streams) {
+			out.writeInt(stream.getIndex());
+			writeString(out, stream.getType());
+			writeString(out, stream.getCodec());
+			writeString(out, stream.getCodecLongName());
+			writeString(out, stream.getProfile());
+			writeSize(out, stream.getSize());
+			writeString(out, stream.getPixelFormat());
+			out.writeFloat(stream.getFrameRate());
+			out.writeInt(stream.getBitRate());
+			out.writeInt(stream.getSamplingRate());
+			out.writeInt(stream.getChannels());
+			writeString(out, stream.getChannelLayout());
+			out.writeLong(stream.getStart());
+			out.writeLong(stream.getDuration());
+			Map<String, String> tags = stream.getTags();
+			out.writeInt(tags.size());
+			for (Map.Entry<String, String> tag : tags.entrySet()) {
+				out.writeUTF(tag.getKey());
+				writeString(out, tag.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns a deep copy of the given informations. The sizes are immutable and
+	 * are shared.
+	 */
+	private static MultimediaInfo copy(MultimediaInfo info) {
+		MultimediaInfo copy = new MultimediaInfo();
+		copy.setFormat(info.getFormat());
+		copy.setDuration(info.getDuration());
+		copy.setStart(info.getStart());
+		copy.setBitRate(info.getBitRate());
+		AudioInfo audio = info.getAudio();
+		if (audio != null) {
+			AudioInfo audioCopy = new AudioInfo();
+			audioCopy.setDecoder(audio.getDecoder());
+			audioCopy.setSamplingRate(audio.getSamplingRate());
+			audioCopy.setChannels(audio.getChannels());
+			audioCopy.setBitRate(audio.getBitRate());
+			copy.setAudio(audioCopy);
+		}
+		VideoInfo video = info.getVideo();
+		if (video != null) {
+			VideoInfo videoCopy = new VideoInfo();
+			videoCopy.setDecoder(video.getDecoder());
+			videoCopy.setSize(video.getSize());
+			videoCopy.setBitRate(video.getBitRate());
+			videoCopy.setFrameRate(video.getFrameRate());
+			copy.setVideo(videoCopy);
+		}
+		for (StreamInfo stream : info.getStreams()) {
+			StreamInfo streamCopy = new StreamInfo();
+			streamCopy.setIndex(stream.getIndex());
+			streamCopy.setType(stream.getType());
+			streamCopy.setCodec(stream.getCodec());
+			streamCopy.setCodecLongName(stream.getCodecLongName());
+			streamCopy.setProfile(stream.getProfile());
+			streamCopy.setSize(stream.getSize());
+			streamCopy.setPixelFormat(stream.getPixelFormat());
+			streamCopy.setFrameRate(stream.getFrameRate());
+			streamCopy.setBitRate(stream.getBitRate());
+			streamCopy.setSamplingRate(stream.getSamplingRate());
+			streamCopy.setChannels(stream.getChannels());
+			streamCopy.setChannelLayout(stream.getChannelLayout());
+			streamCopy.setStart(stream.getStart());
+			streamCopy.setDuration(stream.getDuration());
+			for (Map.Entry<String, String> tag : stream.getTags().entrySet()) {
+				streamCopy.setTag(tag.getKey(), tag.getValue());
+			}
+			copy.addStream(streamCopy);
+		}
+		return copy;
+	}
+
+	/**
+	 * Reads the fields written by
+	 * {@link #writeInfo(DataOutputStream, MultimediaInfo)}.
+	 */
+	private static MultimediaInfo readInfo(DataInputStream in) throws IOException {
+		MultimediaInfo info = new MultimediaInfo();
+		info.setFormat(readString(in));
+		info.setDuration(in.readLong());
+		info.setStart(in.readInt());
+		info.setBitRate(in.readInt());
+		if (in.readBoolean()) {
+			AudioInfo audio = new AudioInfo();
+			audio.setDecoder(readString(in));
+			audio.setSamplingRate(in.readInt());
+			audio.setChannels(in.readInt());
+			audio.setBitRate(in.readInt());
+			info.setAudio(audio);
+		}
+		if (in.readBoolean()) {
+			VideoInfo video = new VideoInfo();
+			video.setDecoder(readString(in));
+			video.setSize(readSize(in));
+			video.setBitRate(in.readInt());
+			video.setFrameRate(in.readFloat());
+			info.setVideo(video);
+		}
+		int streams = in.readInt();
+		for (int i = 0; i < streams; i++) {
+			StreamInfo stream = new StreamInfo();
+			stream.setIndex(in.readInt());
+			stream.setType(readString(in));
+			stream.setCodec(readString(in));
+			stream.setCodecLongName(readString(in));
+			stream.setProfile(readString(in));
+			stream.setSize(readSize(in));
+			stream.setPixelFormat(readString(in));
+			stream.setFrameRate(in.readFloat());
+			stream.setBitRate(in.readInt());
+			stream.setSamplingRate(in.readInt());
+			stream.setChannels(in.readInt());
+			stream.setChannelLayout(readString(in));
+			stream.setStart(in.readLong());
+			stream.setDuration(in.readLong());
+			int tags = in.readInt();
+			for (int j = 0; j < tags; j++) {
+				String name = in.readUTF();
+				stream.setTag(name, readString(in));
+			}
+			info.addStream(stream);
+		}
+		return info;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeSize(DataOutputStream out, VideoSize size) throws IOException {
+		out.writeBoolean(size != null);
+		if (size != null) {
+			out.writeInt(size.getWidth());
+			out.writeInt(size.getHeight());
+		}
+	}
+
+	private static VideoSize readSize(DataInputStream in) throws IOException {
+		return in.readBoolean() ? new VideoSize(in.readInt(), in.readInt()) : null;
+	}
+
+	/**
+	 * A cached entry: the identity of a file and its informations.
+	 */
+	private static class CachedInfo {
+
+		private String path;
+
+		private long size;
+
+		private long lastModified;
+
+		private String digest;
+
+		private MultimediaInfo info;
+
+		boolean sameFile(CachedInfo other) {
+			return size == other.size && lastModified == other.lastModified
+					&& (other.digest == null || other.digest.equals(digest));
+		}
+
+	}
+
+}
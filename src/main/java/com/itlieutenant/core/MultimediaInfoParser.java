@@ -0,0 +1,429 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.itlieutenant.entity.AudioInfo;
+import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.entity.VideoInfo;
+import com.itlieutenant.entity.VideoSize;
+
+/**
+ * A package-private {@link StreamHandler} extracting the informations about
+ * the inputs of a ffmpeg call from its standard error output. A single call
+ * can describe many inputs (<code>ffmpeg -i a -i b ...</code>), each one in
+ * its own "Input #n" block. Lines are recognized straight from the pumped
+ * bytes, kept in a reusable buffer: the only strings built are the format and
+ * decoder names stored in the results.
+ * 
+ * @author HeHangjie
+ */
+class MultimediaInfoParser implements StreamHandler {
+
+	/**
+	 * The charset of the ffmpeg output.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * The start of an input block, such as
+	 * "Input #0, mov,mp4,m4a,3gp,3g2,mj2, from 'a.mp4':".
+	 */
+	private static final byte[] INPUT = ascii("Input #");
+
+	private static final byte[] FROM = ascii(", from '");
+
+	/**
+	 * The duration and the bit rate of an input, such as
+	 * "Duration: 00:08:17.38, start: 1.579000, bitrate: 5250 kb/s".
+	 */
+	private static final byte[] DURATION = ascii("Duration: ");
+
+	private static final byte[] BITRATE = ascii(", bitrate: ");
+
+	private static final byte[] KBPS = ascii(" kb/s");
+
+	/**
+	 * A stream of an input, such as
+	 * "Stream #0.0: Audio: wmapro, 44100 Hz, stereo, flt, 440 kb/s" or
+	 * "Stream #0.1: Video: wmv3, yuv420p, 720x576, 25 tbr, 1k tbn, 1k tbc".
+	 */
+	private static final byte[] STREAM = ascii("Stream #");
+
+	private static final byte[] VIDEO = ascii("Video: ");
+
+	private static final byte[] AUDIO = ascii("Audio: ");
+
+	private static final byte[] HZ = ascii("Hz");
+
+	/**
+	 * The informations about each input, by input number.
+	 */
+	private final List<MultimediaInfo> infos = new ArrayList<>();
+
+	/**
+	 * The informations about the input whose block is being parsed.
+	 */
+	private MultimediaInfo info = null;
+
+	/**
+	 * The bytes of the current, not yet terminated, line.
+	 */
+	private byte[] line = new byte[256];
+
+	/**
+	 * The length of the current line.
+	 */
+	private int length = 0;
+
+	/**
+	 * It builds the parser.
+	 */
+	MultimediaInfoParser() {
+	}
+
+	/**
+	 * It parses the ffmpeg output, extracting informations about the source
+	 * multimedia files.
+	 * 
+	 * @param stream
+	 *            The ffmpeg standard error output.
+	 * @return The informations about each input, by input number. An input
+	 *         ffmpeg failed to open has a null element, or no element at all
+	 *         when it is the last one.
+	 * @throws IOException
+	 *             If the output can't be read.
+	 */
+	static List<MultimediaInfo> parse(InputStream stream) throws IOException {
+		MultimediaInfoParser parser = new MultimediaInfoParser();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = stream.read(buffer)) >= 0) {
+			parser.onData(buffer, 0, n);
+		}
+		parser.onEnd();
+		return parser.getInfos();
+	}
+
+	/**
+	 * Returns the informations about each input parsed so far, by input
+	 * number.
+	 * 
+	 * @return The informations about each input. An input ffmpeg failed to
+	 *         open has a null element, or no element at all when it is the
+	 *         last one.
+	 */
+	List<MultimediaInfo> getInfos() {
+		return infos;
+	}
+
+	public void onData(byte[] buffer, int offset, int len) {
+		int end = offset + len;
+		for (int i = offset; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '\n' || b == '\r') {
+				if (length > 0) {
+					parseLine();
+					length = 0;
+				}
+			} else {
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = b;
+			}
+		}
+	}
+
+	public void onEnd() {
+		if (length > 0) {
+			parseLine();
+			length = 0;
+		}
+	}
+
+	/**
+	 * Parses the current line.
+	 */
+	private void parseLine() {
+		if (startsWith(0, INPUT, false)) {
+			if (parseInput(INPUT.length)) {
+				return;
+			}
+		}
+		if (info == null) {
+			return;
+		}
+		int start = skipSpaces(0);
+		if (startsWith(start, DURATION, true)) {
+			parseDuration(start + DURATION.length);
+		} else if (startsWith(start, STREAM, true)) {
+			parseStream(start + STREAM.length);
+		}
+	}
+
+	/**
+	 * Parses the header of an input block, from its number on.
+	 * 
+	 * @return false if the line is not an input header.
+	 */
+	private boolean parseInput(int i) {
+		int digits = countDigits(i);
+		int formatStart = i + digits + 2;
+		if (digits == 0 || digits > 9 || formatStart > length || line[i + digits] != ',' || line[i + digits + 1] != ' ') {
+			return false;
+		}
+		int index = parseInt(i, digits);
+		int end = length;
+		while (end > formatStart && line[end - 1] <= ' ') {
+			end--;
+		}
+		if (end - formatStart < 2 || line[end - 1] != ':' || line[end - 2] != '\'') {
+			return false;
+		}
+		int from = lastIndexOf(FROM, formatStart - 2, end - 2);
+		if (from < formatStart) {
+			return false;
+		}
+		while (infos.size() <= index) {
+			infos.add(null);
+		}
+		info = new MultimediaInfo();
+		info.setFormat(new String(line, formatStart, from - formatStart, CHARSET));
+		infos.set(index, info);
+		return true;
+	}
+
+	/**
+	 * Parses the duration and the bit rate of the input, from the duration
+	 * value on. ffmpeg writes "N/A" for the unknown ones.
+	 */
+	private void parseDuration(int i) {
+		long millis = 0;
+		for (int field = 0; field < 3; field++) {
+			int digits = countDigits(i);
+			if (digits == 0 || digits > 9 || i + digits >= length || line[i + digits] != (field < 2 ? ':' : '.')) {
+				return;
+			}
+			millis = millis * 60 + parseInt(i, digits);
+			i += digits + 1;
+		}
+		int digits = countDigits(i);
+		long fraction = 0;
+		long scale = 1;
+		for (int k = 0; k < digits && k < 18; k++) {
+			fraction = fraction * 10 + (line[i + k] - '0');
+			scale *= 10;
+		}
+		info.setDuration(millis * 1000 + Math.round((double) fraction / scale * 1000));
+		int bitRate = indexOf(BITRATE, i + digits, length);
+		if (bitRate >= 0) {
+			i = bitRate + BITRATE.length;
+			digits = countDigits(i);
+			if (digits > 0 && digits <= 9 && startsWith(i + digits, KBPS, true)) {
+				info.setBitRate(parseInt(i, digits));
+			}
+		}
+	}
+
+	/**
+	 * Parses a stream description, from the stream specifier on. The first
+	 * stream of each kind is reported.
+	 */
+	private void parseStream(int i) {
+		while (i < length && line[i] > ' ') {
+			i++;
+		}
+		// The specifier ends with a colon, as in "#0:1(eng):".
+		if (i < 1 || line[i - 1] != ':' || i >= length || line[i] != ' ') {
+			return;
+		}
+		i++;
+		if (startsWith(i, VIDEO, true)) {
+			if (info.getVideo() == null) {
+				info.setVideo(parseVideo(i + VIDEO.length));
+			}
+		} else if (startsWith(i, AUDIO, true)) {
+			if (info.getAudio() == null) {
+				info.setAudio(parseAudio(i + AUDIO.length));
+			}
+		}
+	}
+
+	/**
+	 * Parses the comma separated specs of a video stream.
+	 */
+	private VideoInfo parseVideo(int i) {
+		VideoInfo video = new VideoInfo();
+		int end = indexOf(',', i);
+		video.setDecoder(trimmed(i, end));
+		while (end < length) {
+			i = end + 1;
+			end = indexOf(',', i);
+			// Video size.
+			for (int k = i; k < end; k++) {
+				if (isDigit(k) && (k == i || !isDigit(k - 1))) {
+					int w = countDigits(k);
+					int x = k + w;
+					int h = x < end && (line[x] == 'x' || line[x] == 'X') ? countDigits(x + 1) : 0;
+					if (h > 0 && x + 1 + h <= end && w <= 9 && h <= 9) {
+						video.setSize(new VideoSize(parseInt(k, w), parseInt(x + 1, h)));
+						break;
+					}
+				}
+			}
+		}
+		return video;
+	}
+
+	/**
+	 * Parses the comma separated specs of an audio stream.
+	 */
+	private AudioInfo parseAudio(int i) {
+		AudioInfo audio = new AudioInfo();
+		int end = indexOf(',', i);
+		audio.setDecoder(trimmed(i, end));
+		while (end < length) {
+			i = end + 1;
+			end = indexOf(',', i);
+			// Sampling rate.
+			for (int k = i; k < end; k++) {
+				if (isDigit(k) && (k == i || !isDigit(k - 1))) {
+					int digits = countDigits(k);
+					int j = k + digits;
+					int spaces = 0;
+					while (j < end && isSpace(line[j])) {
+						j++;
+						spaces++;
+					}
+					if (spaces > 0 && digits <= 9 && j + HZ.length <= end && startsWith(j, HZ, true)) {
+						audio.setSamplingRate(parseInt(k, digits));
+						break;
+					}
+				}
+			}
+		}
+		return audio;
+	}
+
+	private String trimmed(int start, int end) {
+		while (start < end && line[start] <= ' ') {
+			start++;
+		}
+		while (end > start && line[end - 1] <= ' ') {
+			end--;
+		}
+		return new String(line, start, end - start, CHARSET);
+	}
+
+	private boolean startsWith(int i, byte[] prefix, boolean ignoreCase) {
+		if (i < 0 || i + prefix.length > length) {
+			return false;
+		}
+		for (int k = 0; k < prefix.length; k++) {
+			byte b = line[i + k];
+			byte p = prefix[k];
+			if (b != p && !(ignoreCase && lowerCase(b) == lowerCase(p))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int indexOf(byte[] s, int from, int to) {
+		for (int i = from; i + s.length <= to; i++) {
+			if (startsWith(i, s, false)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int lastIndexOf(byte[] s, int from, int to) {
+		for (int i = to - s.length; i >= from; i--) {
+			if (startsWith(i, s, false)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the first occurrence of a byte, or the line
+	 * length if missing.
+	 */
+	private int indexOf(char c, int from) {
+		for (int i = from; i < length; i++) {
+			if (line[i] == c) {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private int skipSpaces(int i) {
+		while (i < length && isSpace(line[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	private boolean isDigit(int i) {
+		return i < length && line[i] >= '0' && line[i] <= '9';
+	}
+
+	private int countDigits(int i) {
+		int n = 0;
+		while (isDigit(i + n)) {
+			n++;
+		}
+		return n;
+	}
+
+	private int parseInt(int i, int digits) {
+		int res = 0;
+		for (int k = 0; k < digits; k++) {
+			res = res * 10 + (line[i + k] - '0');
+		}
+		return res;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || (b >= '\t' && b <= '\r');
+	}
+
+	private static byte lowerCase(byte b) {
+		return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	private static byte[] ascii(String s) {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) s.charAt(i);
+		}
+		return b;
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+
+/**
+ * Packaging listener interface. Instances of implementing classes are told
+ * about every segment and playlist (or manifest) completely written by a
+ * packaging encoding, while the encoding goes on, so that they can be
+ * published right away. If the instance also implements
+ * {@link EncoderProgressListener}, it receives the progress of the encoding
+ * too.
+ * <p>
+ * The methods are called by an internal thread draining the ffmpeg output:
+ * long tasks, such as uploads, should be handed to another thread.
+ * 
+ * @author HeHangjie
+ */
+public interface PackagingListener {
+
+	/**
+	 * This method is called when a segment has been completely written and
+	 * will not change anymore.
+	 * 
+	 * @param segment
+	 *            The segment file.
+	 */
+	public void segmentReady(File segment);
+
+	/**
+	 * This method is called when a playlist (or manifest) has been written.
+	 * All of the segments it lists have already been reported as ready.
+	 * 
+	 * @param playlist
+	 *            The playlist file.
+	 */
+	public void playlistUpdated(File playlist);
+
+}
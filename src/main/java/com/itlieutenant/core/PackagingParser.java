@@ -0,0 +1,148 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A package-private {@link LineHandler} turning the "Opening '...' for
+ * writing" messages of the hls and dash muxers in {@link PackagingListener}
+ * events. Both muxers write into temporary ".tmp" files renamed when
+ * complete. A segment is complete when the playlist listing it is opened, and
+ * a playlist is complete when the following file is opened, or when ffmpeg
+ * ends.
+ * 
+ * @author HeHangjie
+ */
+class PackagingParser extends LineHandler {
+
+	/**
+	 * This regexp is used to parse the ffmpeg output about the files opened by
+	 * a muxer, such as "[hls @ 0x7f8] Opening 'out/seg3.ts.tmp' for writing".
+	 */
+	private static final Pattern OPENING_PATTERN = Pattern.compile("Opening '(.+)' for writing");
+
+	/**
+	 * The suffix of the temporary files.
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * The listener receiving the events.
+	 */
+	private final PackagingListener listener;
+
+	/**
+	 * The listener receiving the ffmpeg messages, or null.
+	 */
+	private final EncoderProgressListener messageListener;
+
+	/**
+	 * The segments opened after the last playlist.
+	 */
+	private final List<File> pendingSegments = new ArrayList<>();
+
+	/**
+	 * The playlist being written, or null.
+	 */
+	private File pendingPlaylist = null;
+
+	/**
+	 * The working directory of ffmpeg, resolving the relative paths, or null
+	 * for the jvm one.
+	 */
+	private final File workingDirectory;
+
+	/**
+	 * It builds the parser.
+	 * 
+	 * @param listener
+	 *            The listener receiving the events.
+	 * @param messageListener
+	 *            The listener receiving the ffmpeg messages, or null.
+	 * @param workingDirectory
+	 *            The working directory of ffmpeg, or null for the jvm one.
+	 */
+	PackagingParser(PackagingListener listener, EncoderProgressListener messageListener, File workingDirectory) {
+		this.listener = listener;
+		this.messageListener = messageListener;
+		this.workingDirectory = workingDirectory;
+	}
+
+	protected void onLine(String line) {
+		if (messageListener != null) {
+			messageListener.message(line);
+		}
+		Matcher m = OPENING_PATTERN.matcher(line);
+		if (!m.find()) {
+			return;
+		}
+		flushPlaylist();
+		String path = m.group(1);
+		if (path.endsWith(TEMP_SUFFIX)) {
+			path = path.substring(0, path.length() - TEMP_SUFFIX.length());
+		}
+		File file = new File(path);
+		if (!file.isAbsolute() && workingDirectory != null) {
+			file = new File(workingDirectory, path);
+		}
+		file = file.getAbsoluteFile();
+		if (isPlaylist(file)) {
+			for (File segment : pendingSegments) {
+				listener.segmentReady(segment);
+			}
+			pendingSegments.clear();
+			pendingPlaylist = file;
+		} else {
+			pendingSegments.add(file);
+		}
+	}
+
+	protected void onEndOfLines() {
+		flushPlaylist();
+		// A failed ffmpeg leaves its last segments unrenamed.
+		for (File segment : pendingSegments) {
+			if (segment.exists()) {
+				listener.segmentReady(segment);
+			}
+		}
+		pendingSegments.clear();
+	}
+
+	/**
+	 * Reports the playlist being written, if any.
+	 */
+	private void flushPlaylist() {
+		if (pendingPlaylist != null) {
+			File playlist = pendingPlaylist;
+			pendingPlaylist = null;
+			listener.playlistUpdated(playlist);
+		}
+	}
+
+	private static boolean isPlaylist(File file) {
+		String name = file.getName();
+		return name.endsWith(".m3u8") || name.endsWith(".mpd");
+	}
+
+}
@@ -0,0 +1,297 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.itlieutenant.core.JsonReader.Token;
+import com.itlieutenant.entity.AudioInfo;
+import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.entity.StreamInfo;
+import com.itlieutenant.entity.VideoInfo;
+import com.itlieutenant.entity.VideoSize;
+
+/**
+ * A package-private parser turning the JSON written by
+ * <code>ffprobe -print_format json -show_format -show_streams</code> in a
+ * {@link MultimediaInfo}, with all of its streams. The first video and the
+ * first audio streams are also reported as {@link VideoInfo} and
+ * {@link AudioInfo}.
+ * 
+ * @author HeHangjie
+ */
+class ProbeParser {
+
+	private ProbeParser() {
+	}
+
+	/**
+	 * Parses a ffprobe JSON document.
+	 * 
+	 * @param reader
+	 *            The document.
+	 * @return The parsed informations. Its format is null if ffprobe didn't
+	 *         recognize the input.
+	 * @throws IOException
+	 *             If the document can't be read or is malformed.
+	 */
+	static MultimediaInfo parse(Reader reader) throws IOException {
+		JsonReader json = new JsonReader(reader);
+		MultimediaInfo info = new MultimediaInfo();
+		if (json.next() != Token.BEGIN_OBJECT) {
+			throw new IOException("Not a ffprobe JSON document");
+		}
+		Token t;
+		while ((t = json.next()) == Token.NAME) {
+			String name = json.text();
+			if ("streams".equals(name)) {
+				parseStreams(json, info);
+			} else if ("format".equals(name)) {
+				parseFormat(json, info);
+			} else {
+				json.skipValue();
+			}
+		}
+		if (t != Token.END_OBJECT) {
+			throw new IOException("Malformed ffprobe JSON document");
+		}
+		for (StreamInfo stream : info.getStreams()) {
+			if (info.getVideo() == null && StreamInfo.TYPE_VIDEO.equals(stream.getType())) {
+				VideoInfo video = new VideoInfo();
+				video.setDecoder(stream.getCodec());
+				video.setSize(stream.getSize());
+				video.setFrameRate(stream.getFrameRate());
+				video.setBitRate(stream.getBitRate());
+				info.setVideo(video);
+			} else if (info.getAudio() == null && StreamInfo.TYPE_AUDIO.equals(stream.getType())) {
+				AudioInfo audio = new AudioInfo();
+				audio.setDecoder(stream.getCodec());
+				audio.setSamplingRate(stream.getSamplingRate());
+				audio.setChannels(stream.getChannels());
+				audio.setBitRate(stream.getBitRate());
+				info.setAudio(audio);
+			}
+		}
+		return info;
+	}
+
+	private static void parseStreams(JsonReader json, MultimediaInfo info) throws IOException {
+		if (json.next() != Token.BEGIN_ARRAY) {
+			throw new IOException("Malformed ffprobe streams");
+		}
+		Token t;
+		while ((t = json.next()) == Token.BEGIN_OBJECT) {
+			info.addStream(parseStream(json));
+		}
+		if (t != Token.END_ARRAY) {
+			throw new IOException("Malformed ffprobe streams");
+		}
+	}
+
+	private static StreamInfo parseStream(JsonReader json) throws IOException {
+		StreamInfo stream = new StreamInfo();
+		int width = -1;
+		int height = -1;
+		float avgFrameRate = -1;
+		float realFrameRate = -1;
+		while (json.next() == Token.NAME) {
+			String name = json.text();
+			if ("tags".equals(name)) {
+				parseTags(json, stream);
+				continue;
+			}
+			Token t = json.next();
+			if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+				skipRest(json);
+				continue;
+			}
+			String value = json.text();
+			switch (name) {
+			case "index":
+				stream.setIndex(parseInt(value));
+				break;
+			case "codec_type":
+				stream.setType(value);
+				break;
+			case "codec_name":
+				stream.setCodec(value);
+				break;
+			case "codec_long_name":
+				stream.setCodecLongName(value);
+				break;
+			case "profile":
+				stream.setProfile(value);
+				break;
+			case "width":
+				width = parseInt(value);
+				break;
+			case "height":
+				height = parseInt(value);
+				break;
+			case "pix_fmt":
+				stream.setPixelFormat(value);
+				break;
+			case "avg_frame_rate":
+				avgFrameRate = parseRational(value);
+				break;
+			case "r_frame_rate":
+				realFrameRate = parseRational(value);
+				break;
+			case "bit_rate":
+				stream.setBitRate(toKiloBits(value));
+				break;
+			case "sample_rate":
+				stream.setSamplingRate(parseInt(value));
+				break;
+			case "channels":
+				stream.setChannels(parseInt(value));
+				break;
+			case "channel_layout":
+				stream.setChannelLayout(value);
+				break;
+			case "start_time":
+				stream.setStart(parseMillis(value));
+				break;
+			case "duration":
+				stream.setDuration(parseMillis(value));
+				break;
+			default:
+				break;
+			}
+		}
+		if (width > 0 && height > 0) {
+			stream.setSize(new VideoSize(width, height));
+		}
+		stream.setFrameRate(avgFrameRate > 0 ? avgFrameRate : realFrameRate);
+		return stream;
+	}
+
+	private static void parseFormat(JsonReader json, MultimediaInfo info) throws IOException {
+		if (json.next() != Token.BEGIN_OBJECT) {
+			throw new IOException("Malformed ffprobe format");
+		}
+		while (json.next() == Token.NAME) {
+			String name = json.text();
+			Token t = json.next();
+			if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+				skipRest(json);
+				continue;
+			}
+			String value = json.text();
+			switch (name) {
+			case "format_name":
+				info.setFormat(value);
+				break;
+			case "duration":
+				info.setDuration(parseMillis(value));
+				break;
+			case "start_time":
+				info.setStart((int) parseMillis(value));
+				break;
+			case "bit_rate":
+				info.setBitRate(toKiloBits(value));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private static void parseTags(JsonReader json, StreamInfo stream) throws IOException {
+		if (json.next() != Token.BEGIN_OBJECT) {
+			throw new IOException("Malformed ffprobe tags");
+		}
+		while (json.next() == Token.NAME) {
+			String name = json.text();
+			Token t = json.next();
+			if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+				skipRest(json);
+			} else {
+				stream.setTag(name, json.text());
+			}
+		}
+	}
+
+	/**
+	 * Skips the rest of an object or array whose opening token has been
+	 * consumed.
+	 */
+	private static void skipRest(JsonReader json) throws IOException {
+		int depth = 1;
+		while (depth > 0) {
+			Token t = json.next();
+			if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+				depth++;
+			} else if (t == Token.END_OBJECT || t == Token.END_ARRAY) {
+				depth--;
+			} else if (t == Token.END_DOCUMENT) {
+				throw new IOException("Unexpected end of the ffprobe document");
+			}
+		}
+	}
+
+	private static int parseInt(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Converts a bit rate in bit/s to kb/s.
+	 */
+	private static int toKiloBits(String value) {
+		try {
+			return (int) (Long.parseLong(value) / 1000);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Converts a time in seconds ("12.345000") to millis.
+	 */
+	private static long parseMillis(String value) {
+		try {
+			return Math.round(Double.parseDouble(value) * 1000);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Parses a rational like "30000/1001".
+	 */
+	private static float parseRational(String value) {
+		int i = value.indexOf('/');
+		try {
+			if (i < 0) {
+				return Float.parseFloat(value);
+			}
+			double num = Double.parseDouble(value.substring(0, i));
+			double den = Double.parseDouble(value.substring(i + 1));
+			return den > 0 ? (float) (num / den) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+}
@@ -20,32 +20,34 @@ package com.itlieutenant.core;
 
 /**
  * A package-private utility to add a shutdown hook to kill ongoing encoding
- * processes at the jvm shutdown.
+ * processes at the jvm shutdown. A single killer is registered, for all the
+ * processes tracked by the {@link ProcessRegistry}.
  * 
  * @author Carlo Pelliccia
  */
 class ProcessKiller extends Thread {
 
 	/**
-	 * The process to kill.
+	 * The registry of the processes to kill.
 	 */
-	private Process process;
+	private ProcessRegistry registry;
 
 	/**
 	 * Builds the killer.
 	 * 
-	 * @param process
-	 *            The process to kill.
+	 * @param registry
+	 *            The registry of the processes to kill.
 	 */
-	public ProcessKiller(Process process) {
-		this.process = process;
+	public ProcessKiller(ProcessRegistry registry) {
+		super("ffmpeg-process-killer");
+		this.registry = registry;
 	}
 
 	/**
-	 * It kills the supplied process.
+	 * It kills the registered processes.
 	 */
 	public void run() {
-		process.destroy();
+		registry.shutdown();
 	}
 
 }
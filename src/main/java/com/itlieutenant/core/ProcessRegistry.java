@@ -0,0 +1,359 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A package-private registry of the live ffmpeg processes. A single shutdown
+ * hook kills all of them at the jvm shutdown, and a single daemon reaper
+ * thread forgets the processes ended without being destroyed and kills the
+ * ones living beyond their deadline. Killing a process kills all its
+ * descendants too, where the platform allows it: the whole tree is killed by a
+ * single utility call, run by a small pool of daemon threads, so that the callers
+ * never wait for it.
+ * 
+ * @author HeHangjie
+ */
+class ProcessRegistry {
+
+	/**
+	 * The period of the reaper thread, in millis.
+	 */
+	private static final long REAP_PERIOD = 1000;
+
+	/**
+	 * The longest wait for a kill utility, in millis. The process itself is
+	 * destroyed afterwards in any case.
+	 */
+	private static final long KILL_TIMEOUT = 2000;
+
+	/**
+	 * The maximum number of threads running the kill utilities.
+	 */
+	private static final int KILLER_THREADS = 4;
+
+	/**
+	 * The registry shared by all the executors.
+	 */
+	private static final ProcessRegistry DEFAULT = new ProcessRegistry();
+
+	/**
+	 * Returns the registry shared by all the executors.
+	 * 
+	 * @return The shared registry.
+	 */
+	static ProcessRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * The live processes, with their deadlines (0 for none).
+	 */
+	private final Map<Process, Long> processes = new ConcurrentHashMap<>();
+
+	/**
+	 * Whether the shutdown hook and the reaper have been started.
+	 */
+	private boolean started = false;
+
+	/**
+	 * Whether the jvm is shutting down.
+	 */
+	private volatile boolean shuttingDown = false;
+
+	/**
+	 * The threads killing the process trees.
+	 */
+	private final ThreadPoolExecutor killers;
+
+	/**
+	 * It builds an empty registry.
+	 */
+	ProcessRegistry() {
+		killers = new ThreadPoolExecutor(KILLER_THREADS, KILLER_THREADS, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					private final AtomicInteger count = new AtomicInteger(1);
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ffmpeg-process-killer-" + count.getAndIncrement());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		killers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Starts tracking a process.
+	 * 
+	 * @param process
+	 *            The process.
+	 * @param timeout
+	 *            The maximum life of the process in millis, after which it is
+	 *            killed, or a value less than 1 for no limit.
+	 */
+	void register(Process process, long timeout) {
+		start();
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+		processes.put(process, Long.valueOf(deadline));
+		if (shuttingDown) {
+			// Started during the shutdown, after the hook did its job.
+			kill(process);
+		}
+	}
+
+	/**
+	 * Stops tracking a process.
+	 * 
+	 * @param process
+	 *            The process.
+	 */
+	void unregister(Process process) {
+		processes.remove(process);
+	}
+
+	/**
+	 * Returns the number of live processes.
+	 * 
+	 * @return The number of tracked processes.
+	 */
+	int size() {
+		return processes.size();
+	}
+
+	/**
+	 * Kills a process and, where possible, its descendants. Nothing happens if
+	 * the process has already ended. The kill runs on another thread: the
+	 * process may still be alive when the call returns.
+	 * 
+	 * @param process
+	 *            The process.
+	 */
+	void kill(final Process process) {
+		processes.remove(process);
+		if (hasExited(process)) {
+			return;
+		}
+		final long pid = pid(process);
+		if (pid <= 0) {
+			process.destroy();
+			return;
+		}
+		killers.execute(new Runnable() {
+			public void run() {
+				if (hasExited(process)) {
+					// Its id may belong to another process by now.
+					return;
+				}
+				Process killer = killTree(pid);
+				if (killer != null) {
+					try {
+						awaitExit(killer, System.currentTimeMillis() + KILL_TIMEOUT);
+					} catch (InterruptedException e) {
+						;
+					}
+					killer.destroy();
+				}
+				process.destroy();
+			}
+		});
+	}
+
+	/**
+	 * Kills all the live processes, and waits a little for them to end. The
+	 * process trees are killed all together, not one after the other.
+	 */
+	void killAll() {
+		List<Process> victims = new ArrayList<>(processes.keySet());
+		processes.clear();
+		List<Process> utilities = new ArrayList<>();
+		for (Process process : victims) {
+			long pid = hasExited(process) ? -1 : pid(process);
+			if (pid > 0) {
+				Process killer = killTree(pid);
+				if (killer != null) {
+					utilities.add(killer);
+				}
+			}
+		}
+		long deadline = System.currentTimeMillis() + KILL_TIMEOUT;
+		try {
+			for (Process killer : utilities) {
+				awaitExit(killer, deadline);
+			}
+		} catch (InterruptedException e) {
+			;
+		}
+		for (Process killer : utilities) {
+			killer.destroy();
+		}
+		for (Process process : victims) {
+			process.destroy();
+		}
+	}
+
+	/**
+	 * Starts the shutdown hook and the reaper, once.
+	 */
+	private synchronized void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+		Runtime.getRuntime().addShutdownHook(new ProcessKiller(this));
+		Thread reaper = new Thread(new Runnable() {
+			public void run() {
+				while (true) {
+					try {
+						Thread.sleep(REAP_PERIOD);
+					} catch (InterruptedException e) {
+						;
+					}
+					reap();
+				}
+			}
+		}, "ffmpeg-process-reaper");
+		reaper.setDaemon(true);
+		reaper.start();
+	}
+
+	/**
+	 * Called by the shutdown hook.
+	 */
+	void shutdown() {
+		shuttingDown = true;
+		killAll();
+	}
+
+	/**
+	 * Forgets the ended processes and kills the expired ones.
+	 */
+	private void reap() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Process, Long> entry : processes.entrySet()) {
+			Process process = entry.getKey();
+			long deadline = entry.getValue().longValue();
+			if (hasExited(process)) {
+				processes.remove(process);
+			} else if (deadline > 0 && now >= deadline) {
+				kill(process);
+			}
+		}
+	}
+
+	/**
+	 * Tells if a process has ended.
+	 * 
+	 * @param process
+	 *            The process.
+	 * @return true if the process has ended.
+	 */
+	static boolean hasExited(Process process) {
+		try {
+			process.exitValue();
+			return true;
+		} catch (IllegalThreadStateException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the operating system id of a process: through Process.pid() on
+	 * the jvms having it, or the "pid" field of the unix implementation.
+	 * 
+	 * @param process
+	 *            The process.
+	 * @return The process id, or -1 if unknown.
+	 */
+	static long pid(Process process) {
+		try {
+			Method method = Process.class.getMethod("pid");
+			return ((Number) method.invoke(process)).longValue();
+		} catch (Exception e) {
+			;
+		}
+		try {
+			Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return field.getLong(process);
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Starts killing a process with all its descendants, best effort, in a
+	 * single utility call. On POSIX systems each process is stopped, so that it
+	 * can't fork any more, then its children are killed the same way, while
+	 * they can still be found by the id of their parent, and last the process
+	 * itself.
+	 * 
+	 * @param pid
+	 *            The process id.
+	 * @return The running kill utility, or null if it can't be started.
+	 */
+	private static Process killTree(long pid) {
+		String[] cmd;
+		if (File.separatorChar == '\\') {
+			cmd = new String[] { "taskkill", "/F", "/T", "/PID", String.valueOf(pid) };
+		} else {
+			cmd = new String[] { "sh", "-c",
+					"t() { kill -STOP $1; for c in $(pgrep -P $1); do t $c; done; kill -KILL $1; }; t " + pid };
+		}
+		try {
+			Process killer = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+			killer.getOutputStream().close();
+			killer.getInputStream().close();
+			return killer;
+		} catch (Exception e) {
+			// No kill utility: the descendants are left alone.
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the end of a process, up to a deadline.
+	 * 
+	 * @param process
+	 *            The process.
+	 * @param deadline
+	 *            The deadline, as given by {@link System#currentTimeMillis()}.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	private static void awaitExit(Process process, long deadline) throws InterruptedException {
+		while (!hasExited(process) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+}
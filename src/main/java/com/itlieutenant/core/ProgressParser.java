@@ -0,0 +1,280 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import com.itlieutenant.entity.EncodingProgress;
+
+/**
+ * A package-private {@link StreamHandler} parsing the key=value blocks written
+ * by ffmpeg on its <code>-progress</code> channel, and reporting them to an
+ * {@link EncoderProgressListener}. Values are decoded straight from the pumped
+ * bytes, without building strings or running regular expressions.
+ * 
+ * @author HeHangjie
+ */
+class ProgressParser implements StreamHandler {
+
+	private static final byte[] FRAME = ascii("frame");
+
+	private static final byte[] FPS = ascii("fps");
+
+	private static final byte[] BITRATE = ascii("bitrate");
+
+	private static final byte[] TOTAL_SIZE = ascii("total_size");
+
+	private static final byte[] OUT_TIME_US = ascii("out_time_us");
+
+	/**
+	 * Despite its name, ffmpeg writes microseconds in this field too.
+	 */
+	private static final byte[] OUT_TIME_MS = ascii("out_time_ms");
+
+	private static final byte[] SPEED = ascii("speed");
+
+	/**
+	 * The last key of every block, valued "continue" or "end".
+	 */
+	private static final byte[] PROGRESS = ascii("progress");
+
+	private static final byte[] END = ascii("end");
+
+	/**
+	 * The listener receiving the progress.
+	 */
+	private final EncoderProgressListener listener;
+
+	/**
+	 * The expected duration of the encoded stream, in millis. If less than 1
+	 * the progress can be reported only at the end.
+	 */
+	private final long duration;
+
+	/**
+	 * The key of the current line.
+	 */
+	private final byte[] key = new byte[32];
+
+	private int keyLength = 0;
+
+	/**
+	 * The value of the current line.
+	 */
+	private final byte[] value = new byte[64];
+
+	private int valueLength = 0;
+
+	/**
+	 * True once the '=' of the current line has been met.
+	 */
+	private boolean inValue = false;
+
+	/**
+	 * The statistics of the current block.
+	 */
+	private EncodingProgress current = new EncodingProgress();
+
+	/**
+	 * It builds the parser.
+	 * 
+	 * @param listener
+	 *            The listener receiving the progress.
+	 * @param duration
+	 *            The expected duration of the encoded stream, in millis, or a
+	 *            value less than 1 if unknown.
+	 */
+	ProgressParser(EncoderProgressListener listener, long duration) {
+		this.listener = listener;
+		this.duration = duration;
+	}
+
+	public void onData(byte[] buffer, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '\n' || b == '\r') {
+				if (inValue) {
+					dispatch();
+				}
+				keyLength = 0;
+				valueLength = 0;
+				inValue = false;
+			} else if (inValue) {
+				if (valueLength < value.length) {
+					value[valueLength++] = b;
+				}
+			} else if (b == '=') {
+				inValue = true;
+			} else if (keyLength < key.length) {
+				key[keyLength++] = b;
+			}
+		}
+	}
+
+	public void onEnd() {
+		if (inValue) {
+			dispatch();
+		}
+	}
+
+	/**
+	 * Stores the value of the current line in the statistics of the block.
+	 */
+	private void dispatch() {
+		if (is(OUT_TIME_US) || is(OUT_TIME_MS)) {
+			long micros = parseLong();
+			if (micros >= 0) {
+				current.setOutTime(micros / 1000);
+			}
+		} else if (is(FRAME)) {
+			current.setFrame(Math.max(0, parseLong()));
+		} else if (is(FPS)) {
+			current.setFps(parseFloat());
+		} else if (is(BITRATE)) {
+			current.setBitRate(parseFloat());
+		} else if (is(SPEED)) {
+			current.setSpeed(parseFloat());
+		} else if (is(TOTAL_SIZE)) {
+			current.setTotalSize(parseLong());
+		} else if (is(PROGRESS)) {
+			report(valueIs(END));
+		}
+	}
+
+	/**
+	 * Reports the statistics of a complete block.
+	 */
+	private void report(boolean end) {
+		EncodingProgress progress = current;
+		current = new EncodingProgress();
+		int permil;
+		if (end) {
+			permil = 1000;
+		} else if (duration > 0) {
+			permil = (int) Math.max(0, Math.min(999, progress.getOutTime() * 1000 / duration));
+		} else {
+			permil = -1;
+		}
+		progress.setPermil(permil);
+		if (permil >= 0) {
+			listener.progress(permil);
+		}
+		if (listener instanceof EncoderStatisticsListener) {
+			((EncoderStatisticsListener) listener).statistics(progress);
+		}
+	}
+
+	private boolean is(byte[] k) {
+		return equals(key, keyLength, k);
+	}
+
+	private boolean valueIs(byte[] v) {
+		return equals(value, valueLength, v);
+	}
+
+	private static boolean equals(byte[] buffer, int length, byte[] k) {
+		if (length != k.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer[i] != k[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses the leading integer of the value.
+	 * 
+	 * @return The parsed value, or -1 if the value is not a number (N/A).
+	 */
+	private long parseLong() {
+		int i = skipSpaces();
+		boolean negative = false;
+		if (i < valueLength && value[i] == '-') {
+			negative = true;
+			i++;
+		}
+		long res = 0;
+		int digits = 0;
+		for (; i < valueLength; i++) {
+			int d = value[i] - '0';
+			if (d < 0 || d > 9) {
+				break;
+			}
+			res = res * 10 + d;
+			digits++;
+		}
+		if (digits == 0) {
+			return -1;
+		}
+		return negative ? -res : res;
+	}
+
+	/**
+	 * Parses the leading decimal number of the value, ignoring any unit suffix
+	 * such as "kbits/s" or "x".
+	 * 
+	 * @return The parsed value, or -1 if the value is not a number (N/A).
+	 */
+	private float parseFloat() {
+		int i = skipSpaces();
+		long mantissa = 0;
+		long scale = 1;
+		boolean fraction = false;
+		int digits = 0;
+		for (; i < valueLength; i++) {
+			byte b = value[i];
+			if (b == '.' && !fraction) {
+				fraction = true;
+			} else if (b >= '0' && b <= '9') {
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					if (fraction) {
+						scale *= 10;
+					}
+					digits++;
+				}
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return -1;
+		}
+		return (float) ((double) mantissa / scale);
+	}
+
+	private int skipSpaces() {
+		int i = 0;
+		while (i < valueLength && value[i] == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private static byte[] ascii(String s) {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) s.charAt(i);
+		}
+		return b;
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Raw frame listener interface. Instances of implementing classes receive the
+ * frames decoded by {@link Encoder#decodeFrames(java.io.File,
+ * com.itlieutenant.entity.RawVideoAttributes, RawFrameListener)}, one by one,
+ * on the calling thread.
+ * 
+ * @author HeHangjie
+ */
+public interface RawFrameListener {
+
+	/**
+	 * This method is called for each decoded frame. The buffer is a direct
+	 * buffer of a small pool, from position 0 to the size of a frame: it is
+	 * reused for a following frame as soon as the method returns, so its
+	 * contents must be consumed (or copied) before.
+	 * 
+	 * @param frame
+	 *            The frame, in the requested pixel format.
+	 * @param index
+	 *            The index of the frame, starting from 0.
+	 */
+	public void frame(ByteBuffer frame, long index);
+
+}
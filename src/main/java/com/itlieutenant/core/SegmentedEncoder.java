@@ -0,0 +1,461 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.itlieutenant.entity.EncodingAttributes;
+import com.itlieutenant.entity.MultimediaInfo;
+import com.itlieutenant.exception.EncoderException;
+
+/**
+ * Encodes a single long multimedia file with many concurrent ffmpeg
+ * processes. The source is split in segments starting at keyframes, each
+ * segment is encoded on its own (through the offset and duration attributes)
+ * in a temporary file next to the target, and the encoded segments are joined
+ * without re-encoding by the ffmpeg concat demuxer.
+ * <p>
+ * The target format must support the stream copy concatenation (e.g. mp4,
+ * matroska, mpegts). Audio encoders adding priming samples can leave tiny
+ * gaps at the segment joints, so this mode suits best video-heavy long-form
+ * content.
+ * 
+ * @author HeHangjie
+ */
+public class SegmentedEncoder {
+
+	/**
+	 * The shortest segment worth its own ffmpeg process, in millis.
+	 */
+	public static final long MIN_SEGMENT_DURATION = 10000;
+
+	/**
+	 * The encoder running ffmpeg.
+	 */
+	private final Encoder encoder;
+
+	/**
+	 * The maximum number of segments.
+	 */
+	private final int segments;
+
+	/**
+	 * The executor encoding the segments, or null to use a temporary pool
+	 * with a thread per segment.
+	 */
+	private final Executor executor;
+
+	/**
+	 * It builds a segmented encoder splitting the sources in a segment for
+	 * each couple of available processors.
+	 * 
+	 * @param encoder
+	 *            The encoder running ffmpeg.
+	 */
+	public SegmentedEncoder(Encoder encoder) {
+		this(encoder, TranscodeScheduler.defaultConcurrency(TranscodeScheduler.DEFAULT_THREADS_PER_JOB), null);
+	}
+
+	/**
+	 * It builds a segmented encoder.
+	 * 
+	 * @param encoder
+	 *            The encoder running ffmpeg.
+	 * @param segments
+	 *            The maximum number of segments a source is split in.
+	 * @param executor
+	 *            The executor encoding the segments, or null to use a
+	 *            temporary pool with a thread per segment. The encoder does
+	 *            not shut it down.
+	 */
+	public SegmentedEncoder(Encoder encoder, int segments, Executor executor) {
+		if (segments < 1) {
+			throw new IllegalArgumentException("segments must be positive");
+		}
+		this.encoder = encoder;
+		this.segments = segments;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the maximum number of segments a source is split in.
+	 * 
+	 * @return The maximum number of segments.
+	 */
+	public int getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Re-encode a multimedia file, segment by segment.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file. If this file already
+	 *            exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process. The format is
+	 *            mandatory.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null, or the format
+	 *             is null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(File source, File target, EncodingAttributes attributes)
+			throws IllegalArgumentException, EncoderException {
+		encode(source, target, attributes, null);
+	}
+
+	/**
+	 * Re-encode a multimedia file, segment by segment, reporting the overall
+	 * progress of the process to a listener. Sources too short to be split are
+	 * encoded by a single {@link Encoder#encode(File, File, EncodingAttributes,
+	 * EncoderProgressListener)} call.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file. If this file already
+	 *            exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process. The format is
+	 *            mandatory.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null. Its methods can be called by many threads, one
+	 *            at a time.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null, or the format
+	 *             is null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process.
+	 */
+	public void encode(File source, File target, EncodingAttributes attributes, EncoderProgressListener listener)
+			throws IllegalArgumentException, EncoderException {
+		if (attributes.getAudioAttributes() == null && attributes.getVideoAttributes() == null) {
+			throw new IllegalArgumentException("Both audio and video attributes are null");
+		}
+		if (attributes.getFormat() == null) {
+			throw new IllegalArgumentException("The format is mandatory for a segmented encoding");
+		}
+		MultimediaInfo info = encoder.getInfo(source);
+		double[] bounds = split(source, info, attributes);
+		if (bounds.length < 3) {
+			encoder.encode(source, target, attributes, listener);
+			return;
+		}
+		if (listener != null) {
+			listener.sourceInfo(info);
+		}
+		target = target.getAbsoluteFile();
+		File dir = target.getParentFile();
+		dir.mkdirs();
+		int n = bounds.length - 1;
+		File[] parts = new File[n];
+		File list = null;
+		try {
+			String suffix = "." + attributes.getFormat();
+			for (int i = 0; i < n; i++) {
+				parts[i] = File.createTempFile(target.getName() + ".part" + i + "-", suffix, dir);
+			}
+			encodeSegments(source, parts, bounds, attributes, listener);
+			list = File.createTempFile(target.getName() + ".concat-", ".txt", dir);
+			writeConcatList(list, parts);
+			encoder.encode(Arrays.asList("-f", "concat", "-safe", "0", "-i"), list,
+					Arrays.asList("-c", "copy", "-f", attributes.getFormat(), "-y"), target);
+			if (listener != null) {
+				listener.progress(1000);
+			}
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		} finally {
+			for (File part : parts) {
+				if (part != null) {
+					part.delete();
+				}
+			}
+			if (list != null) {
+				list.delete();
+			}
+		}
+	}
+
+	/**
+	 * Computes the segment bounds, snapped to the keyframes of the source.
+	 * 
+	 * @return The bounds in seconds, from the start of the first segment to
+	 *         the end of the last one. Less than 3 bounds mean that the
+	 *         source should not be split.
+	 */
+	private double[] split(File source, MultimediaInfo info, EncodingAttributes attributes) throws EncoderException {
+		double start = attributes.getOffset() != null ? attributes.getOffset().doubleValue() : 0;
+		double end = info.getDuration() / 1000.0;
+		if (attributes.getDuration() != null) {
+			double limit = start + attributes.getDuration().doubleValue();
+			end = end > 0 ? Math.min(end, limit) : limit;
+		}
+		int n = (int) Math.min(segments, (long) ((end - start) * 1000) / MIN_SEGMENT_DURATION);
+		if (n < 2) {
+			return new double[] { start, end };
+		}
+		List<Double> keyframes = attributes.getVideoAttributes() != null ? encoder.getKeyframes(source)
+				: new ArrayList<Double>();
+		List<Double> bounds = new ArrayList<>();
+		bounds.add(start);
+		int k = 0;
+		for (int i = 1; i < n; i++) {
+			double bound = start + (end - start) * i / n;
+			if (!keyframes.isEmpty()) {
+				// The first keyframe at or after the ideal bound.
+				while (k < keyframes.size() && keyframes.get(k) < bound) {
+					k++;
+				}
+				if (k == keyframes.size()) {
+					break;
+				}
+				bound = keyframes.get(k);
+			}
+			if (bound > bounds.get(bounds.size() - 1) && bound < end) {
+				bounds.add(bound);
+			}
+		}
+		bounds.add(end);
+		double[] ret = new double[bounds.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = bounds.get(i);
+		}
+		return ret;
+	}
+
+	/**
+	 * Encodes the segments concurrently, stopping all of them at the first
+	 * failure.
+	 */
+	private void encodeSegments(final File source, final File[] parts, double[] bounds,
+			EncodingAttributes attributes, EncoderProgressListener listener) throws EncoderException {
+		int n = parts.length;
+		ExecutorService pool = null;
+		Executor exec = executor;
+		if (exec == null) {
+			pool = Executors.newFixedThreadPool(n, new SegmentThreadFactory());
+			exec = pool;
+		}
+		ProgressAggregator aggregator = listener != null ? new ProgressAggregator(listener, bounds) : null;
+		// The offsets of the segments as ffmpeg reads them, in microseconds.
+		// The first segment keeps the offset of the caller; the others start
+		// at, or just before, their keyframe.
+		Float[] offsets = new Float[n];
+		long[] starts = new long[n];
+		offsets[0] = attributes.getOffset();
+		starts[0] = offsets[0] != null ? micros(offsets[0].floatValue()) : 0;
+		for (int i = 1; i < n; i++) {
+			offsets[i] = Float.valueOf(floor(Math.round(bounds[i] * 1000000)));
+			starts[i] = micros(offsets[i].floatValue());
+		}
+		List<FutureTask<Void>> tasks = new ArrayList<>(n);
+		try {
+			for (int i = 0; i < n; i++) {
+				final File part = parts[i];
+				final EncodingAttributes segment = new EncodingAttributes(attributes);
+				// A copied stream can't be cut exactly at the segment bounds.
+				segment.setAutoCopy(null);
+				segment.setOffset(offsets[i]);
+				if (i < n - 1) {
+					// Ends at, or just before, the start of the next segment:
+					// the frames at the join are never encoded twice.
+					segment.setDuration(Float.valueOf(floor(starts[i + 1] - starts[i])));
+				} else if (attributes.getDuration() != null) {
+					long end = starts[0] + micros(attributes.getDuration().floatValue());
+					segment.setDuration(Float.valueOf(floor(end - starts[i])));
+				}
+				// Otherwise the last segment runs to the end of the source,
+				// whose probed duration is rounded.
+				final EncoderProgressListener segmentListener = aggregator != null ? aggregator.segment(i) : null;
+				FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+					public Void call() throws Exception {
+						encoder.encode(source, part, segment, segmentListener);
+						return null;
+					}
+				});
+				tasks.add(task);
+				try {
+					exec.execute(task);
+				} catch (RejectedExecutionException e) {
+					task.run();
+				}
+			}
+			for (FutureTask<Void> task : tasks) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof EncoderException) {
+						throw (EncoderException) cause;
+					}
+					throw new EncoderException(cause);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new EncoderException(e);
+				}
+			}
+		} finally {
+			for (FutureTask<Void> task : tasks) {
+				task.cancel(true);
+			}
+			if (pool != null) {
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Returns the time read by ffmpeg from the argument of a float attribute,
+	 * in microseconds: ffmpeg ignores the digits after the sixth decimal.
+	 */
+	private static long micros(float seconds) {
+		return new BigDecimal(String.valueOf(seconds)).setScale(6, RoundingMode.DOWN).unscaledValue().longValue();
+	}
+
+	/**
+	 * Returns the float read by ffmpeg as the time closest to the given one,
+	 * and not later than it. The attributes are floats, so the result can be
+	 * earlier than the given time by one float step (about 1 ms beyond 2
+	 * hours): the frames closer to each other than that can't be split
+	 * exactly.
+	 */
+	private static float floor(long micros) {
+		float seconds = (float) (micros / 1000000.0);
+		while (micros(seconds) > micros) {
+			seconds = Math.nextAfter(seconds, Double.NEGATIVE_INFINITY);
+		}
+		return seconds;
+	}
+
+	/**
+	 * Writes the list of the concat demuxer.
+	 */
+	private static void writeConcatList(File list, File[] parts) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(list), "UTF-8")) {
+			for (File part : parts) {
+				writer.write("file '");
+				writer.write(part.getAbsolutePath().replace("'", "'\\''"));
+				writer.write("'\n");
+			}
+		}
+	}
+
+	/**
+	 * Merges the progress of the segments in the progress of the whole
+	 * encoding, weighting each segment by its duration.
+	 */
+	private static class ProgressAggregator {
+
+		private final EncoderProgressListener listener;
+
+		private final double[] weights;
+
+		private final int[] permils;
+
+		private int last = -1;
+
+		ProgressAggregator(EncoderProgressListener listener, double[] bounds) {
+			this.listener = listener;
+			int n = bounds.length - 1;
+			this.weights = new double[n];
+			this.permils = new int[n];
+			double total = bounds[n] - bounds[0];
+			for (int i = 0; i < n; i++) {
+				weights[i] = (bounds[i + 1] - bounds[i]) / total;
+			}
+		}
+
+		EncoderProgressListener segment(final int index) {
+			return new EncoderProgressListener() {
+				public void sourceInfo(MultimediaInfo info) {
+					;
+				}
+
+				public void progress(int permil) {
+					update(index, permil);
+				}
+
+				public void message(String message) {
+					synchronized (ProgressAggregator.this) {
+						listener.message(message);
+					}
+				}
+			};
+		}
+
+		synchronized void update(int index, int permil) {
+			permils[index] = permil;
+			double sum = 0;
+			for (int i = 0; i < permils.length; i++) {
+				sum += weights[i] * permils[i];
+			}
+			// The concatenation is still to come.
+			int overall = (int) Math.min(999, sum);
+			if (overall > last) {
+				last = overall;
+				listener.progress(overall);
+			}
+		}
+
+	}
+
+	/**
+	 * Names the segment threads and marks them as daemons.
+	 */
+	private static class SegmentThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		private final String prefix = "segment-" + poolNumber.getAndIncrement() + "-worker-";
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+}
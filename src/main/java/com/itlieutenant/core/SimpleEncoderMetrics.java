@@ -0,0 +1,380 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link EncoderMetrics} keeping counters and timings in memory, with no
+ * dependency: it can be read periodically and exported, or just logged. All
+ * the values are totals since the creation of the instance, or since the
+ * last {@link #reset()}.
+ * 
+ * @author HeHangjie
+ */
+public class SimpleEncoderMetrics implements EncoderMetrics {
+
+	/**
+	 * The time taken to start the processes.
+	 */
+	private final Timing spawns = new Timing();
+
+	/**
+	 * The time from the start of the processes to their first output.
+	 */
+	private final Timing firstOutputs = new Timing();
+
+	/**
+	 * The life of the ended processes.
+	 */
+	private final Timing runtimes = new Timing();
+
+	/**
+	 * The duration of the probes.
+	 */
+	private final Timing probes = new Timing();
+
+	/**
+	 * The duration of the encodings.
+	 */
+	private final Timing encodings = new Timing();
+
+	/**
+	 * The time spent by the scheduled jobs in the queue.
+	 */
+	private final Timing queueWaits = new Timing();
+
+	/**
+	 * The number of processes taken from a pool of ready processes.
+	 */
+	private final AtomicLong warmStarts = new AtomicLong();
+
+	/**
+	 * The number of ended processes, by exit code.
+	 */
+	private final ConcurrentMap<Integer, AtomicLong> exitCodes = new ConcurrentHashMap<>();
+
+	private final AtomicLong probeFailures = new AtomicLong();
+
+	private final AtomicLong encodingFailures = new AtomicLong();
+
+	private final AtomicLong bytesIn = new AtomicLong();
+
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	/**
+	 * The sum of the known speed factors, in thousandths.
+	 */
+	private final AtomicLong speedPermil = new AtomicLong();
+
+	/**
+	 * The number of encodings with a known speed factor.
+	 */
+	private final AtomicLong speedCount = new AtomicLong();
+
+	public void processStarted(long spawnNanos, boolean warm) {
+		spawns.add(spawnNanos);
+		if (warm) {
+			warmStarts.incrementAndGet();
+		}
+	}
+
+	public void processFirstOutput(long nanos) {
+		firstOutputs.add(nanos);
+	}
+
+	public void processEnded(int exitCode, long runtimeNanos) {
+		runtimes.add(runtimeNanos);
+		AtomicLong count = exitCodes.get(exitCode);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = exitCodes.putIfAbsent(exitCode, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	public void probed(long nanos, boolean success) {
+		probes.add(nanos);
+		if (!success) {
+			probeFailures.incrementAndGet();
+		}
+	}
+
+	public void encoded(long nanos, long bytesIn, long bytesOut, double speed, boolean success) {
+		encodings.add(nanos);
+		if (!success) {
+			encodingFailures.incrementAndGet();
+		}
+		if (bytesIn > 0) {
+			this.bytesIn.addAndGet(bytesIn);
+		}
+		if (bytesOut > 0) {
+			this.bytesOut.addAndGet(bytesOut);
+		}
+		if (success && speed >= 0) {
+			speedPermil.addAndGet(Math.round(speed * 1000));
+			speedCount.incrementAndGet();
+		}
+	}
+
+	public void queued(long nanos) {
+		queueWaits.add(nanos);
+	}
+
+	/**
+	 * Returns the number of processes started and not ended yet.
+	 * 
+	 * @return The number of live processes.
+	 */
+	public long getLiveProcesses() {
+		return Math.max(0, spawns.getCount() - runtimes.getCount());
+	}
+
+	/**
+	 * Returns the time taken to start the processes.
+	 * 
+	 * @return The spawn timing.
+	 */
+	public Timing getSpawns() {
+		return spawns;
+	}
+
+	/**
+	 * Returns the number of processes taken from a pool of ready processes.
+	 * 
+	 * @return The number of warm starts.
+	 */
+	public long getWarmStarts() {
+		return warmStarts.get();
+	}
+
+	/**
+	 * Returns the time from the start of the processes to their first output.
+	 * 
+	 * @return The time-to-first-output timing.
+	 */
+	public Timing getFirstOutputs() {
+		return firstOutputs;
+	}
+
+	/**
+	 * Returns the life of the ended processes.
+	 * 
+	 * @return The runtime timing.
+	 */
+	public Timing getRuntimes() {
+		return runtimes;
+	}
+
+	/**
+	 * Returns the number of ended processes, by exit code. Processes destroyed
+	 * before their end are counted under -1.
+	 * 
+	 * @return A snapshot of the counters, sorted by exit code.
+	 */
+	public Map<Integer, Long> getExitCodes() {
+		Map<Integer, Long> ret = new TreeMap<>();
+		for (Map.Entry<Integer, AtomicLong> entry : exitCodes.entrySet()) {
+			ret.put(entry.getKey(), entry.getValue().get());
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the duration of the probes.
+	 * 
+	 * @return The probe timing.
+	 */
+	public Timing getProbes() {
+		return probes;
+	}
+
+	/**
+	 * Returns the number of failed probes.
+	 * 
+	 * @return The number of failed probes.
+	 */
+	public long getProbeFailures() {
+		return probeFailures.get();
+	}
+
+	/**
+	 * Returns the duration of the encodings.
+	 * 
+	 * @return The encoding timing.
+	 */
+	public Timing getEncodings() {
+		return encodings;
+	}
+
+	/**
+	 * Returns the number of failed encodings.
+	 * 
+	 * @return The number of failed encodings.
+	 */
+	public long getEncodingFailures() {
+		return encodingFailures.get();
+	}
+
+	/**
+	 * Returns the total size of the encoded sources.
+	 * 
+	 * @return The bytes read.
+	 */
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	/**
+	 * Returns the total size of the encoded targets.
+	 * 
+	 * @return The bytes written.
+	 */
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * Returns the average speed factor of the successful encodings whose
+	 * media duration is known: 2 means that the media has been encoded in
+	 * half of its duration.
+	 * 
+	 * @return The average speed factor, or -1 if no speed is known.
+	 */
+	public double getAverageSpeed() {
+		long count = speedCount.get();
+		return count > 0 ? speedPermil.get() / 1000.0 / count : -1;
+	}
+
+	/**
+	 * Returns the time spent by the scheduled jobs in the queue.
+	 * 
+	 * @return The queue wait timing.
+	 */
+	public Timing getQueueWaits() {
+		return queueWaits;
+	}
+
+	/**
+	 * Sets all the counters and timings back to zero.
+	 */
+	public void reset() {
+		spawns.reset();
+		firstOutputs.reset();
+		runtimes.reset();
+		probes.reset();
+		encodings.reset();
+		queueWaits.reset();
+		warmStarts.set(0);
+		exitCodes.clear();
+		probeFailures.set(0);
+		encodingFailures.set(0);
+		bytesIn.set(0);
+		bytesOut.set(0);
+		speedPermil.set(0);
+		speedCount.set(0);
+	}
+
+	public String toString() {
+		return getClass().getName() + " (liveProcesses=" + getLiveProcesses() + ", spawns=" + spawns
+				+ ", warmStarts=" + getWarmStarts() + ", firstOutputs=" + firstOutputs + ", runtimes=" + runtimes
+				+ ", exitCodes=" + getExitCodes() + ", probes=" + probes + ", probeFailures=" + getProbeFailures()
+				+ ", encodings=" + encodings + ", encodingFailures=" + getEncodingFailures() + ", bytesIn="
+				+ getBytesIn() + ", bytesOut=" + getBytesOut() + ", averageSpeed=" + getAverageSpeed()
+				+ ", queueWaits=" + queueWaits + ")";
+	}
+
+	/**
+	 * The count, the total and the maximum of a measured time.
+	 */
+	public static class Timing {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong total = new AtomicLong();
+
+		private final AtomicLong max = new AtomicLong();
+
+		void add(long nanos) {
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+			long m;
+			while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+				;
+			}
+		}
+
+		void reset() {
+			count.set(0);
+			total.set(0);
+			max.set(0);
+		}
+
+		/**
+		 * Returns the number of measures.
+		 * 
+		 * @return The number of measures.
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * Returns the sum of the measures.
+		 * 
+		 * @return The total time, in nanoseconds.
+		 */
+		public long getTotalNanos() {
+			return total.get();
+		}
+
+		/**
+		 * Returns the longest measure.
+		 * 
+		 * @return The maximum time, in nanoseconds.
+		 */
+		public long getMaxNanos() {
+			return max.get();
+		}
+
+		/**
+		 * Returns the average measure.
+		 * 
+		 * @return The mean time in nanoseconds, or 0 if nothing was measured.
+		 */
+		public long getMeanNanos() {
+			long n = count.get();
+			return n > 0 ? total.get() / n : 0;
+		}
+
+		public String toString() {
+			return "(count=" + getCount() + ", meanMillis=" + getMeanNanos() / 1000000 + ", maxMillis="
+					+ getMaxNanos() / 1000000 + ")";
+		}
+
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+/**
+ * A package-private callback receiving the bytes drained from a ffmpeg process
+ * stream by the {@link StreamPump}. Both methods are called by a pump thread,
+ * shared with the streams of other processes, so implementations must return
+ * quickly and never block. An exception thrown by a method stops the delivery
+ * to the handler, and is rethrown by {@link FFMPEGExecutor#waitFor()}.
+ * 
+ * @author HeHangjie
+ */
+interface StreamHandler {
+
+	/**
+	 * Called every time some bytes are read from the stream. The buffer is
+	 * reused by the pump, so its content must be copied if it has to be kept
+	 * after the call.
+	 * 
+	 * @param buffer
+	 *            The buffer holding the bytes.
+	 * @param offset
+	 *            The offset of the first byte read.
+	 * @param length
+	 *            The number of bytes read.
+	 */
+	public void onData(byte[] buffer, int offset, int length);
+
+	/**
+	 * Called once, when the end of the stream has been reached.
+	 */
+	public void onEnd();
+
+}
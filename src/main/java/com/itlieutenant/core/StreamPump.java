@@ -0,0 +1,306 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A package-private utility draining the output streams of many ffmpeg
+ * processes with a small, fixed number of threads. Each thread polls the
+ * streams assigned to it, reading only the bytes already available, so a
+ * stream never blocks the others and no thread is pinned to a single process.
+ * When a process exits its streams are read up to their end.
+ * <p>
+ * The handlers run on the pump threads, each serving the streams of many
+ * processes: a handler blocking or slow to return delays the draining of all
+ * of them. A handler throwing an exception gets no more bytes, but its stream
+ * is still drained up to its end, and the exception is given back by
+ * {@link Drain#getFailure()}.
+ *
+ * @author HeHangjie
+ */
+class StreamPump {
+
+	/**
+	 * The size of the buffer used by each pump thread.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The longest pause of an idle pump thread, in millis.
+	 */
+	private static final long MAX_IDLE_SLEEP = 10;
+
+	/**
+	 * The pump shared by all the executors.
+	 */
+	private static final StreamPump DEFAULT = new StreamPump(
+			Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 4)));
+
+	/**
+	 * Returns the pump shared by all the executors.
+	 *
+	 * @return The shared pump.
+	 */
+	static StreamPump getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * The pump threads.
+	 */
+	private final Worker[] workers;
+
+	/**
+	 * It builds the pump. Threads are started lazily.
+	 *
+	 * @param threads
+	 *            The number of pump threads.
+	 */
+	StreamPump(int threads) {
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker("ffmpeg-stream-pump-" + (i + 1));
+		}
+	}
+
+	/**
+	 * Starts draining a process stream.
+	 *
+	 * @param process
+	 *            The process owning the stream.
+	 * @param stream
+	 *            The stream to drain.
+	 * @param handler
+	 *            The handler receiving the drained bytes, or null to discard
+	 *            them.
+	 * @return A handle to wait for the end of the stream.
+	 */
+	Drain drain(Process process, InputStream stream, StreamHandler handler) {
+		Drain drain = new Drain(process, stream, handler);
+		Worker target = workers[0];
+		for (int i = 1; i < workers.length; i++) {
+			if (workers[i].size() < target.size()) {
+				target = workers[i];
+			}
+		}
+		target.add(drain);
+		return drain;
+	}
+
+	/**
+	 * A stream being drained.
+	 */
+	static class Drain {
+
+		private final Process process;
+
+		private final InputStream stream;
+
+		private StreamHandler handler;
+
+		private volatile RuntimeException failure = null;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		Drain(Process process, InputStream stream, StreamHandler handler) {
+			this.process = process;
+			this.stream = stream;
+			this.handler = handler;
+		}
+
+		/**
+		 * Reads the available bytes.
+		 *
+		 * @return 1 if some bytes were read, 0 if nothing was available, -1
+		 *         if the end of the stream has been reached.
+		 */
+		int poll(byte[] buffer) {
+			try {
+				int available = stream.available();
+				if (available > 0) {
+					int n = stream.read(buffer, 0, Math.min(available, buffer.length));
+					if (n > 0) {
+						deliver(buffer, n);
+						return 1;
+					}
+					return n < 0 ? -1 : 0;
+				}
+				if (!hasExited()) {
+					return 0;
+				}
+				// The process is gone: reading can't block anymore.
+				int n;
+				while ((n = stream.read(buffer, 0, buffer.length)) > 0) {
+					deliver(buffer, n);
+				}
+				return -1;
+			} catch (IOException e) {
+				// Stream closed by the executor.
+				return -1;
+			}
+		}
+
+		private boolean hasExited() {
+			try {
+				process.exitValue();
+				return true;
+			} catch (IllegalThreadStateException e) {
+				return false;
+			}
+		}
+
+		private void deliver(byte[] buffer, int n) {
+			if (handler != null) {
+				try {
+					handler.onData(buffer, 0, n);
+				} catch (RuntimeException e) {
+					// A broken handler must not stop the draining.
+					failure = e;
+					handler = null;
+				}
+			}
+		}
+
+		void finish() {
+			if (handler != null) {
+				try {
+					handler.onEnd();
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+			}
+			done.countDown();
+		}
+
+		/**
+		 * Returns the exception thrown by the handler, after which the handler
+		 * got no more bytes.
+		 *
+		 * @return The exception, or null if the handler did not fail.
+		 */
+		RuntimeException getFailure() {
+			return failure;
+		}
+
+		/**
+		 * Waits until the stream has been completely drained.
+		 *
+		 * @throws InterruptedException
+		 *             If interrupted while waiting.
+		 */
+		void await() throws InterruptedException {
+			done.await();
+		}
+
+		/**
+		 * Waits until the stream has been completely drained, at most for the
+		 * given time.
+		 *
+		 * @return true if the stream has been drained.
+		 * @throws InterruptedException
+		 *             If interrupted while waiting.
+		 */
+		boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+			return done.await(timeout, unit);
+		}
+
+	}
+
+	/**
+	 * A pump thread, polling its own list of streams.
+	 */
+	private static class Worker implements Runnable {
+
+		private final String name;
+
+		private final List<Drain> drains = new ArrayList<>();
+
+		private Thread thread = null;
+
+		Worker(String name) {
+			this.name = name;
+		}
+
+		synchronized int size() {
+			return drains.size();
+		}
+
+		synchronized void add(Drain drain) {
+			drains.add(drain);
+			if (thread == null) {
+				thread = new Thread(this, name);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			notifyAll();
+		}
+
+		public void run() {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			List<Drain> snapshot = new ArrayList<>();
+			long sleep = 1;
+			while (true) {
+				synchronized (this) {
+					while (drains.isEmpty()) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							;
+						}
+					}
+					snapshot.clear();
+					snapshot.addAll(drains);
+				}
+				boolean active = false;
+				for (Iterator<Drain> i = snapshot.iterator(); i.hasNext();) {
+					Drain drain = i.next();
+					int res = drain.poll(buffer);
+					if (res > 0) {
+						active = true;
+					} else if (res < 0) {
+						synchronized (this) {
+							drains.remove(drain);
+						}
+						drain.finish();
+						active = true;
+					}
+				}
+				if (active) {
+					sleep = 1;
+				} else {
+					try {
+						Thread.sleep(sleep);
+					} catch (InterruptedException e) {
+						;
+					}
+					sleep = Math.min(MAX_IDLE_SLEEP, sleep * 2);
+				}
+			}
+		}
+
+	}
+
+}
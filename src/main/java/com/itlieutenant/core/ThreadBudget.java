@@ -0,0 +1,168 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares the processors of the machine among the ffmpeg processes running at
+ * the same time. An encoder given a budget reserves a share of the processors
+ * for the video codecs and filters of each new encoding, unless the video
+ * attributes set the threads themselves, and gives it back when the process
+ * ends. The share is fixed when the encoding is prepared: the processors are
+ * divided by the number of processes expected to run at the same time, or by
+ * the number of processes holding a reservation (this one included) if
+ * greater. With the expected number set to the concurrency of the callers (for
+ * instance {@link TranscodeScheduler#getMaxConcurrentJobs()}), a burst of
+ * concurrent encodings uses about as many threads as there are processors,
+ * instead of many times as many. With a lower expected number the first
+ * processes of a burst get a larger share, and keep it until they end. A
+ * budget is useful only if shared by all the encoders of the jvm, as
+ * {@link #getDefault()} is.
+ *
+ * @author HeHangjie
+ */
+public class ThreadBudget {
+
+	/**
+	 * The budget of all the available processors.
+	 */
+	private static final ThreadBudget DEFAULT = new ThreadBudget(Runtime.getRuntime().availableProcessors(),
+			TranscodeScheduler.defaultConcurrency(TranscodeScheduler.DEFAULT_THREADS_PER_JOB));
+
+	/**
+	 * Returns the budget of all the available processors, shared by the
+	 * encoders using it. It expects as many concurrent processes as the
+	 * default concurrency of the schedulers (see
+	 * {@link TranscodeScheduler#defaultConcurrency(int)}).
+	 *
+	 * @return The shared budget.
+	 */
+	public static ThreadBudget getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * The number of processors to share.
+	 */
+	private final int cores;
+
+	/**
+	 * The number of processes expected to run at the same time.
+	 */
+	private final int expectedJobs;
+
+	/**
+	 * The number of running processes.
+	 */
+	private final AtomicInteger active = new AtomicInteger();
+
+	/**
+	 * It builds a budget of all the available processors, expecting a single
+	 * process at a time.
+	 */
+	public ThreadBudget() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * It builds a budget of a given number of processors, for instance to
+	 * leave some of them to the rest of the application, expecting a single
+	 * process at a time.
+	 *
+	 * @param cores
+	 *            The number of processors to share.
+	 */
+	public ThreadBudget(int cores) {
+		this(cores, 1);
+	}
+
+	/**
+	 * It builds a budget of a given number of processors, shared by a given
+	 * number of concurrent processes.
+	 *
+	 * @param cores
+	 *            The number of processors to share.
+	 * @param expectedJobs
+	 *            The number of processes expected to run at the same time,
+	 *            as the maximum concurrency of the schedulers using the
+	 *            budget.
+	 */
+	public ThreadBudget(int cores, int expectedJobs) {
+		if (cores < 1) {
+			throw new IllegalArgumentException("cores must be positive");
+		}
+		if (expectedJobs < 1) {
+			throw new IllegalArgumentException("expectedJobs must be positive");
+		}
+		this.cores = cores;
+		this.expectedJobs = expectedJobs;
+	}
+
+	/**
+	 * Returns the number of processors to share.
+	 *
+	 * @return The number of processors.
+	 */
+	public int getCores() {
+		return cores;
+	}
+
+	/**
+	 * Returns the number of processes expected to run at the same time.
+	 *
+	 * @return The expected number of concurrent processes.
+	 */
+	public int getExpectedJobs() {
+		return expectedJobs;
+	}
+
+	/**
+	 * Returns the number of ffmpeg processes currently holding threads of this
+	 * budget.
+	 *
+	 * @return The number of running processes.
+	 */
+	public int getActiveJobs() {
+		return active.get();
+	}
+
+	/**
+	 * Reserves the share of a new process, counting it among the running
+	 * ones. Concurrent reservations always see different counts, but none of
+	 * them is shared by fewer processes than the expected ones.
+	 *
+	 * @param encoders
+	 *            The number of codecs of the new process sharing its threads,
+	 *            as the renditions of a single ffmpeg call.
+	 * @return The number of threads of each codec, at least 1.
+	 */
+	int acquire(int encoders) {
+		int jobs = Math.max(expectedJobs, active.incrementAndGet());
+		return Math.max(1, cores / (jobs * Math.max(1, encoders)));
+	}
+
+	/**
+	 * Gives back the share of a process, once it has ended.
+	 */
+	void release() {
+		active.decrementAndGet();
+	}
+
+}
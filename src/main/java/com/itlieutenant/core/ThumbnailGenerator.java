@@ -0,0 +1,427 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.itlieutenant.entity.Thumbnail;
+import com.itlieutenant.entity.ThumbnailAttributes;
+import com.itlieutenant.entity.VideoSize;
+import com.itlieutenant.exception.EncoderException;
+
+/**
+ * Extracts many thumbnails from a video with a single ffmpeg process, instead
+ * of a process (and a seek) for each of them. The frames are picked at given
+ * timestamps, at a fixed interval or at the scene changes, and can be packed
+ * in sprite sheets described by a WebVTT file, for the scrubbing previews of
+ * the web players.
+ * <p>
+ * The timestamps are reached through a fast input seek for each of them: the
+ * source is opened once per timestamp by the same process, and only the
+ * frames following the nearest keyframe are decoded. The interval and scene
+ * modes decode the whole source once, and pick the frames with the fps and
+ * select filters.
+ * 
+ * @author HeHangjie
+ */
+public class ThumbnailGenerator {
+
+	/**
+	 * The maximum number of timestamps extracted by a single process.
+	 */
+	private static final int MAX_INPUTS = 32;
+
+	/**
+	 * The encoder running ffmpeg.
+	 */
+	private final Encoder encoder;
+
+	/**
+	 * It builds the generator.
+	 * 
+	 * @param encoder
+	 *            The encoder running ffmpeg.
+	 */
+	public ThumbnailGenerator(Encoder encoder) {
+		this.encoder = encoder;
+	}
+
+	/**
+	 * Extracts the frames at the given timestamps.
+	 * 
+	 * @param source
+	 *            The source video.
+	 * @param times
+	 *            The timestamps of the frames, in seconds.
+	 * @param directory
+	 *            The directory of the images. Images with the same names are
+	 *            overwritten.
+	 * @param attributes
+	 *            The attributes of the images.
+	 * @return The thumbnails, in the order of the timestamps. The timestamps
+	 *         past the end of the source have no thumbnail.
+	 * @throws IllegalArgumentException
+	 *             If a timestamp is negative.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	public List<Thumbnail> extract(File source, List<Double> times, File directory, ThumbnailAttributes attributes)
+			throws IllegalArgumentException, EncoderException {
+		for (Double time : times) {
+			if (time.doubleValue() < 0) {
+				throw new IllegalArgumentException("Negative timestamp: " + time);
+			}
+		}
+		List<Thumbnail> thumbnails = new ArrayList<>(times.size());
+		for (int from = 0; from < times.size(); from += MAX_INPUTS) {
+			int to = Math.min(times.size(), from + MAX_INPUTS);
+			List<String> args = new ArrayList<>();
+			for (int i = from; i < to; i++) {
+				args.add("-ss");
+				args.add(number(times.get(i).doubleValue()));
+				args.add("-i");
+				args.add(source.getAbsolutePath());
+			}
+			String scale = scaleFilter(attributes);
+			for (int i = from; i < to; i++) {
+				File image = image(directory, attributes, i + 1);
+				// A stale image would look like a frame past the end.
+				image.delete();
+				args.add("-map");
+				args.add((i - from) + ":v:0");
+				args.add("-frames:v");
+				args.add("1");
+				if (scale != null) {
+					args.add("-vf");
+					args.add(scale);
+				}
+				addQualityArguments(args, attributes);
+				args.add("-y");
+				args.add(image.getAbsolutePath());
+			}
+			encoder.execute(args, null);
+			for (int i = from; i < to; i++) {
+				File image = image(directory, attributes, i + 1);
+				if (image.isFile()) {
+					thumbnails.add(new Thumbnail(image, times.get(i).doubleValue()));
+				}
+			}
+		}
+		return thumbnails;
+	}
+
+	/**
+	 * Extracts a frame every given number of seconds, starting from the first
+	 * one.
+	 * 
+	 * @param source
+	 *            The source video.
+	 * @param interval
+	 *            The distance between the frames, in seconds.
+	 * @param directory
+	 *            The directory of the images. Images with the same names are
+	 *            overwritten.
+	 * @param attributes
+	 *            The attributes of the images.
+	 * @return The thumbnails, in the order of their timestamps.
+	 * @throws IllegalArgumentException
+	 *             If the interval is not positive.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	public List<Thumbnail> extractEvery(File source, double interval, File directory, ThumbnailAttributes attributes)
+			throws IllegalArgumentException, EncoderException {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		return extractFiltered(source, "fps=fps=1/" + number(interval), directory, attributes);
+	}
+
+	/**
+	 * Extracts the first frame of each scene, that is each frame differing
+	 * from the previous one more than a threshold.
+	 * 
+	 * @param source
+	 *            The source video.
+	 * @param threshold
+	 *            The scene change score, from 0 (any frame) to 1 (only full
+	 *            cuts). Values around 0.3 - 0.4 suit most sources.
+	 * @param directory
+	 *            The directory of the images. Images with the same names are
+	 *            overwritten.
+	 * @param attributes
+	 *            The attributes of the images.
+	 * @return The thumbnails, in the order of their timestamps.
+	 * @throws IllegalArgumentException
+	 *             If the threshold is not between 0 and 1.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	public List<Thumbnail> extractScenes(File source, double threshold, File directory,
+			ThumbnailAttributes attributes) throws IllegalArgumentException, EncoderException {
+		if (threshold < 0 || threshold > 1) {
+			throw new IllegalArgumentException("threshold must be between 0 and 1");
+		}
+		return extractFiltered(source, "select='gt(scene," + number(threshold) + ")'", directory, attributes);
+	}
+
+	/**
+	 * Extracts a frame every given number of seconds and packs the frames in
+	 * sprite sheets, each one a grid of thumbnails, plus a WebVTT file mapping
+	 * each time range of the source to its thumbnail (through the "#xywh"
+	 * media fragment of the sheet). The sheets are named like the images of
+	 * the other modes, the WebVTT file after the prefix of the images (e.g.
+	 * "thumb.vtt"), and refers to the sheets by their names.
+	 * 
+	 * @param source
+	 *            The source video.
+	 * @param interval
+	 *            The distance between the frames, in seconds.
+	 * @param columns
+	 *            The number of thumbnails in a row of a sheet.
+	 * @param rows
+	 *            The number of thumbnails in a column of a sheet.
+	 * @param directory
+	 *            The directory of the sheets and of the WebVTT file. Files with
+	 *            the same names are overwritten.
+	 * @param attributes
+	 *            The attributes of the sheets. The size of the thumbnails is
+	 *            mandatory.
+	 * @return The WebVTT file.
+	 * @throws IllegalArgumentException
+	 *             If the interval, the columns or the rows are not positive,
+	 *             or the size is missing.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable,
+	 *             or writing the WebVTT file.
+	 */
+	public File createSprite(File source, double interval, int columns, int rows, File directory,
+			ThumbnailAttributes attributes) throws IllegalArgumentException, EncoderException {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		if (columns < 1 || rows < 1) {
+			throw new IllegalArgumentException("columns and rows must be positive");
+		}
+		VideoSize size = attributes.getSize();
+		if (size == null) {
+			throw new IllegalArgumentException("The size of the thumbnails is mandatory");
+		}
+		String filter = "fps=fps=1/" + number(interval) + "," + scaleFilter(attributes) + ",showinfo,tile="
+				+ columns + "x" + rows;
+		List<Double> times = run(source, filter, directory, attributes);
+		File vtt = new File(directory, attributes.getPrefix() + ".vtt");
+		int perSheet = columns * rows;
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(vtt), "UTF-8")) {
+			writer.write("WEBVTT\n");
+			for (int i = 0; i < times.size(); i++) {
+				double start = times.get(i).doubleValue();
+				double end = i + 1 < times.size() ? times.get(i + 1).doubleValue() : start + interval;
+				int cell = i % perSheet;
+				int x = (cell % columns) * size.getWidth();
+				int y = (cell / columns) * size.getHeight();
+				writer.write("\n" + cueTime(start) + " --> " + cueTime(end) + "\n");
+				writer.write(image(directory, attributes, i / perSheet + 1).getName() + "#xywh=" + x + "," + y
+						+ "," + size.getWidth() + "," + size.getHeight() + "\n");
+			}
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		}
+		return vtt;
+	}
+
+	/**
+	 * Extracts the frames picked by a filter.
+	 * 
+	 * @param source
+	 *            The source video.
+	 * @param picker
+	 *            The filter picking the frames.
+	 * @param directory
+	 *            The directory of the images.
+	 * @param attributes
+	 *            The attributes of the images.
+	 * @return The thumbnails, in the order of their timestamps.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	private List<Thumbnail> extractFiltered(File source, String picker, File directory,
+			ThumbnailAttributes attributes) throws EncoderException {
+		String scale = scaleFilter(attributes);
+		String filter = picker + (scale != null ? "," + scale : "") + ",showinfo";
+		List<Double> times = run(source, filter, directory, attributes);
+		List<Thumbnail> thumbnails = new ArrayList<>(times.size());
+		for (int i = 0; i < times.size(); i++) {
+			File image = image(directory, attributes, i + 1);
+			if (image.isFile()) {
+				thumbnails.add(new Thumbnail(image, times.get(i).doubleValue()));
+			}
+		}
+		return thumbnails;
+	}
+
+	/**
+	 * Runs a single pass over the source, writing the images numbered from 1.
+	 * The filter must contain a showinfo filter, logging the picked frames.
+	 * 
+	 * @param source
+	 *            The source video.
+	 * @param filter
+	 *            The video filter graph.
+	 * @param directory
+	 *            The directory of the images.
+	 * @param attributes
+	 *            The attributes of the images.
+	 * @return The timestamps of the frames logged by showinfo, in seconds.
+	 * @throws EncoderException
+	 *             If a problem occurs calling the underlying ffmpeg executable.
+	 */
+	private List<Double> run(File source, String filter, File directory, ThumbnailAttributes attributes)
+			throws EncoderException {
+		List<String> args = new ArrayList<>();
+		args.add("-i");
+		args.add(source.getAbsolutePath());
+		args.add("-an");
+		args.add("-sn");
+		args.add("-vf");
+		args.add(filter);
+		// The image muxer would duplicate frames to keep a constant rate.
+		args.add("-vsync");
+		args.add("vfr");
+		addQualityArguments(args, attributes);
+		args.add("-y");
+		args.add(new File(directory, attributes.getPrefix().replace("%", "%%") + "-%04d." + attributes.getType())
+				.getAbsolutePath());
+		FrameTimes frameTimes = new FrameTimes();
+		encoder.execute(args, frameTimes);
+		return frameTimes.times;
+	}
+
+	/**
+	 * Returns the file of an image.
+	 * 
+	 * @param directory
+	 *            The directory of the images.
+	 * @param attributes
+	 *            The attributes of the images.
+	 * @param index
+	 *            The counter of the image, starting from 1.
+	 * @return The image file.
+	 */
+	private static File image(File directory, ThumbnailAttributes attributes, int index) {
+		return new File(directory, attributes.getPrefix() + "-" + String.format("%04d", Integer.valueOf(index)) + "."
+				+ attributes.getType());
+	}
+
+	/**
+	 * Returns the scale filter of the thumbnails.
+	 * 
+	 * @param attributes
+	 *            The attributes of the images.
+	 * @return The scale filter, or null if the thumbnails keep the size of the
+	 *         source.
+	 */
+	private static String scaleFilter(ThumbnailAttributes attributes) {
+		VideoSize size = attributes.getSize();
+		if (size == null) {
+			return null;
+		}
+		return "scale=" + size.getWidth() + ":" + size.getHeight();
+	}
+
+	/**
+	 * Adds the quality argument of the images, if any.
+	 * 
+	 * @param args
+	 *            The arguments of the call.
+	 * @param attributes
+	 *            The attributes of the images.
+	 */
+	private static void addQualityArguments(List<String> args, ThumbnailAttributes attributes) {
+		Integer quality = attributes.getQuality();
+		if (quality != null) {
+			args.add("-q:v");
+			args.add(String.valueOf(quality.intValue()));
+		}
+	}
+
+	/**
+	 * Formats a number of seconds for the command line, without exponent.
+	 * 
+	 * @param seconds
+	 *            The number of seconds.
+	 * @return The formatted number.
+	 */
+	private static String number(double seconds) {
+		return BigDecimal.valueOf(seconds).toPlainString();
+	}
+
+	/**
+	 * Formats a WebVTT cue timestamp.
+	 * 
+	 * @param seconds
+	 *            The number of seconds.
+	 * @return The timestamp, as hh:mm:ss.ttt.
+	 */
+	private static String cueTime(double seconds) {
+		long millis = Math.round(seconds * 1000);
+		return String.format("%02d:%02d:%02d.%03d", Long.valueOf(millis / 3600000), Long.valueOf(millis / 60000 % 60),
+				Long.valueOf(millis / 1000 % 60), Long.valueOf(millis % 1000));
+	}
+
+	/**
+	 * Collects the timestamps of the frames logged by the showinfo filter,
+	 * from lines like "[Parsed_showinfo_2 @ 0x...] n: 0 pts: 0 pts_time:0
+	 * ...".
+	 */
+	private static class FrameTimes extends LineHandler {
+
+		private final List<Double> times = new ArrayList<>();
+
+		protected void onLine(String line) {
+			if (line.indexOf("Parsed_showinfo") < 0) {
+				return;
+			}
+			int start = line.indexOf("pts_time:");
+			if (start < 0) {
+				return;
+			}
+			start += "pts_time:".length();
+			int end = start;
+			while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+				end++;
+			}
+			try {
+				times.add(Double.valueOf(line.substring(start, end)));
+			} catch (NumberFormatException e) {
+				// "nan" timestamp.
+				;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,541 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.itlieutenant.entity.AudioAttributes;
+import com.itlieutenant.entity.EncodingAttributes;
+import com.itlieutenant.entity.VideoAttributes;
+import com.itlieutenant.entity.VideoSize;
+import com.itlieutenant.exception.EncoderException;
+
+/**
+ * A cache of encoded files, skipping the encodings already done. An output
+ * is identified by the content of its source (not its path or name, so that
+ * a re-uploaded file is recognized), the attributes of the encoding and the
+ * extension of the target: a cache hit publishes the stored output at the
+ * target path, through a copy or, if enabled, a hard link, without running
+ * ffmpeg.
+ * <p>
+ * The outputs are stored in a directory, encoded in a temporary file and
+ * then atomically renamed, so that a partial output is never published and
+ * the stored outputs survive jvm restarts. The least recently used outputs
+ * are deleted when the directory exceeds a maximum size. Concurrent encodings
+ * of the same output wait for each other, so the output is encoded once.
+ * 
+ * @author HeHangjie
+ */
+public class TranscodeCache {
+
+	/**
+	 * The default maximum size of the stored outputs, in bytes.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024 * 1024;
+
+	/**
+	 * The infix of the names of the outputs being encoded.
+	 */
+	private static final String PART = ".part";
+
+	/**
+	 * The encoder running ffmpeg.
+	 */
+	private final Encoder encoder;
+
+	/**
+	 * The directory of the stored outputs.
+	 */
+	private final File directory;
+
+	/**
+	 * The maximum size of the stored outputs, in bytes.
+	 */
+	private final long maxSize;
+
+	/**
+	 * The number of bytes read at each end of a source to compute its content
+	 * digest. If 0 the whole content is read.
+	 */
+	private volatile int contentSampleSize = 0;
+
+	/**
+	 * Whether the outputs are published through hard links, when the file
+	 * system allows them.
+	 */
+	private volatile boolean hardLinks = false;
+
+	/**
+	 * The sizes of the stored outputs, keyed by file name, in access order.
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The total size of the stored outputs, in bytes.
+	 */
+	private long size = 0;
+
+	/**
+	 * The outputs being encoded or published, which can't be evicted.
+	 */
+	private final ConcurrentMap<String, CountDownLatch> busy = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * It builds a cache of {@link #DEFAULT_MAX_SIZE} bytes.
+	 * 
+	 * @param encoder
+	 *            The encoder running ffmpeg.
+	 * @param directory
+	 *            The directory of the stored outputs.
+	 */
+	public TranscodeCache(Encoder encoder, File directory) {
+		this(encoder, directory, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * It builds the cache, indexing the outputs already stored in the
+	 * directory.
+	 * 
+	 * @param encoder
+	 *            The encoder running ffmpeg.
+	 * @param directory
+	 *            The directory of the stored outputs. It should be on the
+	 *            same file system of the targets, for hard links to work.
+	 * @param maxSize
+	 *            The maximum size of the stored outputs, in bytes.
+	 */
+	public TranscodeCache(Encoder encoder, File directory, long maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.encoder = encoder;
+		this.directory = directory.getAbsoluteFile();
+		this.maxSize = maxSize;
+		this.directory.mkdirs();
+		load();
+	}
+
+	/**
+	 * Returns the number of bytes read at each end of a source to compute its
+	 * content digest.
+	 * 
+	 * @return The sample size, 0 if the whole content is read.
+	 */
+	public int getContentSampleSize() {
+		return contentSampleSize;
+	}
+
+	/**
+	 * Sets the number of bytes read at each end of a source to compute its
+	 * content digest. By default the whole content is hashed, which costs a
+	 * full read of the source for each encoding; a sampled digest is cheap on
+	 * huge files, but two sources differing only in the middle would share
+	 * their outputs.
+	 * 
+	 * @param contentSampleSize
+	 *            The sample size, 0 to read the whole content.
+	 */
+	public void setContentSampleSize(int contentSampleSize) {
+		if (contentSampleSize < 0) {
+			throw new IllegalArgumentException("contentSampleSize must not be negative");
+		}
+		this.contentSampleSize = contentSampleSize;
+	}
+
+	/**
+	 * Returns whether the outputs are published through hard links.
+	 * 
+	 * @return Whether the outputs are published through hard links.
+	 */
+	public boolean isHardLinks() {
+		return hardLinks;
+	}
+
+	/**
+	 * Sets whether the outputs are published through hard links, when the
+	 * file system allows them, or always copied (the default). A hard link
+	 * costs nothing, but the target shares the content of the stored output:
+	 * it must be replaced, never modified in place. In particular, an encoding
+	 * to the same target path truncates it, and corrupts the stored output.
+	 * 
+	 * @param hardLinks
+	 *            Whether the outputs are published through hard links.
+	 */
+	public void setHardLinks(boolean hardLinks) {
+		this.hardLinks = hardLinks;
+	}
+
+	/**
+	 * Re-encode a multimedia file, unless the same output is already stored.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file. If this file already
+	 *            exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @return true if the output was found in the cache, false if it has been
+	 *         encoded.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process, or the
+	 *             source or the cache can't be read.
+	 */
+	public boolean encode(File source, File target, EncodingAttributes attributes)
+			throws IllegalArgumentException, EncoderException {
+		return encode(source, target, attributes, null);
+	}
+
+	/**
+	 * Re-encode a multimedia file, unless the same output is already stored.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file. If this file already
+	 *            exists, it will be overwrited.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @param listener
+	 *            An optional progress listener for the encoding process. It
+	 *            can be null, and it is not called on a cache hit.
+	 * @return true if the output was found in the cache, false if it has been
+	 *         encoded.
+	 * @throws IllegalArgumentException
+	 *             If both audio and video parameters are null.
+	 * @throws EncoderException
+	 *             If a problems occurs during the encoding process, or the
+	 *             source or the cache can't be read.
+	 */
+	public boolean encode(File source, File target, EncodingAttributes attributes, EncoderProgressListener listener)
+			throws IllegalArgumentException, EncoderException {
+		String name;
+		try {
+			name = key(source, attributes, target);
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		}
+		CountDownLatch done = new CountDownLatch(1);
+		CountDownLatch current;
+		while ((current = busy.putIfAbsent(name, done)) != null) {
+			// The same output is being encoded or published: wait for it.
+			try {
+				current.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EncoderException(e);
+			}
+		}
+		try {
+			File stored = new File(directory, name);
+			if (touch(name) && stored.isFile()) {
+				hits.incrementAndGet();
+				publish(stored, target);
+				return true;
+			}
+			misses.incrementAndGet();
+			File part = new File(directory, name + PART + Thread.currentThread().getId() + extension(target));
+			try {
+				encoder.encode(source, part, attributes, listener);
+				if (!part.isFile()) {
+					throw new EncoderException("ffmpeg wrote no output");
+				}
+				Files.move(part.toPath(), stored.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				part.delete();
+			}
+			add(name, stored.length());
+			publish(stored, target);
+			return false;
+		} catch (IOException e) {
+			throw new EncoderException(e);
+		} finally {
+			busy.remove(name);
+			done.countDown();
+		}
+	}
+
+	/**
+	 * Deletes all the stored outputs not being encoded or published.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			for (Iterator<Map.Entry<String, Long>> i = entries.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<String, Long> entry = i.next();
+				if (!busy.containsKey(entry.getKey())) {
+					new File(directory, entry.getKey()).delete();
+					size -= entry.getValue().longValue();
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the total size of the stored outputs.
+	 * 
+	 * @return The size of the stored outputs, in bytes.
+	 */
+	public long getSize() {
+		synchronized (entries) {
+			return size;
+		}
+	}
+
+	/**
+	 * Returns the maximum size of the stored outputs.
+	 * 
+	 * @return The maximum size of the stored outputs, in bytes.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of encodings skipped thanks to a stored output.
+	 * 
+	 * @return The number of cache hits.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of encodings run because no output was stored.
+	 * 
+	 * @return The number of cache misses.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of outputs deleted to keep the cache within its
+	 * maximum size.
+	 * 
+	 * @return The number of evictions.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns a canonical form of the attributes affecting an output: equal
+	 * encodings have equal forms, whatever the instances. The timeouts don't
+	 * affect the output, and are left out. The codec threads do, for frame
+	 * and slice threaded encoders as libx264: threads set in the attributes
+	 * are part of the form, while the threads given by a {@link ThreadBudget}
+	 * change with the load, so that the outputs of budgeted encodings are
+	 * equivalent but not bit-identical.
+	 * 
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @return The canonical form.
+	 */
+	static String canonical(EncodingAttributes attributes) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("format=").append(attributes.getFormat());
+		sb.append(";offset=").append(attributes.getOffset());
+		sb.append(";duration=").append(attributes.getDuration());
+		sb.append(";autoCopy=").append(Boolean.TRUE.equals(attributes.getAutoCopy()));
+		VideoAttributes video = attributes.getVideoAttributes();
+		if (video != null) {
+			VideoSize videoSize = video.getSize();
+			sb.append(";video.codec=").append(video.getCodec());
+			sb.append(";video.tag=").append(video.getTag());
+			sb.append(";video.bitRate=").append(video.getBitRate());
+			sb.append(";video.frameRate=").append(video.getFrameRate());
+			sb.append(";video.size=").append(
+					videoSize != null ? videoSize.getWidth() + "x" + videoSize.getHeight() : null);
+			sb.append(";video.preset=").append(video.getPreset());
+			sb.append(";video.tune=").append(video.getTune());
+			sb.append(";video.crf=").append(video.getCrf());
+			if (video.getThreads() != null) {
+				sb.append(";video.threads=").append(video.getThreads());
+			}
+		}
+		AudioAttributes audio = attributes.getAudioAttributes();
+		if (audio != null) {
+			sb.append(";audio.codec=").append(audio.getCodec());
+			sb.append(";audio.bitRate=").append(audio.getBitRate());
+			sb.append(";audio.channels=").append(audio.getChannels());
+			sb.append(";audio.samplingRate=").append(audio.getSamplingRate());
+			sb.append(";audio.volume=").append(audio.getVolume());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the name of the stored output of an encoding.
+	 * 
+	 * @param source
+	 *            The source multimedia file.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @param target
+	 *            The target file, whose extension may choose the format.
+	 * @return The name of the stored output.
+	 * @throws IOException
+	 *             If the source can't be read.
+	 */
+	private String key(File source, EncodingAttributes attributes, File target) throws IOException {
+		int sampleSize = contentSampleSize;
+		String content = sampleSize > 0 ? FileDigests.sampled(source, sampleSize, "SHA-256")
+				: FileDigests.sha256(source);
+		String extension = extension(target);
+		return FileDigests.sha256(content + "\n" + canonical(attributes) + "\n" + extension) + extension;
+	}
+
+	/**
+	 * Returns the extension of a file name, with its dot.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return The extension, or an empty string.
+	 */
+	private static String extension(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(dot) : "";
+	}
+
+	/**
+	 * Publishes a stored output at the target path, replacing any file.
+	 * 
+	 * @param stored
+	 *            The stored output.
+	 * @param target
+	 *            The target path.
+	 * @throws IOException
+	 *             If the output can't be linked nor copied.
+	 */
+	private void publish(File stored, File target) throws IOException {
+		target = target.getAbsoluteFile();
+		target.getParentFile().mkdirs();
+		Files.deleteIfExists(target.toPath());
+		if (hardLinks) {
+			try {
+				Files.createLink(target.toPath(), stored.toPath());
+				return;
+			} catch (IOException | UnsupportedOperationException e) {
+				// Another file system, or no link support: copy it.
+				;
+			}
+		}
+		Files.copy(stored.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Marks an output as the most recently used one.
+	 * 
+	 * @param name
+	 *            The name of the output.
+	 * @return true if the output is stored.
+	 */
+	private boolean touch(String name) {
+		synchronized (entries) {
+			if (entries.get(name) == null) {
+				return false;
+			}
+		}
+		// The order survives a restart.
+		new File(directory, name).setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Indexes a new stored output, and evicts the least recently used ones
+	 * exceeding the maximum size.
+	 * 
+	 * @param name
+	 *            The name of the output.
+	 * @param length
+	 *            The size of the output.
+	 */
+	private void add(String name, long length) {
+		synchronized (entries) {
+			Long previous = entries.put(name, Long.valueOf(length));
+			if (previous != null) {
+				size -= previous.longValue();
+			}
+			size += length;
+			for (Iterator<Map.Entry<String, Long>> i = entries.entrySet().iterator(); i.hasNext()
+					&& size > maxSize;) {
+				Map.Entry<String, Long> entry = i.next();
+				if (busy.containsKey(entry.getKey())) {
+					continue;
+				}
+				new File(directory, entry.getKey()).delete();
+				size -= entry.getValue().longValue();
+				i.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Indexes the outputs already stored, oldest first, and deletes the
+	 * leftovers of interrupted encodings.
+	 */
+	private void load() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long x = a.lastModified();
+				long y = b.lastModified();
+				return x < y ? -1 : (x == y ? 0 : 1);
+			}
+		});
+		for (File file : files) {
+			if (!file.isFile()) {
+				continue;
+			}
+			if (file.getName().contains(PART)) {
+				file.delete();
+			} else {
+				add(file.getName(), file.length());
+			}
+		}
+	}
+
+}
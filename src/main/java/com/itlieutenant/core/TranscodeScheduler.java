@@ -0,0 +1,395 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.itlieutenant.entity.EncodingAttributes;
+
+/**
+ * Runs {@link Encoder#encode(File, File, EncodingAttributes)} jobs on a bounded
+ * set of worker threads, so that no more than a fixed number of ffmpeg
+ * processes are alive at the same time. Jobs wait in a bounded queue, ordered
+ * by {@link Priority} and then by submission order. When the queue is full a
+ * new submission is either rejected or blocks the caller, according to the
+ * {@link RejectionPolicy} of the scheduler.
+ *
+ * @author HeHangjie
+ */
+public class TranscodeScheduler {
+
+	/**
+	 * The priority lanes of the scheduler. Queued jobs of an higher priority
+	 * are always started before queued jobs of a lower one.
+	 */
+	public enum Priority {
+		HIGH, NORMAL, LOW
+	}
+
+	/**
+	 * What to do with a submission when the queue is full.
+	 */
+	public enum RejectionPolicy {
+
+		/**
+		 * The submission fails with a {@link RejectedExecutionException}.
+		 */
+		ABORT,
+
+		/**
+		 * The submitting thread waits until a queue slot is free.
+		 */
+		BLOCK
+	}
+
+	/**
+	 * The number of threads an ffmpeg process is supposed to keep busy, used
+	 * to compute the default concurrency.
+	 */
+	public static final int DEFAULT_THREADS_PER_JOB = 2;
+
+	/**
+	 * The default maximum number of queued (not yet started) jobs.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * The encoder running the jobs.
+	 */
+	private final Encoder encoder;
+
+	/**
+	 * The maximum number of jobs running at the same time.
+	 */
+	private final int maxConcurrentJobs;
+
+	/**
+	 * The behaviour of the scheduler when the queue is full.
+	 */
+	private final RejectionPolicy rejectionPolicy;
+
+	/**
+	 * One permit for each free queue slot.
+	 */
+	private final Semaphore queueSlots;
+
+	/**
+	 * The worker threads, fed by a priority queue.
+	 */
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * Submission counter, keeping the jobs of the same lane in FIFO order.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * It builds a scheduler with the default concurrency, queue capacity and
+	 * the {@link RejectionPolicy#BLOCK} policy.
+	 *
+	 * @param encoder
+	 *            The encoder running the jobs.
+	 */
+	public TranscodeScheduler(Encoder encoder) {
+		this(encoder, defaultConcurrency(DEFAULT_THREADS_PER_JOB), DEFAULT_QUEUE_CAPACITY, RejectionPolicy.BLOCK);
+	}
+
+	/**
+	 * It builds a scheduler.
+	 *
+	 * @param encoder
+	 *            The encoder running the jobs.
+	 * @param maxConcurrentJobs
+	 *            The maximum number of ffmpeg processes running at the same
+	 *            time (see {@link #defaultConcurrency(int)}).
+	 * @param queueCapacity
+	 *            The maximum number of jobs waiting to be started.
+	 * @param rejectionPolicy
+	 *            What to do with a submission when the queue is full.
+	 */
+	public TranscodeScheduler(Encoder encoder, int maxConcurrentJobs, int queueCapacity,
+			RejectionPolicy rejectionPolicy) {
+		if (maxConcurrentJobs < 1) {
+			throw new IllegalArgumentException("maxConcurrentJobs must be positive");
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queueCapacity must be positive");
+		}
+		this.encoder = encoder;
+		this.maxConcurrentJobs = maxConcurrentJobs;
+		this.rejectionPolicy = rejectionPolicy;
+		this.queueSlots = new Semaphore(queueCapacity);
+		this.workers = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), new WorkerThreadFactory());
+		// Started threads always take their jobs from the queue, so the very
+		// first submissions are ordered too.
+		this.workers.prestartAllCoreThreads();
+	}
+
+	/**
+	 * Returns the number of concurrent jobs fitting the available processors,
+	 * given the number of threads each ffmpeg process keeps busy.
+	 *
+	 * @param threadsPerJob
+	 *            The number of threads used by a single job.
+	 * @return The suggested maximum number of concurrent jobs, at least 1.
+	 */
+	public static int defaultConcurrency(int threadsPerJob) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		return Math.max(1, cores / Math.max(1, threadsPerJob));
+	}
+
+	/**
+	 * Queues an encoding job with {@link Priority#NORMAL} priority.
+	 *
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @return A future completing with the target file, or failing with the
+	 *         {@link com.itlieutenant.exception.EncoderException} thrown by the
+	 *         encoder.
+	 * @throws RejectedExecutionException
+	 *             If the scheduler is shut down, or the queue is full and the
+	 *             policy is {@link RejectionPolicy#ABORT}.
+	 */
+	public Future<File> submit(File source, File target, EncodingAttributes attributes) {
+		return submit(source, target, attributes, Priority.NORMAL);
+	}
+
+	/**
+	 * Queues an encoding job.
+	 *
+	 * @param source
+	 *            The source multimedia file.
+	 * @param target
+	 *            The target multimedia re-encoded file.
+	 * @param attributes
+	 *            A set of attributes for the encoding process.
+	 * @param priority
+	 *            The priority lane of the job.
+	 * @return A future completing with the target file, or failing with the
+	 *         {@link com.itlieutenant.exception.EncoderException} thrown by the
+	 *         encoder.
+	 * @throws RejectedExecutionException
+	 *             If the scheduler is shut down, or the queue is full and the
+	 *             policy is {@link RejectionPolicy#ABORT}.
+	 */
+	public Future<File> submit(final File source, final File target, final EncodingAttributes attributes,
+			Priority priority) {
+		if (workers.isShutdown()) {
+			throw new RejectedExecutionException("The scheduler is shut down");
+		}
+		acquireQueueSlot();
+		Job job = new Job(new Callable<File>() {
+			public File call() throws Exception {
+				encoder.encode(source, target, attributes);
+				return target;
+			}
+		}, priority, sequence.getAndIncrement());
+		try {
+			workers.execute(job);
+		} catch (RejectedExecutionException e) {
+			job.releaseQueueSlot();
+			throw e;
+		}
+		return job;
+	}
+
+	/**
+	 * Takes a queue slot, according to the rejection policy.
+	 */
+	private void acquireQueueSlot() {
+		if (rejectionPolicy == RejectionPolicy.ABORT) {
+			if (!queueSlots.tryAcquire()) {
+				throw new RejectedExecutionException("The transcode queue is full");
+			}
+		} else {
+			try {
+				queueSlots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for a queue slot", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of jobs running at the same time.
+	 *
+	 * @return The maximum number of jobs running at the same time.
+	 */
+	public int getMaxConcurrentJobs() {
+		return maxConcurrentJobs;
+	}
+
+	/**
+	 * Returns the number of jobs waiting to be started.
+	 *
+	 * @return The number of queued jobs.
+	 */
+	public int getQueuedJobs() {
+		return workers.getQueue().size();
+	}
+
+	/**
+	 * Returns the approximate number of jobs currently running.
+	 *
+	 * @return The number of running jobs.
+	 */
+	public int getActiveJobs() {
+		return workers.getActiveCount();
+	}
+
+	/**
+	 * Stops accepting new jobs. Queued and running jobs are completed.
+	 */
+	public void shutdown() {
+		workers.shutdown();
+	}
+
+	/**
+	 * Stops accepting new jobs, drops the queued ones and interrupts the
+	 * workers.
+	 *
+	 * @return The futures of the jobs that were never started.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Future<File>> shutdownNow() {
+		List<Runnable> pending = workers.shutdownNow();
+		List<Future<File>> ret = new ArrayList<>(pending.size());
+		for (Runnable r : pending) {
+			Job job = (Job) r;
+			job.releaseQueueSlot();
+			ret.add((Future<File>) job);
+		}
+		return ret;
+	}
+
+	/**
+	 * Waits for the completion of all the jobs after a shutdown request.
+	 *
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The time unit of the timeout argument.
+	 * @return true if the scheduler terminated, false if the timeout elapsed.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return workers.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * A queued job, ordered by priority and then by submission order.
+	 */
+	private class Job extends FutureTask<File> implements Comparable<Job> {
+
+		private final Priority priority;
+
+		private final long sequence;
+
+		private final AtomicBoolean queued = new AtomicBoolean(true);
+
+		/**
+		 * When the job was queued, as given by {@link System#nanoTime()}.
+		 */
+		private final long queuedAt = System.nanoTime();
+
+		Job(Callable<File> callable, Priority priority, long sequence) {
+			super(callable);
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Gives back the queue slot of the job, only the first time it is
+		 * called.
+		 */
+		void releaseQueueSlot() {
+			if (queued.compareAndSet(true, false)) {
+				queueSlots.release();
+			}
+		}
+
+		public void run() {
+			releaseQueueSlot();
+			EncoderMetrics metrics = encoder.getMetrics();
+			if (metrics != null && !isCancelled()) {
+				metrics.queued(System.nanoTime() - queuedAt);
+			}
+			super.run();
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled && workers.remove(this)) {
+				releaseQueueSlot();
+			}
+			return cancelled;
+		}
+
+		public int compareTo(Job o) {
+			int c = priority.compareTo(o.priority);
+			if (c != 0) {
+				return c;
+			}
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+
+	}
+
+	/**
+	 * Names the worker threads and marks them as daemons, so that a forgotten
+	 * scheduler does not keep the jvm alive.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		private final String prefix = "transcode-" + poolNumber.getAndIncrement() + "-worker-";
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+}
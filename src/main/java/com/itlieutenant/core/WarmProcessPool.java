@@ -0,0 +1,250 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A package-private pool of pre-spawned processes, ready to become an ffmpeg
+ * (or ffprobe) call as soon as they receive its arguments. ffmpeg has no
+ * server mode, so each pooled process is a tiny shell reading the arguments
+ * from its standard input and then replacing itself with the executable: the
+ * process creation, the most expensive part of a short call on the jvm side,
+ * is paid in advance by a background thread. After the arguments the
+ * standard input belongs to ffmpeg, as usual.
+ * <p>
+ * The pool is available only where a POSIX shell is, and only for arguments
+ * without line terminators; {@link #take()} returns null otherwise.
+ * 
+ * @author HeHangjie
+ */
+class WarmProcessPool {
+
+	/**
+	 * The helper script. It reads the stderr mode ("k" keep, "d" discard),
+	 * the number of arguments and the arguments, one per line, then execs
+	 * the executable given as $0.
+	 */
+	private static final String SCRIPT = "IFS= read -r m || exit 0\n" //
+			+ "IFS= read -r n || exit 0\n" //
+			+ "set --\n" //
+			+ "i=0\n" //
+			+ "while [ \"$i\" -lt \"$n\" ]; do IFS= read -r a || exit 1; set -- \"$@\" \"$a\"; i=$((i+1)); done\n" //
+			+ "if [ \"$m\" = d ]; then exec \"$0\" \"$@\" 2>/dev/null; fi\n" //
+			+ "exec \"$0\" \"$@\"\n";
+
+	/**
+	 * Whether the platform has a POSIX shell.
+	 */
+	static final boolean SUPPORTED = File.separatorChar == '/';
+
+	/**
+	 * The thread spawning the processes of all the pools.
+	 */
+	private static final ExecutorService spawner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "ffmpeg-warm-pool-spawner");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * The path of the executable.
+	 */
+	private final String executable;
+
+	/**
+	 * The number of processes kept ready.
+	 */
+	private final int size;
+
+	/**
+	 * The environment of the processes, null values removing the variable.
+	 */
+	private final Map<String, String> environment;
+
+	/**
+	 * The working directory of the processes, or null.
+	 */
+	private final File workingDirectory;
+
+	/**
+	 * The ready processes.
+	 */
+	private final LinkedBlockingQueue<Process> idle = new LinkedBlockingQueue<>();
+
+	/**
+	 * The number of processes being spawned.
+	 */
+	private final AtomicInteger spawning = new AtomicInteger();
+
+	/**
+	 * Whether the pool has been shut down.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * It builds the pool, and starts filling it.
+	 * 
+	 * @param executable
+	 *            The path of the executable.
+	 * @param size
+	 *            The number of processes kept ready.
+	 * @param environment
+	 *            The environment of the processes, null values removing the
+	 *            variable.
+	 * @param workingDirectory
+	 *            The working directory of the processes, or null.
+	 */
+	WarmProcessPool(String executable, int size, Map<String, String> environment, File workingDirectory) {
+		this.executable = executable;
+		this.size = size;
+		this.environment = environment;
+		this.workingDirectory = workingDirectory;
+		refill();
+	}
+
+	/**
+	 * Takes a ready process, and asks for a new one.
+	 * 
+	 * @return A ready process, or null if none is ready.
+	 */
+	Process take() {
+		Process process;
+		while ((process = idle.poll()) != null) {
+			if (!ProcessRegistry.hasExited(process)) {
+				break;
+			}
+		}
+		refill();
+		return process;
+	}
+
+	/**
+	 * Starts a ready process, sending it the arguments of the call.
+	 * 
+	 * @param process
+	 *            A process returned by {@link #take()}.
+	 * @param args
+	 *            The arguments of the call.
+	 * @param discardError
+	 *            true to send the standard error channel to the null device.
+	 * @throws IOException
+	 *             If the process can't receive the arguments.
+	 */
+	static void start(Process process, List<String> args, boolean discardError) throws IOException {
+		StringBuilder header = new StringBuilder(256);
+		header.append(discardError ? 'd' : 'k').append('\n');
+		header.append(args.size()).append('\n');
+		for (String arg : args) {
+			header.append(arg).append('\n');
+		}
+		OutputStream stdin = process.getOutputStream();
+		stdin.write(header.toString().getBytes("UTF-8"));
+		stdin.flush();
+	}
+
+	/**
+	 * Tells if an argument can be sent to a pooled process.
+	 * 
+	 * @param arg
+	 *            The argument.
+	 * @return true if the argument has no line terminators.
+	 */
+	static boolean canSend(String arg) {
+		return arg.indexOf('\n') < 0 && arg.indexOf('\r') < 0 && arg.indexOf('\0') < 0;
+	}
+
+	/**
+	 * Kills the ready processes. The pool can't be used anymore.
+	 */
+	void shutdown() {
+		closed = true;
+		Process process;
+		while ((process = idle.poll()) != null) {
+			ProcessRegistry.getDefault().kill(process);
+		}
+	}
+
+	/**
+	 * Spawns, in background, the processes missing to the pool size.
+	 */
+	private void refill() {
+		while (!closed) {
+			int pending = spawning.get();
+			if (idle.size() + pending >= size) {
+				return;
+			}
+			if (spawning.compareAndSet(pending, pending + 1)) {
+				spawner.execute(new Runnable() {
+					public void run() {
+						try {
+							spawn();
+						} finally {
+							spawning.decrementAndGet();
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Spawns a ready process.
+	 */
+	private void spawn() {
+		if (closed) {
+			return;
+		}
+		ProcessBuilder builder = new ProcessBuilder("sh", "-c", SCRIPT, executable);
+		if (workingDirectory != null) {
+			builder.directory(workingDirectory);
+		}
+		Map<String, String> env = builder.environment();
+		for (Map.Entry<String, String> entry : environment.entrySet()) {
+			if (entry.getValue() != null) {
+				env.put(entry.getKey(), entry.getValue());
+			} else {
+				env.remove(entry.getKey());
+			}
+		}
+		try {
+			Process process = builder.start();
+			ProcessRegistry.getDefault().register(process, 0);
+			idle.add(process);
+			if (closed) {
+				shutdown();
+			}
+		} catch (IOException e) {
+			// No shell: the calls will spawn their own processes.
+			closed = true;
+		}
+	}
+
+}
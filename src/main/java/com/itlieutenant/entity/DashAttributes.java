@@ -0,0 +1,145 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+/**
+ * Attributes controlling the packaging of an encoded stream as MPEG-DASH: a mpd
+ * manifest, an init segment and the media segments of each stream.
+ * 
+ * @author HeHangjie
+ */
+public class DashAttributes extends PackagingAttributes {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Whether the manifest uses a SegmentTemplate instead of listing the
+	 * segments. If null or not specified the muxer default will be picked.
+	 */
+	private Boolean useTemplate = null;
+
+	/**
+	 * Whether the manifest uses a SegmentTimeline. If null or not specified
+	 * the muxer default will be picked.
+	 */
+	private Boolean useTimeline = null;
+
+	/**
+	 * The init segment name pattern, such as "init-$RepresentationID$.m4s".
+	 * If null or not specified the muxer default will be picked.
+	 */
+	private String initSegmentName = null;
+
+	/**
+	 * The media segment name pattern, such as
+	 * "chunk-$RepresentationID$-$Number%05d$.m4s". If null or not specified
+	 * the muxer default will be picked.
+	 */
+	private String mediaSegmentName = null;
+
+	public String getFormat() {
+		return "dash";
+	}
+
+	/**
+	 * Returns whether the manifest uses a SegmentTemplate.
+	 * 
+	 * @return Whether the manifest uses a SegmentTemplate.
+	 */
+	public Boolean getUseTemplate() {
+		return useTemplate;
+	}
+
+	/**
+	 * Sets whether the manifest uses a SegmentTemplate instead of listing the
+	 * segments.
+	 * 
+	 * @param useTemplate
+	 *            Whether the manifest uses a SegmentTemplate.
+	 */
+	public void setUseTemplate(Boolean useTemplate) {
+		this.useTemplate = useTemplate;
+	}
+
+	/**
+	 * Returns whether the manifest uses a SegmentTimeline.
+	 * 
+	 * @return Whether the manifest uses a SegmentTimeline.
+	 */
+	public Boolean getUseTimeline() {
+		return useTimeline;
+	}
+
+	/**
+	 * Sets whether the manifest uses a SegmentTimeline.
+	 * 
+	 * @param useTimeline
+	 *            Whether the manifest uses a SegmentTimeline.
+	 */
+	public void setUseTimeline(Boolean useTimeline) {
+		this.useTimeline = useTimeline;
+	}
+
+	/**
+	 * Returns the init segment name pattern.
+	 * 
+	 * @return The init segment name pattern.
+	 */
+	public String getInitSegmentName() {
+		return initSegmentName;
+	}
+
+	/**
+	 * Sets the init segment name pattern, relative to the manifest, such as
+	 * "init-$RepresentationID$.m4s".
+	 * 
+	 * @param initSegmentName
+	 *            The init segment name pattern.
+	 */
+	public void setInitSegmentName(String initSegmentName) {
+		this.initSegmentName = initSegmentName;
+	}
+
+	/**
+	 * Returns the media segment name pattern.
+	 * 
+	 * @return The media segment name pattern.
+	 */
+	public String getMediaSegmentName() {
+		return mediaSegmentName;
+	}
+
+	/**
+	 * Sets the media segment name pattern, relative to the manifest, such as
+	 * "chunk-$RepresentationID$-$Number%05d$.m4s".
+	 * 
+	 * @param mediaSegmentName
+	 *            The media segment name pattern.
+	 */
+	public void setMediaSegmentName(String mediaSegmentName) {
+		this.mediaSegmentName = mediaSegmentName;
+	}
+
+	public String toString() {
+		return getClass().getName() + "(segmentDuration=" + getSegmentDuration() + ", playlistSize="
+				+ getPlaylistSize() + ", useTemplate=" + useTemplate + ", useTimeline=" + useTimeline
+				+ ", initSegmentName=" + initSegmentName + ", mediaSegmentName=" + mediaSegmentName + ")";
+	}
+
+}
@@ -50,6 +50,25 @@ public class EncodingAttributes implements Serializable {
 	 */
 	private Float duration = null;
 
+	/**
+	 * The maximum wall-clock time (seconds) of the encoding process. If null
+	 * or not specified the process can run forever.
+	 */
+	private Float timeout = null;
+
+	/**
+	 * The maximum time (seconds) the encoding process can go on without
+	 * making progress. If null or not specified stalls are not detected.
+	 */
+	private Float stallTimeout = null;
+
+	/**
+	 * Whether the streams of the source already matching the audio and video
+	 * attributes are copied instead of re-encoded. If null or not specified
+	 * the streams are always re-encoded.
+	 */
+	private Boolean autoCopy = null;
+
 	/**
 	 * The attributes for the encoding of the audio stream in the target
 	 * multimedia file. If null of not specified no audio stream will be
@@ -64,6 +83,30 @@ public class EncodingAttributes implements Serializable {
 	 */
 	private VideoAttributes videoAttributes = null;
 
+	/**
+	 * It builds an empty set of attributes.
+	 */
+	public EncodingAttributes() {
+	}
+
+	/**
+	 * It builds a copy of a set of attributes. The audio and video attributes
+	 * are shared, not copied.
+	 * 
+	 * @param attributes
+	 *            The attributes to copy.
+	 */
+	public EncodingAttributes(EncodingAttributes attributes) {
+		this.format = attributes.format;
+		this.offset = attributes.offset;
+		this.duration = attributes.duration;
+		this.timeout = attributes.timeout;
+		this.stallTimeout = attributes.stallTimeout;
+		this.autoCopy = attributes.autoCopy;
+		this.audioAttributes = attributes.audioAttributes;
+		this.videoAttributes = attributes.videoAttributes;
+	}
+
 	/**
 	 * Returns the format name for the encoded target multimedia file.
 	 * 
@@ -125,6 +168,80 @@ public class EncodingAttributes implements Serializable {
 		this.duration = duration;
 	}
 
+	/**
+	 * Returns the maximum wall-clock time (seconds) of the encoding process.
+	 * 
+	 * @return The maximum wall-clock time (seconds) of the encoding process.
+	 */
+	public Float getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the maximum wall-clock time (seconds) of the encoding process. A
+	 * process lasting longer is killed, and the encoding fails with an
+	 * {@link com.itlieutenant.exception.EncoderTimeoutException}. If null or
+	 * not specified the process can run forever.
+	 * 
+	 * @param timeout
+	 *            The maximum wall-clock time (seconds) of the encoding
+	 *            process.
+	 */
+	public void setTimeout(Float timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the maximum time (seconds) the encoding process can go on
+	 * without making progress.
+	 * 
+	 * @return The maximum time (seconds) without progress.
+	 */
+	public Float getStallTimeout() {
+		return stallTimeout;
+	}
+
+	/**
+	 * Sets the maximum time (seconds) the encoding process can go on without
+	 * making progress, that is without advancing the time of the encoded
+	 * output. A stalled process is killed, and the encoding fails with an
+	 * {@link com.itlieutenant.exception.EncoderStalledException}. If null or
+	 * not specified stalls are not detected.
+	 * 
+	 * @param stallTimeout
+	 *            The maximum time (seconds) without progress.
+	 */
+	public void setStallTimeout(Float stallTimeout) {
+		this.stallTimeout = stallTimeout;
+	}
+
+	/**
+	 * Returns whether the streams of the source already matching the audio and
+	 * video attributes are copied instead of re-encoded.
+	 * 
+	 * @return Whether the matching streams are copied.
+	 */
+	public Boolean getAutoCopy() {
+		return autoCopy;
+	}
+
+	/**
+	 * Sets whether the streams of the source already matching the audio and
+	 * video attributes are copied instead of re-encoded. The source is probed
+	 * first: a stream is copied (remuxed in the target format) when its codec
+	 * is the one of the requested encoder, and its size, frame rate, sampling
+	 * rate and channels are the requested ones, if any. A requested bit rate is
+	 * taken as a ceiling. A video stream is never copied if an offset is set,
+	 * since a copy can only start at a keyframe. Remuxing a stream is orders
+	 * of magnitude faster than re-encoding it.
+	 * 
+	 * @param autoCopy
+	 *            Whether the matching streams are copied.
+	 */
+	public void setAutoCopy(Boolean autoCopy) {
+		this.autoCopy = autoCopy;
+	}
+
 	/**
 	 * Returns the attributes for the encoding of the audio stream in the target
 	 * multimedia file.
@@ -175,7 +292,9 @@ public class EncodingAttributes implements Serializable {
 
 	public String toString() {
 		return getClass().getName() + "(format=" + format + ", offset="
-				+ offset + ", duration=" + duration + ", audioAttributes="
+				+ offset + ", duration=" + duration + ", timeout=" + timeout
+				+ ", stallTimeout=" + stallTimeout + ", autoCopy=" + autoCopy
+				+ ", audioAttributes="
 				+ audioAttributes + ", videoAttributes=" + videoAttributes
 				+ ")";
 	}
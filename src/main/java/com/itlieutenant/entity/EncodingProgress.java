@@ -0,0 +1,213 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+/**
+ * Instances of this class report the statistics of an ongoing encoding
+ * process, as periodically written by ffmpeg on its progress channel.
+ * 
+ * @author HeHangjie
+ */
+public class EncodingProgress {
+
+	/**
+	 * The encoding progress in permil. If less than 0 this information is not
+	 * available.
+	 */
+	private int permil = -1;
+
+	/**
+	 * The position of the encoded stream, in millis.
+	 */
+	private long outTime = 0;
+
+	/**
+	 * The number of encoded frames.
+	 */
+	private long frame = 0;
+
+	/**
+	 * The encoding frame rate (frames per second). If less than 0 this
+	 * information is not available.
+	 */
+	private float fps = -1;
+
+	/**
+	 * The bit rate of the encoded stream, in kbit/s. If less than 0 this
+	 * information is not available.
+	 */
+	private float bitRate = -1;
+
+	/**
+	 * The encoding speed, relative to the realtime. If less than 0 this
+	 * information is not available.
+	 */
+	private float speed = -1;
+
+	/**
+	 * The size of the encoded output, in bytes. If less than 0 this
+	 * information is not available.
+	 */
+	private long totalSize = -1;
+
+	/**
+	 * Returns the encoding progress in permil. If less than 0 this information
+	 * is not available.
+	 * 
+	 * @return The encoding progress in permil.
+	 */
+	public int getPermil() {
+		return permil;
+	}
+
+	/**
+	 * Sets the encoding progress in permil.
+	 * 
+	 * @param permil
+	 *            The encoding progress in permil.
+	 */
+	public void setPermil(int permil) {
+		this.permil = permil;
+	}
+
+	/**
+	 * Returns the position of the encoded stream, in millis.
+	 * 
+	 * @return The position of the encoded stream, in millis.
+	 */
+	public long getOutTime() {
+		return outTime;
+	}
+
+	/**
+	 * Sets the position of the encoded stream, in millis.
+	 * 
+	 * @param outTime
+	 *            The position of the encoded stream, in millis.
+	 */
+	public void setOutTime(long outTime) {
+		this.outTime = outTime;
+	}
+
+	/**
+	 * Returns the number of encoded frames.
+	 * 
+	 * @return The number of encoded frames.
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Sets the number of encoded frames.
+	 * 
+	 * @param frame
+	 *            The number of encoded frames.
+	 */
+	public void setFrame(long frame) {
+		this.frame = frame;
+	}
+
+	/**
+	 * Returns the encoding frame rate. If less than 0 this information is not
+	 * available.
+	 * 
+	 * @return The encoding frame rate.
+	 */
+	public float getFps() {
+		return fps;
+	}
+
+	/**
+	 * Sets the encoding frame rate.
+	 * 
+	 * @param fps
+	 *            The encoding frame rate.
+	 */
+	public void setFps(float fps) {
+		this.fps = fps;
+	}
+
+	/**
+	 * Returns the bit rate of the encoded stream, in kbit/s. If less than 0
+	 * this information is not available.
+	 * 
+	 * @return The bit rate of the encoded stream, in kbit/s.
+	 */
+	public float getBitRate() {
+		return bitRate;
+	}
+
+	/**
+	 * Sets the bit rate of the encoded stream, in kbit/s.
+	 * 
+	 * @param bitRate
+	 *            The bit rate of the encoded stream, in kbit/s.
+	 */
+	public void setBitRate(float bitRate) {
+		this.bitRate = bitRate;
+	}
+
+	/**
+	 * Returns the encoding speed, relative to the realtime (2.0 means that one
+	 * second of media is encoded in half a second). If less than 0 this
+	 * information is not available.
+	 * 
+	 * @return The encoding speed.
+	 */
+	public float getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets the encoding speed, relative to the realtime.
+	 * 
+	 * @param speed
+	 *            The encoding speed.
+	 */
+	public void setSpeed(float speed) {
+		this.speed = speed;
+	}
+
+	/**
+	 * Returns the size of the encoded output, in bytes. If less than 0 this
+	 * information is not available.
+	 * 
+	 * @return The size of the encoded output, in bytes.
+	 */
+	public long getTotalSize() {
+		return totalSize;
+	}
+
+	/**
+	 * Sets the size of the encoded output, in bytes.
+	 * 
+	 * @param totalSize
+	 *            The size of the encoded output, in bytes.
+	 */
+	public void setTotalSize(long totalSize) {
+		this.totalSize = totalSize;
+	}
+
+	public String toString() {
+		return getClass().getName() + " (permil=" + permil + ", outTime=" + outTime + ", frame=" + frame
+				+ ", fps=" + fps + ", bitRate=" + bitRate + ", speed=" + speed + ", totalSize=" + totalSize + ")";
+	}
+
+}
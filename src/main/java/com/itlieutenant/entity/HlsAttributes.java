@@ -0,0 +1,166 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+/**
+ * Attributes controlling the packaging of an encoded stream as HTTP Live
+ * Streaming: a m3u8 playlist and its media segments.
+ * 
+ * @author HeHangjie
+ */
+public class HlsAttributes extends PackagingAttributes {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The playlist type of a video on demand: the playlist is complete and
+	 * never changes.
+	 */
+	public static final String PLAYLIST_TYPE_VOD = "vod";
+
+	/**
+	 * The playlist type of an event: segments are only appended.
+	 */
+	public static final String PLAYLIST_TYPE_EVENT = "event";
+
+	/**
+	 * The MPEG-2 transport stream segment type.
+	 */
+	public static final String SEGMENT_TYPE_MPEGTS = "mpegts";
+
+	/**
+	 * The fragmented mp4 segment type.
+	 */
+	public static final String SEGMENT_TYPE_FMP4 = "fmp4";
+
+	/**
+	 * The playlist type. If null or not specified a live playlist is produced.
+	 */
+	private String playlistType = null;
+
+	/**
+	 * The segment type. If null or not specified mpegts segments are produced.
+	 */
+	private String segmentType = null;
+
+	/**
+	 * The segment file name pattern, such as "/data/out/seg%05d.ts". If null
+	 * or not specified the segments are named after the playlist.
+	 */
+	private String segmentFilename = null;
+
+	/**
+	 * Additional hls muxer flags, joined by '+', such as
+	 * "independent_segments".
+	 */
+	private String flags = null;
+
+	public String getFormat() {
+		return "hls";
+	}
+
+	/**
+	 * Returns the playlist type.
+	 * 
+	 * @return The playlist type.
+	 */
+	public String getPlaylistType() {
+		return playlistType;
+	}
+
+	/**
+	 * Sets the playlist type, {@link HlsAttributes#PLAYLIST_TYPE_VOD} or
+	 * {@link HlsAttributes#PLAYLIST_TYPE_EVENT}. If null or not specified a
+	 * live playlist is produced.
+	 * 
+	 * @param playlistType
+	 *            The playlist type.
+	 */
+	public void setPlaylistType(String playlistType) {
+		this.playlistType = playlistType;
+	}
+
+	/**
+	 * Returns the segment type.
+	 * 
+	 * @return The segment type.
+	 */
+	public String getSegmentType() {
+		return segmentType;
+	}
+
+	/**
+	 * Sets the segment type, {@link HlsAttributes#SEGMENT_TYPE_MPEGTS} or
+	 * {@link HlsAttributes#SEGMENT_TYPE_FMP4}.
+	 * 
+	 * @param segmentType
+	 *            The segment type.
+	 */
+	public void setSegmentType(String segmentType) {
+		this.segmentType = segmentType;
+	}
+
+	/**
+	 * Returns the segment file name pattern.
+	 * 
+	 * @return The segment file name pattern.
+	 */
+	public String getSegmentFilename() {
+		return segmentFilename;
+	}
+
+	/**
+	 * Sets the segment file name pattern, such as "/data/out/seg%05d.ts". If
+	 * null or not specified the segments are named after the playlist.
+	 * 
+	 * @param segmentFilename
+	 *            The segment file name pattern.
+	 */
+	public void setSegmentFilename(String segmentFilename) {
+		this.segmentFilename = segmentFilename;
+	}
+
+	/**
+	 * Returns the additional hls muxer flags.
+	 * 
+	 * @return The additional hls muxer flags.
+	 */
+	public String getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Sets additional hls muxer flags, joined by '+', such as
+	 * "independent_segments". The "temp_file" flag is always added, since the
+	 * segment events rely on it.
+	 * 
+	 * @param flags
+	 *            The additional hls muxer flags.
+	 */
+	public void setFlags(String flags) {
+		this.flags = flags;
+	}
+
+	public String toString() {
+		return getClass().getName() + "(segmentDuration=" + getSegmentDuration() + ", playlistSize="
+				+ getPlaylistSize() + ", playlistType=" + playlistType + ", segmentType=" + segmentType
+				+ ", segmentFilename=" + segmentFilename + ", flags=" + flags + ")";
+	}
+
+}
@@ -18,6 +18,10 @@
  */
 package com.itlieutenant.entity;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Instances of this class report informations about a decoded multimedia file.
  * 
@@ -35,9 +39,17 @@ public class MultimediaInfo {
 	 * available.
 	 */
 	private long duration = -1;
-	
+
+	/**
+	 * The stream start time in millis. If less than 0 this information is not
+	 * available.
+	 */
 	private int start = -1;
-	
+
+	/**
+	 * The overall bit rate in kb/s. If less than 0 this information is not
+	 * available.
+	 */
 	private int bitRate = -1;
 
 	/**
@@ -52,6 +64,12 @@ public class MultimediaInfo {
 	 */
 	private VideoInfo video = null;
 
+	/**
+	 * All the streams of the multimedia file, in file order. Filled only by
+	 * {@link com.itlieutenant.core.Encoder#probe(java.io.File)}.
+	 */
+	private List<StreamInfo> streams = new ArrayList<>();
+
 	/**
 	 * Returns the multimedia file format name.
 	 * 
@@ -67,7 +85,7 @@ public class MultimediaInfo {
 	 * @param format
 	 *            The multimedia file format name.
 	 */
-	void setFormat(String format) {
+	public void setFormat(String format) {
 		this.format = format;
 	}
 
@@ -137,20 +155,63 @@ public class MultimediaInfo {
 				+ duration + ", video=" + video + ", audio=" + audio + ")";
 	}
 
+	/**
+	 * Returns all the streams of the multimedia file, in file order.
+	 * 
+	 * @return The streams of the multimedia file.
+	 */
+	public List<StreamInfo> getStreams() {
+		return Collections.unmodifiableList(streams);
+	}
+
+	/**
+	 * Adds a stream to the multimedia file informations.
+	 * 
+	 * @param stream
+	 *            The stream informations.
+	 */
+	public void addStream(StreamInfo stream) {
+		streams.add(stream);
+	}
+
+	/**
+	 * Returns the stream start time in millis. If less than 0 this information
+	 * is not available.
+	 * 
+	 * @return The stream start time in millis.
+	 */
 	public int getStart() {
 		return start;
 	}
 
+	/**
+	 * Sets the stream start time in millis.
+	 * 
+	 * @param start
+	 *            The stream start time in millis.
+	 */
 	public void setStart(int start) {
 		this.start = start;
 	}
 
+	/**
+	 * Returns the overall bit rate in kb/s. If less than 0 this information is
+	 * not available.
+	 * 
+	 * @return The overall bit rate in kb/s.
+	 */
 	public int getBitRate() {
 		return bitRate;
 	}
 
+	/**
+	 * Sets the overall bit rate in kb/s.
+	 * 
+	 * @param bitRate
+	 *            The overall bit rate in kb/s.
+	 */
 	public void setBitRate(int bitRate) {
 		this.bitRate = bitRate;
 	}
-	
+
 }
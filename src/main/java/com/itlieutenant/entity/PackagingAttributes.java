@@ -0,0 +1,93 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+import java.io.Serializable;
+
+/**
+ * Attributes controlling the packaging of an encoded stream in segments and a
+ * playlist (or manifest), for adaptive streaming. See {@link HlsAttributes} and
+ * {@link DashAttributes}.
+ * 
+ * @author HeHangjie
+ */
+public abstract class PackagingAttributes implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The target duration of each segment, in seconds. If null or not
+	 * specified the muxer default will be picked.
+	 */
+	private Float segmentDuration = null;
+
+	/**
+	 * The maximum number of segments listed in the playlist, 0 to list all of
+	 * them. If null or not specified the muxer default will be picked.
+	 */
+	private Integer playlistSize = null;
+
+	/**
+	 * Returns the ffmpeg muxer producing this packaging.
+	 * 
+	 * @return The ffmpeg format name.
+	 */
+	public abstract String getFormat();
+
+	/**
+	 * Returns the target duration of each segment, in seconds.
+	 * 
+	 * @return The target duration of each segment.
+	 */
+	public Float getSegmentDuration() {
+		return segmentDuration;
+	}
+
+	/**
+	 * Sets the target duration of each segment, in seconds. Segments are cut at
+	 * keyframes, so their actual duration depends on the GOP of the encoding.
+	 * 
+	 * @param segmentDuration
+	 *            The target duration of each segment.
+	 */
+	public void setSegmentDuration(Float segmentDuration) {
+		this.segmentDuration = segmentDuration;
+	}
+
+	/**
+	 * Returns the maximum number of segments listed in the playlist.
+	 * 
+	 * @return The maximum number of segments listed in the playlist.
+	 */
+	public Integer getPlaylistSize() {
+		return playlistSize;
+	}
+
+	/**
+	 * Sets the maximum number of segments listed in the playlist, 0 to list
+	 * all of them.
+	 * 
+	 * @param playlistSize
+	 *            The maximum number of segments listed in the playlist.
+	 */
+	public void setPlaylistSize(Integer playlistSize) {
+		this.playlistSize = playlistSize;
+	}
+
+}
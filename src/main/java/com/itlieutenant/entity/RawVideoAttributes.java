@@ -0,0 +1,211 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+import java.io.Serializable;
+
+/**
+ * Attributes controlling the decoding of a video in raw frames, handed to the
+ * caller as memory buffers instead of being encoded in a file.
+ * 
+ * @author HeHangjie
+ */
+public class RawVideoAttributes implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Packed 8 bit red, green and blue samples: 3 bytes per pixel.
+	 */
+	public static final String RGB24 = "rgb24";
+
+	/**
+	 * 8 bit luma samples: 1 byte per pixel.
+	 */
+	public static final String GRAY = "gray";
+
+	/**
+	 * Planar luma and half-size chroma samples: the Y plane, then the U and V
+	 * planes, each one with half the width and half the height of the frame
+	 * (rounded up).
+	 */
+	public static final String YUV420P = "yuv420p";
+
+	/**
+	 * The pixel format of the frames, one of the constants of the class.
+	 */
+	private String pixelFormat = RGB24;
+
+	/**
+	 * The size of the frames. If null or not specified the frames keep the
+	 * size of the source video.
+	 */
+	private VideoSize size = null;
+
+	/**
+	 * The frame rate of the decoded video. If null or not specified every
+	 * frame of the source will be decoded.
+	 */
+	private Float frameRate = null;
+
+	/**
+	 * The start offset time (seconds). If null or not specified no start offset
+	 * will be applied.
+	 */
+	private Float offset = null;
+
+	/**
+	 * The duration (seconds) of the decoded video. If null or not specified
+	 * the source, starting from the offset, will be completely decoded.
+	 */
+	private Float duration = null;
+
+	/**
+	 * Returns the size in bytes of a frame.
+	 * 
+	 * @param pixelFormat
+	 *            The pixel format of the frame.
+	 * @param size
+	 *            The size of the frame.
+	 * @return The size in bytes of the frame.
+	 * @throws IllegalArgumentException
+	 *             If the pixel format is not one of the constants of the class.
+	 */
+	public static int getFrameSize(String pixelFormat, VideoSize size) throws IllegalArgumentException {
+		long pixels = (long) size.getWidth() * size.getHeight();
+		long bytes;
+		if (RGB24.equals(pixelFormat)) {
+			bytes = pixels * 3;
+		} else if (GRAY.equals(pixelFormat)) {
+			bytes = pixels;
+		} else if (YUV420P.equals(pixelFormat)) {
+			bytes = pixels + 2L * ((size.getWidth() + 1) / 2) * ((size.getHeight() + 1) / 2);
+		} else {
+			throw new IllegalArgumentException("Unsupported pixel format: " + pixelFormat);
+		}
+		if (bytes < 1 || bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid frame size: " + size);
+		}
+		return (int) bytes;
+	}
+
+	/**
+	 * Returns the pixel format of the frames.
+	 * 
+	 * @return The pixel format of the frames.
+	 */
+	public String getPixelFormat() {
+		return pixelFormat;
+	}
+
+	/**
+	 * Sets the pixel format of the frames, one of {@link #RGB24},
+	 * {@link #GRAY} and {@link #YUV420P}.
+	 * 
+	 * @param pixelFormat
+	 *            The pixel format of the frames.
+	 */
+	public void setPixelFormat(String pixelFormat) {
+		this.pixelFormat = pixelFormat;
+	}
+
+	/**
+	 * Returns the size of the frames.
+	 * 
+	 * @return The size of the frames.
+	 */
+	public VideoSize getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the size of the frames. If not set, the source is probed to find
+	 * out its size.
+	 * 
+	 * @param size
+	 *            The size of the frames.
+	 */
+	public void setSize(VideoSize size) {
+		this.size = size;
+	}
+
+	/**
+	 * Returns the frame rate of the decoded video.
+	 * 
+	 * @return The frame rate of the decoded video.
+	 */
+	public Float getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Sets the frame rate of the decoded video. Frames are dropped (or
+	 * duplicated) to fit it.
+	 * 
+	 * @param frameRate
+	 *            The frame rate of the decoded video.
+	 */
+	public void setFrameRate(Float frameRate) {
+		this.frameRate = frameRate;
+	}
+
+	/**
+	 * Returns the start offset time (seconds).
+	 * 
+	 * @return The start offset time (seconds).
+	 */
+	public Float getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Sets the start offset time (seconds).
+	 * 
+	 * @param offset
+	 *            The start offset time (seconds).
+	 */
+	public void setOffset(Float offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * Returns the duration (seconds) of the decoded video.
+	 * 
+	 * @return The duration (seconds) of the decoded video.
+	 */
+	public Float getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Sets the duration (seconds) of the decoded video.
+	 * 
+	 * @param duration
+	 *            The duration (seconds) of the decoded video.
+	 */
+	public void setDuration(Float duration) {
+		this.duration = duration;
+	}
+
+	public String toString() {
+		return getClass().getName() + "(pixelFormat=" + pixelFormat + ", size=" + size + ", frameRate=" + frameRate
+				+ ", offset=" + offset + ", duration=" + duration + ")";
+	}
+
+}
@@ -0,0 +1,431 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Instances of this class report informations about a single stream (audio,
+ * video, subtitle or data) of a multimedia file.
+ * 
+ * @author HeHangjie
+ */
+public class StreamInfo {
+
+	/**
+	 * The stream type for video streams.
+	 */
+	public static final String TYPE_VIDEO = "video";
+
+	/**
+	 * The stream type for audio streams.
+	 */
+	public static final String TYPE_AUDIO = "audio";
+
+	/**
+	 * The stream type for subtitle streams.
+	 */
+	public static final String TYPE_SUBTITLE = "subtitle";
+
+	/**
+	 * The index of the stream in the file.
+	 */
+	private int index = -1;
+
+	/**
+	 * The stream type (see the TYPE constants).
+	 */
+	private String type = null;
+
+	/**
+	 * The codec name.
+	 */
+	private String codec = null;
+
+	/**
+	 * The codec long, human readable name.
+	 */
+	private String codecLongName = null;
+
+	/**
+	 * The codec profile.
+	 */
+	private String profile = null;
+
+	/**
+	 * The video size. If null this information is not available.
+	 */
+	private VideoSize size = null;
+
+	/**
+	 * The pixel format of a video stream.
+	 */
+	private String pixelFormat = null;
+
+	/**
+	 * The frame rate of a video stream. If less than 0 this information is not
+	 * available.
+	 */
+	private float frameRate = -1;
+
+	/**
+	 * The (average) bit rate in kb/s. If less than 0 this information is not
+	 * available.
+	 */
+	private int bitRate = -1;
+
+	/**
+	 * The sampling rate of an audio stream. If less than 0 this information is
+	 * not available.
+	 */
+	private int samplingRate = -1;
+
+	/**
+	 * The channels number of an audio stream. If less than 0 this information
+	 * is not available.
+	 */
+	private int channels = -1;
+
+	/**
+	 * The channel layout of an audio stream (mono, stereo, 5.1...).
+	 */
+	private String channelLayout = null;
+
+	/**
+	 * The stream start time in millis. If less than 0 this information is not
+	 * available.
+	 */
+	private long start = -1;
+
+	/**
+	 * The stream duration in millis. If less than 0 this information is not
+	 * available.
+	 */
+	private long duration = -1;
+
+	/**
+	 * The stream metadata (language, title...).
+	 */
+	private Map<String, String> tags = new LinkedHashMap<>();
+
+	/**
+	 * Returns the index of the stream in the file.
+	 * 
+	 * @return The index of the stream.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Sets the index of the stream in the file.
+	 * 
+	 * @param index
+	 *            The index of the stream.
+	 */
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Returns the stream type, one of {@link #TYPE_VIDEO},
+	 * {@link #TYPE_AUDIO}, {@link #TYPE_SUBTITLE} or another type reported by
+	 * ffmpeg (such as "data").
+	 * 
+	 * @return The stream type.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Sets the stream type.
+	 * 
+	 * @param type
+	 *            The stream type.
+	 */
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	/**
+	 * Returns the codec name.
+	 * 
+	 * @return The codec name.
+	 */
+	public String getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Sets the codec name.
+	 * 
+	 * @param codec
+	 *            The codec name.
+	 */
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Returns the codec long, human readable name.
+	 * 
+	 * @return The codec long name.
+	 */
+	public String getCodecLongName() {
+		return codecLongName;
+	}
+
+	/**
+	 * Sets the codec long, human readable name.
+	 * 
+	 * @param codecLongName
+	 *            The codec long name.
+	 */
+	public void setCodecLongName(String codecLongName) {
+		this.codecLongName = codecLongName;
+	}
+
+	/**
+	 * Returns the codec profile.
+	 * 
+	 * @return The codec profile.
+	 */
+	public String getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Sets the codec profile.
+	 * 
+	 * @param profile
+	 *            The codec profile.
+	 */
+	public void setProfile(String profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Returns the video size. If null this information is not available.
+	 * 
+	 * @return The video size.
+	 */
+	public VideoSize getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the video size.
+	 * 
+	 * @param size
+	 *            The video size.
+	 */
+	public void setSize(VideoSize size) {
+		this.size = size;
+	}
+
+	/**
+	 * Returns the pixel format of a video stream.
+	 * 
+	 * @return The pixel format.
+	 */
+	public String getPixelFormat() {
+		return pixelFormat;
+	}
+
+	/**
+	 * Sets the pixel format of a video stream.
+	 * 
+	 * @param pixelFormat
+	 *            The pixel format.
+	 */
+	public void setPixelFormat(String pixelFormat) {
+		this.pixelFormat = pixelFormat;
+	}
+
+	/**
+	 * Returns the frame rate of a video stream. If less than 0 this
+	 * information is not available.
+	 * 
+	 * @return The frame rate.
+	 */
+	public float getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Sets the frame rate of a video stream.
+	 * 
+	 * @param frameRate
+	 *            The frame rate.
+	 */
+	public void setFrameRate(float frameRate) {
+		this.frameRate = frameRate;
+	}
+
+	/**
+	 * Returns the (average) bit rate in kb/s. If less than 0 this information
+	 * is not available.
+	 * 
+	 * @return The bit rate.
+	 */
+	public int getBitRate() {
+		return bitRate;
+	}
+
+	/**
+	 * Sets the (average) bit rate in kb/s.
+	 * 
+	 * @param bitRate
+	 *            The bit rate.
+	 */
+	public void setBitRate(int bitRate) {
+		this.bitRate = bitRate;
+	}
+
+	/**
+	 * Returns the sampling rate of an audio stream. If less than 0 this
+	 * information is not available.
+	 * 
+	 * @return The sampling rate.
+	 */
+	public int getSamplingRate() {
+		return samplingRate;
+	}
+
+	/**
+	 * Sets the sampling rate of an audio stream.
+	 * 
+	 * @param samplingRate
+	 *            The sampling rate.
+	 */
+	public void setSamplingRate(int samplingRate) {
+		this.samplingRate = samplingRate;
+	}
+
+	/**
+	 * Returns the channels number of an audio stream. If less than 0 this
+	 * information is not available.
+	 * 
+	 * @return The channels number.
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Sets the channels number of an audio stream.
+	 * 
+	 * @param channels
+	 *            The channels number.
+	 */
+	public void setChannels(int channels) {
+		this.channels = channels;
+	}
+
+	/**
+	 * Returns the channel layout of an audio stream.
+	 * 
+	 * @return The channel layout.
+	 */
+	public String getChannelLayout() {
+		return channelLayout;
+	}
+
+	/**
+	 * Sets the channel layout of an audio stream.
+	 * 
+	 * @param channelLayout
+	 *            The channel layout.
+	 */
+	public void setChannelLayout(String channelLayout) {
+		this.channelLayout = channelLayout;
+	}
+
+	/**
+	 * Returns the stream start time in millis. If less than 0 this information
+	 * is not available.
+	 * 
+	 * @return The stream start time in millis.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Sets the stream start time in millis.
+	 * 
+	 * @param start
+	 *            The stream start time in millis.
+	 */
+	public void setStart(long start) {
+		this.start = start;
+	}
+
+	/**
+	 * Returns the stream duration in millis. If less than 0 this information
+	 * is not available.
+	 * 
+	 * @return The stream duration in millis.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Sets the stream duration in millis.
+	 * 
+	 * @param duration
+	 *            The stream duration in millis.
+	 */
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * Returns the stream metadata (language, title...).
+	 * 
+	 * @return The stream metadata.
+	 */
+	public Map<String, String> getTags() {
+		return Collections.unmodifiableMap(tags);
+	}
+
+	/**
+	 * Sets a stream metadata value.
+	 * 
+	 * @param name
+	 *            The metadata name.
+	 * @param value
+	 *            The metadata value.
+	 */
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+
+	public String toString() {
+		return getClass().getName() + " (index=" + index + ", type=" + type + ", codec=" + codec + ", profile="
+				+ profile + ", size=" + size + ", pixelFormat=" + pixelFormat + ", frameRate=" + frameRate
+				+ ", bitRate=" + bitRate + ", samplingRate=" + samplingRate + ", channels=" + channels
+				+ ", channelLayout=" + channelLayout + ", start=" + start + ", duration=" + duration + ")";
+	}
+
+}
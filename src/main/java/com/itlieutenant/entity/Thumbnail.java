@@ -0,0 +1,79 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Instances of this class report an image extracted from a video by the
+ * thumbnail generator.
+ * 
+ * @author HeHangjie
+ */
+public class Thumbnail implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The image file.
+	 */
+	private final File file;
+
+	/**
+	 * The position of the frame in the source, in seconds.
+	 */
+	private final double time;
+
+	/**
+	 * It builds the bean.
+	 * 
+	 * @param file
+	 *            The image file.
+	 * @param time
+	 *            The position of the frame in the source, in seconds.
+	 */
+	public Thumbnail(File file, double time) {
+		this.file = file;
+		this.time = time;
+	}
+
+	/**
+	 * Returns the image file.
+	 * 
+	 * @return The image file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the position of the frame in the source, in seconds.
+	 * 
+	 * @return The position of the frame in the source.
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	public String toString() {
+		return getClass().getName() + "(file=" + file + ", time=" + time + ")";
+	}
+
+}
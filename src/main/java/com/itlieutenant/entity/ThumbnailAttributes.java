@@ -0,0 +1,148 @@
+/*
+ * JAVE - A Java Audio/Video Encoder (based on FFMPEG)
+ * 
+ * Copyright (C) 2008-2009 Carlo Pelliccia (www.sauronsoftware.it)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.itlieutenant.entity;
+
+import java.io.Serializable;
+
+/**
+ * Attributes controlling the images written by the thumbnail generator.
+ * 
+ * @author HeHangjie
+ */
+public class ThumbnailAttributes implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The default image type.
+	 */
+	public static final String JPEG = "jpg";
+
+	/**
+	 * The lossless image type.
+	 */
+	public static final String PNG = "png";
+
+	/**
+	 * The image type, as a file extension telling ffmpeg the image encoder to
+	 * use.
+	 */
+	private String type = JPEG;
+
+	/**
+	 * The prefix of the image file names.
+	 */
+	private String prefix = "thumb";
+
+	/**
+	 * The size of each thumbnail. If null or not specified the thumbnails keep
+	 * the size of the source video.
+	 */
+	private VideoSize size = null;
+
+	/**
+	 * The quality of the lossy image types, from 2 (best) to 31 (worst). If
+	 * null or not specified the encoder default will be picked.
+	 */
+	private Integer quality = null;
+
+	/**
+	 * Returns the image type.
+	 * 
+	 * @return The image type.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Sets the image type, as a file extension (e.g. "jpg", "png", "webp").
+	 * 
+	 * @param type
+	 *            The image type.
+	 */
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	/**
+	 * Returns the prefix of the image file names.
+	 * 
+	 * @return The prefix of the image file names.
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Sets the prefix of the image file names. The images are named after the
+	 * prefix, a dash and a four digit counter starting from 1 (e.g.
+	 * "thumb-0001.jpg").
+	 * 
+	 * @param prefix
+	 *            The prefix of the image file names.
+	 */
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Returns the size of each thumbnail.
+	 * 
+	 * @return The size of each thumbnail.
+	 */
+	public VideoSize getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the size of each thumbnail. Mandatory for the sprite sheets.
+	 * 
+	 * @param size
+	 *            The size of each thumbnail.
+	 */
+	public void setSize(VideoSize size) {
+		this.size = size;
+	}
+
+	/**
+	 * Returns the quality of the lossy image types.
+	 * 
+	 * @return The quality of the lossy image types.
+	 */
+	public Integer getQuality() {
+		return quality;
+	}
+
+	/**
+	 * Sets the quality of the lossy image types, from 2 (best) to 31 (worst).
+	 * 
+	 * @param quality
+	 *            The quality of the lossy image types.
+	 */
+	public void setQuality(Integer quality) {
+		this.quality = quality;
+	}
+
+	public String toString() {
+		return getClass().getName() + "(type=" + type + ", prefix=" + prefix + ", size=" + size + ", quality="
+				+ quality + ")";
+	}
+
+}
@@ -66,6 +66,38 @@ public class VideoAttributes implements Serializable {
 	 */
 	private VideoSize size = null;
 
+	/**
+	 * The number of threads of the codec. If null or not specified the codec
+	 * picks its own, unless the encoder has a
+	 * {@link com.itlieutenant.core.ThreadBudget}.
+	 */
+	private Integer threads = null;
+
+	/**
+	 * The number of threads of the filters. If null or not specified the
+	 * filters pick their own, unless the encoder has a
+	 * {@link com.itlieutenant.core.ThreadBudget}.
+	 */
+	private Integer filterThreads = null;
+
+	/**
+	 * The preset of the codec (for instance "veryfast" or "slow" for
+	 * libx264). If null or not specified the codec default is used.
+	 */
+	private String preset = null;
+
+	/**
+	 * The tuning of the codec (for instance "film" or "zerolatency" for
+	 * libx264). If null or not specified no tuning is applied.
+	 */
+	private String tune = null;
+
+	/**
+	 * The constant rate factor of the codec. If null or not specified the
+	 * bitrate or the codec default controls the quality.
+	 */
+	private Integer crf = null;
+
 	/**
 	 * Returns the codec name for the encoding process.
 	 * 
@@ -171,9 +203,118 @@ public class VideoAttributes implements Serializable {
 		this.size = size;
 	}
 
+	/**
+	 * Returns the number of threads of the codec.
+	 * 
+	 * @return The number of threads of the codec.
+	 */
+	public Integer getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of threads of the codec. If null or not specified the
+	 * codec picks its own, unless the encoder has a
+	 * {@link com.itlieutenant.core.ThreadBudget}. 0 lets the codec use all
+	 * the processors. The output of frame or slice threaded codecs, as
+	 * libx264, depends on the number of threads.
+	 * 
+	 * @param threads
+	 *            The number of threads of the codec.
+	 */
+	public void setThreads(Integer threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns the number of threads of the filters.
+	 * 
+	 * @return The number of threads of the filters.
+	 */
+	public Integer getFilterThreads() {
+		return filterThreads;
+	}
+
+	/**
+	 * Sets the number of threads of the filters, as the scaling. If null or
+	 * not specified the filters pick their own, unless the encoder has a
+	 * {@link com.itlieutenant.core.ThreadBudget}.
+	 * 
+	 * @param filterThreads
+	 *            The number of threads of the filters.
+	 */
+	public void setFilterThreads(Integer filterThreads) {
+		this.filterThreads = filterThreads;
+	}
+
+	/**
+	 * Returns the preset of the codec.
+	 * 
+	 * @return The preset of the codec.
+	 */
+	public String getPreset() {
+		return preset;
+	}
+
+	/**
+	 * Sets the preset of the codec, trading encoding speed for compression
+	 * (for instance "veryfast" or "slow" for libx264). If null or not
+	 * specified the codec default is used.
+	 * 
+	 * @param preset
+	 *            The preset of the codec.
+	 */
+	public void setPreset(String preset) {
+		this.preset = preset;
+	}
+
+	/**
+	 * Returns the tuning of the codec.
+	 * 
+	 * @return The tuning of the codec.
+	 */
+	public String getTune() {
+		return tune;
+	}
+
+	/**
+	 * Sets the tuning of the codec for a kind of source or use (for instance
+	 * "film" or "zerolatency" for libx264). If null or not specified no
+	 * tuning is applied.
+	 * 
+	 * @param tune
+	 *            The tuning of the codec.
+	 */
+	public void setTune(String tune) {
+		this.tune = tune;
+	}
+
+	/**
+	 * Returns the constant rate factor of the codec.
+	 * 
+	 * @return The constant rate factor of the codec.
+	 */
+	public Integer getCrf() {
+		return crf;
+	}
+
+	/**
+	 * Sets the constant rate factor of the codec: lower values give higher
+	 * quality and bigger files. If null or not specified the bitrate or the
+	 * codec default controls the quality.
+	 * 
+	 * @param crf
+	 *            The constant rate factor of the codec.
+	 */
+	public void setCrf(Integer crf) {
+		this.crf = crf;
+	}
+
 	public String toString() {
 		return getClass().getName() + "(codec=" + codec + ", bitRate="
-				+ bitRate + ", frameRate=" + frameRate + ", size=" + size + ")";
+				+ bitRate + ", frameRate=" + frameRate + ", size=" + size
+				+ ", threads=" + threads + ", filterThreads=" + filterThreads
+				+ ", preset=" + preset + ", tune=" + tune + ", crf=" + crf + ")";
 	}
 
 }
@@ -101,7 +101,7 @@ public class VideoInfo {
 	 * @param frameRate
 	 *            The video frame rate.
 	 */
-	void setFrameRate(float frameRate) {
+	public void setFrameRate(float frameRate) {
 		this.frameRate = frameRate;
 	}
 
@@ -121,7 +121,7 @@ public class VideoInfo {
 	 * @param bitRate
 	 *            The video stream (average) bit rate.
 	 */
-	void setBitRate(int bitRate) {
+	public void setBitRate(int bitRate) {
 		this.bitRate = bitRate;
 	}
 
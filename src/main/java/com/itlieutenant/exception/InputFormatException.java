@@ -27,11 +27,11 @@ public class InputFormatException extends EncoderException {
 
 	private static final long serialVersionUID = 1L;
 
-	InputFormatException() {
+	public InputFormatException() {
 		super();
 	}
 
-	InputFormatException(String message) {
+	public InputFormatException(String message) {
 		super(message);
 	}
 